@@ -8,20 +8,32 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ScrollView;
-import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
 import com.android.aiassistant.service.AIInferenceService;
+import com.android.aiassistant.service.ContextManager;
+import com.android.aiassistant.service.EmbeddingIndex;
+import com.android.aiassistant.service.InferenceBenchmark;
+import com.android.aiassistant.service.InferenceHandle;
+import com.android.aiassistant.service.InferenceSession;
+import com.android.aiassistant.service.ModelWarmer;
+import com.android.aiassistant.service.ProcessMonitor;
+import com.android.aiassistant.service.RootCommandStream;
 import com.android.aiassistant.service.RootShellService;
 import com.android.aiassistant.service.FileWatcherService;
 import com.android.aiassistant.utils.FileUtils;
 import com.android.aiassistant.utils.RootUtils;
 import com.android.aiassistant.utils.AIModelManager;
+import com.android.aiassistant.utils.DeviceTuner;
+import com.android.aiassistant.utils.ModelDownloader;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 主 Activity - AI 助手界面
@@ -31,10 +43,10 @@ public class MainActivity extends AppCompatActivity {
 
     private static final int REQUEST_PERMISSIONS = 1001;
     private static final int REQUEST_MANAGE_STORAGE = 1002;
+    private static final int ASK_TOP_K = 4;
 
     private EditText inputEditText;
-    private TextView outputTextView;
-    private ScrollView scrollView;
+    private TranscriptAdapter transcript;
     private Button sendButton;
     private Button fileManagerButton;
     private Button modelManagerButton;
@@ -44,8 +56,15 @@ public class MainActivity extends AppCompatActivity {
     private AIInferenceService aiService;
     private RootShellService rootService;
     private FileWatcherService fileWatcherService;
+    private ModelWarmer modelWarmer;
+    private ModelDownloader modelDownloader;
+    private ModelDownloader.DownloadTask currentDownload;
+    private InferenceBenchmark currentBenchmark;
+    private RootCommandStream currentRootStream;
 
     private String currentModelPath;
+    private InferenceSession chatSession;
+    private InferenceHandle currentRequest;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,6 +76,8 @@ public class MainActivity extends AppCompatActivity {
         aiService = new AIInferenceService(this);
         rootService = new RootShellService(this);
         fileWatcherService = new FileWatcherService(this);
+        modelWarmer = new ModelWarmer(aiService);
+        modelDownloader = new ModelDownloader(modelManager);
 
         // 初始化视图
         initViews();
@@ -76,8 +97,8 @@ public class MainActivity extends AppCompatActivity {
 
     private void initViews() {
         inputEditText = findViewById(R.id.inputEditText);
-        outputTextView = findViewById(R.id.outputTextView);
-        scrollView = findViewById(R.id.scrollView);
+        RecyclerView outputRecyclerView = findViewById(R.id.outputRecyclerView);
+        transcript = new TranscriptAdapter(outputRecyclerView);
         sendButton = findViewById(R.id.sendButton);
         fileManagerButton = findViewById(R.id.fileManagerButton);
         modelManagerButton = findViewById(R.id.modelManagerButton);
@@ -106,7 +127,7 @@ public class MainActivity extends AppCompatActivity {
 
         // 清空按钮
         clearButton.setOnClickListener(v -> {
-            outputTextView.setText("");
+            transcript.clear();
         });
 
         appendToOutput("========================================\n");
@@ -158,14 +179,19 @@ public class MainActivity extends AppCompatActivity {
 
     private void loadDefaultModel() {
         new Thread(() -> {
-            File modelDir = new File(getExternalFilesDir(null), "models");
-            File[] models = modelDir.listFiles((dir, name) -> name.endsWith(".gguf"));
+            List<AIModelManager.ModelInfo> models = modelManager.getAvailableModels();
 
-            if (models != null && models.length > 0) {
-                currentModelPath = models[0].getAbsolutePath();
+            if (!models.isEmpty()) {
+                AIModelManager.ModelInfo info = models.get(0);
+                currentModelPath = info.path;
+                aiService.getResidencyManager().pin(currentModelPath);
+                DeviceTuner.TuningProfile profile = aiService.autoTune(currentModelPath, false);
                 runOnUiThread(() -> {
-                    appendToOutput("[模型] 已加载: " + models[0].getName() + "\n\n");
+                    appendToOutput("[模型] 已加载: " + info.name + "\n");
+                    appendToOutput("[模型] " + info.getDescription() + "\n");
+                    appendToOutput("[调优] " + profile + "\n\n");
                 });
+                warmUpModel(currentModelPath);
             } else {
                 runOnUiThread(() -> {
                     appendToOutput("[模型] 未找到模型文件\n");
@@ -175,6 +201,41 @@ public class MainActivity extends AppCompatActivity {
         }).start();
     }
 
+    /**
+     * 后台预热模型，切换模型时会取消之前的预热
+     */
+    private void warmUpModel(String modelPath) {
+        String name = new File(modelPath).getName();
+        modelWarmer.warmUp(modelPath, new ModelWarmer.WarmUpListener() {
+            private int lastQuarter;
+
+            @Override
+            public void onProgress(String path, int percent) {
+                // 每 25% 报告一次
+                if (percent / 25 > lastQuarter && percent < 100) {
+                    lastQuarter = percent / 25;
+                    runOnUiThread(() -> {
+                        appendToOutput("[预热] " + name + " " + percent + "%\n");
+                    });
+                }
+            }
+
+            @Override
+            public void onHot(String path) {
+                runOnUiThread(() -> {
+                    appendToOutput("[预热] " + name + " 已就绪\n\n");
+                });
+            }
+
+            @Override
+            public void onError(String path, String error) {
+                runOnUiThread(() -> {
+                    appendToOutput("[预热] 失败: " + error + "\n\n");
+                });
+            }
+        });
+    }
+
     private void processInput(String input) {
         appendToOutput("[你] " + input + "\n");
 
@@ -190,20 +251,32 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        // AI 推理
-        appendToOutput("[AI] 正在思考...\n");
-        new Thread(() -> {
-            try {
-                String response = aiService.inference(currentModelPath, input);
+        // 同一模型的对话共用一个会话，后续消息只评估新增部分
+        if (chatSession == null || !chatSession.getModelPath().equals(currentModelPath)) {
+            chatSession = aiService.createSession(currentModelPath);
+        }
+
+        // AI 推理（流式输出）
+        appendToOutput("[AI] ");
+        currentRequest = aiService.streamChat(chatSession, input, new AIInferenceService.InferenceCallback() {
+            @Override
+            public void onToken(String token) {
+                // 不经过主线程队列，由输出缓冲按帧合并
+                appendToOutput(token);
+            }
+
+            @Override
+            public void onComplete() {
+                runOnUiThread(() -> appendToOutput("\n\n"));
+            }
+
+            @Override
+            public void onError(String error) {
                 runOnUiThread(() -> {
-                    appendToOutput("[AI] " + response + "\n\n");
-                });
-            } catch (Exception e) {
-                runOnUiThread(() -> {
-                    appendToOutput("[错误] " + e.getMessage() + "\n\n");
+                    appendToOutput("\n[错误] " + error + "\n\n");
                 });
             }
-        }).start();
+        });
     }
 
     private void processCommand(String command) {
@@ -220,8 +293,21 @@ public class MainActivity extends AppCompatActivity {
                 appendToOutput("  /cp [源] [目标] - 复制文件\n");
                 appendToOutput("  /mv [源] [目标] - 移动文件\n");
                 appendToOutput("  /mkdir [路径] - 创建目录\n");
-                appendToOutput("  /model [路径] - 加载模型\n");
-                appendToOutput("  /root [命令] - 执行 root 命令\n\n");
+                appendToOutput("  /model [路径] - 加载模型（不带路径时列出已有模型）\n");
+                appendToOutput("  /root [命令] - 执行 root 命令\n");
+                appendToOutput("  /shell [会话数] - root shell 会话池状态\n");
+                appendToOutput("  /top [cpu|mem] [数量] - 进程 CPU/内存排行\n");
+                appendToOutput("  /kill [名称] - 按名称结束进程，/kill -r [正则] 按命令行匹配\n");
+                appendToOutput("  /download [地址] [sha256] - 下载模型（断点续传），/download cancel 取消\n");
+                appendToOutput("  /ask [目录] [问题] - 基于目录中的文档回答问题\n");
+                appendToOutput("  /context [reset] - 查看或清空对话上下文\n");
+                appendToOutput("  /stop - 停止当前推理或 root 命令\n");
+                appendToOutput("  /cache [stats|clear] - 推理结果缓存\n");
+                appendToOutput("  /stats - 推理耗时统计\n");
+                appendToOutput("  /mem [预算MB] - 常驻模型和内存预算\n");
+                appendToOutput("  /tune [calibrate] - 按设备自动调优推理参数\n");
+                appendToOutput("  /bench [full] [all] - 推理基准测试（all 测试全部模型），/bench cancel 取消\n");
+                appendToOutput("  /spec [on|off] - 投机解码（草稿模型加速）\n\n");
                 break;
 
             case "/ls":
@@ -276,7 +362,7 @@ public class MainActivity extends AppCompatActivity {
                 if (parts.length > 1) {
                     loadModel(parts[1]);
                 } else {
-                    appendToOutput("[错误] 请指定模型路径\n\n");
+                    listModels();
                 }
                 break;
 
@@ -288,6 +374,133 @@ public class MainActivity extends AppCompatActivity {
                 }
                 break;
 
+            case "/shell":
+                if (parts.length > 1) {
+                    try {
+                        rootService.setPoolSize(Integer.parseInt(parts[1]));
+                    } catch (NumberFormatException e) {
+                        appendToOutput("[错误] 用法: /shell [会话数]\n\n");
+                        break;
+                    }
+                }
+                appendToOutput("[Root] " + rootService.getPoolStats() + "\n"
+                        + rootService.getStatCache().getStats() + "\n\n");
+                break;
+
+            case "/top":
+                showTopProcesses(parts);
+                break;
+
+            case "/kill":
+                if (parts.length > 2 && parts[1].equals("-r")) {
+                    killProcesses(parts[2], true);
+                } else if (parts.length > 1) {
+                    killProcesses(parts[1], false);
+                } else {
+                    appendToOutput("[错误] 用法: /kill [名称] 或 /kill -r [正则]\n\n");
+                }
+                break;
+
+            case "/ask":
+                String[] askArgs = command.trim().split("\\s+", 3);
+                if (askArgs.length > 2) {
+                    askDirectory(askArgs[1], askArgs[2]);
+                } else {
+                    appendToOutput("[错误] 用法: /ask [目录] [问题]\n\n");
+                }
+                break;
+
+            case "/context":
+                if (chatSession == null) {
+                    appendToOutput("[上下文] 尚未开始对话\n\n");
+                } else if (parts.length > 1 && parts[1].equals("reset")) {
+                    chatSession.reset();
+                    appendToOutput("[上下文] 已清空\n\n");
+                } else {
+                    ContextManager context = chatSession.getContext();
+                    appendToOutput("[上下文] " + context.getTurnCount() + " 轮，约 " + context.getUsedTokens()
+                            + " / " + aiService.getPromptBudget() + " tokens\n");
+                    if (!context.getSummary().isEmpty()) {
+                        appendToOutput("[摘要] " + context.getSummary() + "\n");
+                    }
+                    appendToOutput("\n");
+                }
+                break;
+
+            case "/stop":
+                if (currentRootStream != null && !currentRootStream.isFinished()) {
+                    currentRootStream.cancel();
+                    appendToOutput("[系统] 已停止 root 命令\n\n");
+                } else if (currentRequest != null && currentRequest.cancel()) {
+                    appendToOutput("[系统] 已停止推理\n\n");
+                } else {
+                    appendToOutput("[系统] 当前没有进行中的推理\n\n");
+                }
+                break;
+
+            case "/cache":
+                if (parts.length > 1 && parts[1].equals("clear")) {
+                    aiService.getResponseCache().clear();
+                    appendToOutput("[缓存] 已清空\n\n");
+                } else {
+                    appendToOutput("[缓存] " + aiService.getResponseCache().getStats() + "\n\n");
+                }
+                break;
+
+            case "/download":
+                if (parts.length > 1 && parts[1].equals("cancel")) {
+                    if (currentDownload != null) {
+                        currentDownload.cancel();
+                    }
+                } else if (parts.length > 1) {
+                    downloadModel(parts[1], parts.length > 2 ? parts[2] : null);
+                } else {
+                    appendToOutput("[错误] 用法: /download [地址] [sha256]\n\n");
+                }
+                break;
+
+            case "/mem":
+                if (parts.length > 1) {
+                    try {
+                        long budget = Long.parseLong(parts[1]) * 1024 * 1024;
+                        aiService.getResidencyManager().setBudget(budget, 512L * 1024 * 1024);
+                    } catch (NumberFormatException e) {
+                        appendToOutput("[错误] 用法: /mem [预算MB]\n\n");
+                        break;
+                    }
+                }
+                new Thread(() -> {
+                    String summary = aiService.getResidencyManager().getSummary();
+                    runOnUiThread(() -> appendToOutput("[内存] " + summary + "\n\n"));
+                }).start();
+                break;
+
+            case "/stats":
+                appendToOutput("[统计] " + aiService.getStats().summarize() + "\n\n");
+                break;
+
+            case "/spec":
+                if (parts.length > 1) {
+                    aiService.setSpeculativeDecoding(parts[1].equals("on"), 8);
+                }
+                showSpeculativeStatus();
+                break;
+
+            case "/tune":
+                tuneModel(parts.length > 1 && parts[1].equals("calibrate"));
+                break;
+
+            case "/bench":
+                if (parts.length > 1 && parts[1].equals("cancel")) {
+                    if (currentBenchmark != null) {
+                        currentBenchmark.cancel();
+                    }
+                } else {
+                    List<String> options = Arrays.asList(parts);
+                    runBenchmark(options.contains("full"), options.contains("all"));
+                }
+                break;
+
             default:
                 appendToOutput("[错误] 未知命令: " + cmd + "\n");
                 appendToOutput("[提示] 输入 /help 查看帮助\n\n");
@@ -412,30 +625,313 @@ public class MainActivity extends AppCompatActivity {
             }
 
             currentModelPath = path;
+            aiService.getResidencyManager().pin(path);
+            DeviceTuner.TuningProfile profile = aiService.autoTune(path, false);
+            AIModelManager.ModelInfo info = modelManager.getModelInfoByPath(path);
             runOnUiThread(() -> {
-                appendToOutput("[模型] 已加载: " + modelFile.getName() + "\n\n");
+                appendToOutput("[模型] 已加载: " + modelFile.getName() + "\n");
+                appendToOutput("[模型] " + info.getDescription() + "\n");
+                appendToOutput("[调优] " + profile + "\n\n");
             });
+            warmUpModel(path);
         }).start();
     }
 
-    private void executeRootCommand(String command) {
+    /**
+     * 增量更新目录索引，检索相关片段后放进 prompt 再推理
+     */
+    private void askDirectory(String directory, String question) {
+        if (currentModelPath == null) {
+            appendToOutput("[AI] 请先加载模型\n\n");
+            return;
+        }
+        String modelPath = currentModelPath;
         new Thread(() -> {
             try {
-                String result = rootService.executeCommand(command);
+                EmbeddingIndex index = aiService.getEmbeddingIndex(directory);
+                String embeddingModel = aiService.getEmbeddingModel(modelPath);
+                EmbeddingIndex.Embedder embedder = texts -> aiService.embed(modelPath, texts);
+                int updated = index.update(embeddingModel, embedder, (done, total) -> {
+                    if (done == total || done % (16 * 8) == 0) {
+                        runOnUiThread(() -> appendToOutput("[索引] " + done + " / " + total + "\n"));
+                    }
+                });
+                if (updated > 0) {
+                    runOnUiThread(() -> appendToOutput("[索引] 已更新 " + updated + " 块\n"));
+                }
+
+                float[] query = aiService.embed(modelPath, Collections.singletonList(question)).get(0);
+                List<EmbeddingIndex.SearchResult> results = index.search(query, ASK_TOP_K);
+                if (results.isEmpty()) {
+                    runOnUiThread(() -> appendToOutput("[AI] 目录中没有可用的文本文件\n\n"));
+                    return;
+                }
+
+                StringBuilder prompt = new StringBuilder("根据以下资料回答问题，资料中没有的内容请直接说明。\n\n");
+                StringBuilder sources = new StringBuilder();
+                for (int i = 0; i < results.size(); i++) {
+                    EmbeddingIndex.SearchResult result = results.get(i);
+                    prompt.append("[").append(i + 1).append("] ").append(result.file).append("\n")
+                            .append(result.text).append("\n\n");
+                    sources.append(String.format("  [%d] %s (%.2f)\n", i + 1, result.file, result.score));
+                }
+                prompt.append("问题: ").append(question).append("\n回答: ");
+
                 runOnUiThread(() -> {
-                    appendToOutput("[Root] " + result + "\n\n");
+                    appendToOutput("[检索]\n" + sources);
+                    appendToOutput("[AI] ");
+                    currentRequest = aiService.streamInference(modelPath, prompt.toString(),
+                            new AIInferenceService.InferenceCallback() {
+                                @Override
+                                public void onToken(String token) {
+                                    // 与对话相同，不经过主线程队列，由输出缓冲按帧合并
+                                    appendToOutput(token);
+                                }
+
+                                @Override
+                                public void onComplete() {
+                                    runOnUiThread(() -> appendToOutput("\n\n"));
+                                }
+
+                                @Override
+                                public void onError(String error) {
+                                    runOnUiThread(() -> appendToOutput("\n[错误] " + error + "\n\n"));
+                                }
+                            });
                 });
             } catch (Exception e) {
+                runOnUiThread(() -> appendToOutput("[错误] " + e.getMessage() + "\n\n"));
+            }
+        }).start();
+    }
+
+    private void downloadModel(String url, String sha256) {
+        if (currentDownload != null && !currentDownload.isFinished()) {
+            currentDownload.cancel();
+        }
+        String fileName = url.substring(url.lastIndexOf('/') + 1);
+        int query = fileName.indexOf('?');
+        if (query >= 0) {
+            fileName = fileName.substring(0, query);
+        }
+        if (!fileName.endsWith(".gguf")) {
+            appendToOutput("[错误] 只支持 .gguf 模型文件\n\n");
+            return;
+        }
+
+        String name = fileName;
+        appendToOutput("[下载] 开始: " + name + "\n");
+        currentDownload = modelDownloader.download(url, name, sha256, new ModelDownloader.DownloadListener() {
+            private int lastDecile = -1;
+
+            @Override
+            public void onProgress(long downloaded, long total) {
+                int decile = (int) (downloaded * 10 / total);
+                if (decile != lastDecile) {
+                    lastDecile = decile;
+                    runOnUiThread(() -> appendToOutput("[下载] " + name + " " + (decile * 10) + "% ("
+                            + FileUtils.formatFileSize(downloaded) + " / " + FileUtils.formatFileSize(total) + ")\n"));
+                }
+            }
+
+            @Override
+            public void onComplete(AIModelManager.ModelInfo model) {
                 runOnUiThread(() -> {
-                    appendToOutput("[错误] " + e.getMessage() + "\n\n");
+                    appendToOutput("[下载] 完成: " + model.name + "\n");
+                    appendToOutput("[模型] " + model.getDescription() + "\n\n");
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> appendToOutput("[下载] 失败: " + error + "\n\n"));
+            }
+        });
+    }
+
+    private void listModels() {
+        new Thread(() -> {
+            List<AIModelManager.ModelInfo> models = modelManager.getAvailableModels();
+            int pending = modelManager.getCatalog().getPendingHashCount();
+            runOnUiThread(() -> {
+                if (models.isEmpty()) {
+                    appendToOutput("[模型] 未找到模型文件\n\n");
+                    return;
+                }
+                appendToOutput("[模型] 共 " + models.size() + " 个:\n");
+                for (AIModelManager.ModelInfo info : models) {
+                    String state = info.path.equals(currentModelPath) ? " (当前)"
+                            : aiService.getResidencyManager().isResident(info.path) ? " (常驻)" : "";
+                    appendToOutput("  " + info.name + state + "\n");
+                    appendToOutput("    " + info.getDescription() + "\n");
+                    if (info.sha256 != null) {
+                        appendToOutput("    SHA-256 " + info.sha256.substring(0, 16) + "...\n");
+                    }
+                }
+                if (pending > 0) {
+                    appendToOutput("[模型] 后台校验中: " + pending + " 个\n");
+                }
+                appendToOutput("\n");
+            });
+        }).start();
+    }
+
+    private void showSpeculativeStatus() {
+        if (!aiService.isSpeculativeDecoding()) {
+            appendToOutput("[投机解码] 已关闭\n\n");
+            return;
+        }
+        if (currentModelPath == null) {
+            appendToOutput("[投机解码] 已开启，加载模型后自动选择草稿模型\n\n");
+            return;
+        }
+        new Thread(() -> {
+            AIModelManager.ModelInfo draft = aiService.getDraftModel(currentModelPath);
+            runOnUiThread(() -> {
+                if (draft != null) {
+                    appendToOutput("[投机解码] 已开启，草稿模型: " + draft.name + "\n");
+                    appendToOutput("[投机解码] 接受率和有效速度见 /stats\n\n");
+                } else {
+                    appendToOutput("[投机解码] 已开启，但没有同系列的小模型，使用普通解码\n\n");
+                }
+            });
+        }).start();
+    }
+
+    private void tuneModel(boolean calibrate) {
+        if (currentModelPath == null) {
+            appendToOutput("[错误] 请先加载模型\n\n");
+            return;
+        }
+        appendToOutput("[调优] " + (calibrate ? "正在实测校准..." : "正在估算...") + "\n");
+        new Thread(() -> {
+            DeviceTuner.TuningProfile profile = aiService.autoTune(currentModelPath, calibrate);
+            runOnUiThread(() -> {
+                appendToOutput("[调优] " + profile + "\n\n");
+            });
+        }).start();
+    }
+
+    private void runBenchmark(boolean full, boolean allModels) {
+        if (currentBenchmark != null) {
+            appendToOutput("[基准] 已有测试在运行\n\n");
+            return;
+        }
+        if (!allModels && currentModelPath == null) {
+            appendToOutput("[错误] 请先加载模型，或使用 /bench all\n\n");
+            return;
+        }
+        File reportDirectory = new File(getExternalFilesDir(null), "bench");
+        InferenceBenchmark benchmark = new InferenceBenchmark(aiService, reportDirectory);
+        currentBenchmark = benchmark;
+        appendToOutput("[基准] 开始" + (full ? "完整" : "快速") + "测试...\n");
+        new Thread(() -> {
+            try {
+                List<AIModelManager.ModelInfo> models = allModels ? modelManager.getAvailableModels()
+                        : Collections.singletonList(modelManager.getModelInfoByPath(currentModelPath));
+                int totalCores = aiService.getDeviceTuner().readCoreMaxFrequencies().size();
+                InferenceBenchmark.Report report = benchmark.run(models,
+                        InferenceBenchmark.buildGrid(full, totalCores), InferenceBenchmark.DEFAULT_PROMPTS,
+                        (result, done, total) -> runOnUiThread(() -> appendToOutput(String.format(
+                                "[基准] %d/%d %s t%d b%d：生成 %.1f tok/s，首字 %d ms\n", done, total,
+                                result.model, result.threads, result.batchSize,
+                                result.generationTokensPerSecond, result.ttftMs))));
+                runOnUiThread(() -> {
+                    appendToOutput("[基准] " + report.summarize() + "\n");
+                    appendToOutput("[基准] 报告: " + report.csvFile + "\n\n");
                 });
+            } catch (Exception e) {
+                runOnUiThread(() -> appendToOutput("[基准] 失败: " + e.getMessage() + "\n\n"));
+            } finally {
+                runOnUiThread(() -> currentBenchmark = null);
+            }
+        }).start();
+    }
+
+    private void showTopProcesses(String[] parts) {
+        ProcessMonitor.SortBy sortBy = ProcessMonitor.SortBy.CPU;
+        int count = 10;
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].equals("mem")) {
+                sortBy = ProcessMonitor.SortBy.MEMORY;
+            } else if (!parts[i].equals("cpu")) {
+                try {
+                    count = Integer.parseInt(parts[i]);
+                } catch (NumberFormatException e) {
+                    appendToOutput("[错误] 用法: /top [cpu|mem] [数量]\n\n");
+                    return;
+                }
+            }
+        }
+        ProcessMonitor.SortBy order = sortBy;
+        int limit = count;
+        new Thread(() -> {
+            try {
+                ProcessMonitor monitor = rootService.getProcessMonitor();
+                // 间隔一秒采样两次才能算出 CPU 占用
+                monitor.sample();
+                Thread.sleep(1000);
+                int total = monitor.sample();
+                appendToOutput("[进程] 共 " + total + " 个\n"
+                        + ProcessMonitor.format(monitor.getTop(order, limit)) + "\n");
+            } catch (Exception e) {
+                appendToOutput("[错误] " + e.getMessage() + "\n\n");
             }
         }).start();
     }
 
+    private void killProcesses(String target, boolean regex) {
+        new Thread(() -> {
+            try {
+                ProcessMonitor monitor = rootService.getProcessMonitor();
+                List<ProcessMonitor.ProcessInfo> killed = regex
+                        ? monitor.killMatching(target, false)
+                        : monitor.killByName(target, false);
+                if (killed.isEmpty()) {
+                    appendToOutput("[进程] 没有匹配的进程: " + target + "\n\n");
+                } else {
+                    appendToOutput("[进程] 已结束 " + killed.size() + " 个进程\n"
+                            + ProcessMonitor.format(killed) + "\n");
+                }
+            } catch (Exception e) {
+                appendToOutput("[错误] " + e.getMessage() + "\n\n");
+            }
+        }).start();
+    }
+
+    private void executeRootCommand(String command) {
+        if (currentRootStream != null && !currentRootStream.isFinished()) {
+            currentRootStream.cancel();
+        }
+        appendToOutput("[Root]\n");
+        try {
+            // 逐行流式显示，logcat 等长时间运行的命令用 /stop 结束
+            currentRootStream = rootService.streamCommand(command, true, new RootCommandStream.StreamListener() {
+                @Override
+                public void onStdout(String text) {
+                    appendToOutput(text + "\n");
+                }
+
+                @Override
+                public void onStderr(String text) {
+                    appendToOutput("[ERROR] " + text + "\n");
+                }
+
+                @Override
+                public void onExit(int exitCode) {
+                    appendToOutput(exitCode == 0 ? "\n" : "[Root] 退出码: " + exitCode + "\n\n");
+                }
+            });
+        } catch (Exception e) {
+            appendToOutput("[错误] " + e.getMessage() + "\n\n");
+        }
+    }
+
+    /**
+     * 追加输出，可在任意线程调用，每帧合并显示一次
+     */
     private void appendToOutput(String text) {
-        outputTextView.append(text);
-        scrollView.post(() -> scrollView.fullScroll(ScrollView.FOCUS_DOWN));
+        transcript.append(text);
     }
 
     @Override
@@ -450,12 +946,30 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 界面隐藏不代表内存紧张，不必处理
+        if (aiService != null && level != TRIM_MEMORY_UI_HIDDEN) {
+            new Thread(() -> aiService.getResidencyManager().onTrimMemory(level)).start();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (modelWarmer != null) {
+            modelWarmer.cancel();
+        }
+        if (currentDownload != null) {
+            currentDownload.cancel();
+        }
         if (aiService != null) {
             aiService.cleanup();
         }
+        if (currentRootStream != null) {
+            currentRootStream.cancel();
+        }
         if (rootService != null) {
             rootService.cleanup();
         }
@@ -0,0 +1,180 @@
+package com.android.aiassistant;
+
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.Arrays;
+
+/**
+ * 输出记录
+ * 任意线程的输出先写入缓冲区，每个显示帧（Choreographer 回调）最多合并刷新一次；
+ * 记录按行保存在固定容量的环形缓冲区里，超出时丢弃最早的行，追加开销和内存占用与会话长度无关。
+ * 列表只刷新变化的行，用户向上翻看时不自动滚到底部
+ */
+public class TranscriptAdapter extends RecyclerView.Adapter<TranscriptAdapter.LineHolder>
+        implements Choreographer.FrameCallback {
+
+    // 保留的最大行数
+    private static final int MAX_LINES = 2000;
+    // 单行过长（如不换行的长回答）时拆成新行，避免每帧复制整段文本
+    private static final int MAX_LINE_CHARS = 2000;
+
+    private final RecyclerView recyclerView;
+
+    // 环形缓冲区，head 为最早一行的位置；最后一行是仍在追加的当前行
+    private final String[] lines = new String[MAX_LINES];
+    private int head;
+    private int count;
+    private final StringBuilder currentLine = new StringBuilder();
+
+    // 等待下一帧刷新的输出（任意线程写入）
+    private final StringBuilder pending = new StringBuilder();
+    private boolean frameScheduled;
+
+    public TranscriptAdapter(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        LinearLayoutManager layoutManager = new LinearLayoutManager(recyclerView.getContext());
+        layoutManager.setStackFromEnd(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(this);
+    }
+
+    /**
+     * 追加输出，可在任意线程调用，下一帧统一显示
+     */
+    public void append(String text) {
+        synchronized (pending) {
+            pending.append(text);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        recyclerView.post(() -> Choreographer.getInstance().postFrameCallback(this));
+    }
+
+    /**
+     * 清空记录（主线程调用）
+     */
+    public void clear() {
+        synchronized (pending) {
+            pending.setLength(0);
+        }
+        head = 0;
+        count = 0;
+        currentLine.setLength(0);
+        Arrays.fill(lines, null);
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        String text;
+        synchronized (pending) {
+            text = pending.toString();
+            pending.setLength(0);
+            frameScheduled = false;
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+
+        boolean atBottom = !recyclerView.canScrollVertically(1);
+        int oldCount = count;
+        int dropped = 0;
+        if (count == 0) {
+            addLine();
+        }
+
+        int start = 0;
+        while (start <= text.length()) {
+            int newline = text.indexOf('\n', start);
+            int end = newline >= 0 ? newline : text.length();
+            // 当前行写满时另起一行
+            while (currentLine.length() + (end - start) > MAX_LINE_CHARS) {
+                int take = MAX_LINE_CHARS - currentLine.length();
+                currentLine.append(text, start, start + take);
+                start += take;
+                dropped += addLine();
+            }
+            currentLine.append(text, start, end);
+            if (newline < 0) {
+                break;
+            }
+            dropped += addLine();
+            start = newline + 1;
+        }
+        setLine(count - 1, currentLine.toString());
+
+        // 被丢弃的旧行先移除，再刷新原来的最后一行和新增行
+        if (oldCount == 0 || dropped >= oldCount) {
+            notifyDataSetChanged();
+        } else {
+            if (dropped > 0) {
+                notifyItemRangeRemoved(0, dropped);
+            }
+            int kept = oldCount - dropped;
+            notifyItemChanged(kept - 1);
+            if (count > kept) {
+                notifyItemRangeInserted(kept, count - kept);
+            }
+        }
+        if (atBottom) {
+            recyclerView.scrollToPosition(count - 1);
+        }
+    }
+
+    /**
+     * 结束当前行并开始新的一行，返回因容量满而丢弃的行数
+     */
+    private int addLine() {
+        if (count > 0) {
+            setLine(count - 1, currentLine.toString());
+            currentLine.setLength(0);
+        }
+        if (count < MAX_LINES) {
+            count++;
+            setLine(count - 1, "");
+            return 0;
+        }
+        head = (head + 1) % MAX_LINES;
+        setLine(count - 1, "");
+        return 1;
+    }
+
+    private void setLine(int position, String line) {
+        lines[(head + position) % MAX_LINES] = line;
+    }
+
+    @NonNull
+    @Override
+    public LineHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_output_line, parent, false);
+        return new LineHolder((TextView) view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LineHolder holder, int position) {
+        holder.textView.setText(lines[(head + position) % MAX_LINES]);
+    }
+
+    @Override
+    public int getItemCount() {
+        return count;
+    }
+
+    static class LineHolder extends RecyclerView.ViewHolder {
+        final TextView textView;
+
+        LineHolder(TextView textView) {
+            super(textView);
+            this.textView = textView;
+        }
+    }
+}
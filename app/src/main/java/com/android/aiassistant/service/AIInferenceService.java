@@ -2,11 +2,29 @@ package com.android.aiassistant.service;
 
 import android.content.Context;
 import android.util.Log;
+import com.android.aiassistant.utils.AIModelManager;
+import com.android.aiassistant.utils.DeviceTuner;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * AI 推理服务
@@ -15,10 +33,11 @@ import java.util.List;
 public class AIInferenceService {
 
     private static final String TAG = "AIInferenceService";
+    private static final String TASKSET_PATH = "/system/bin/taskset";
+    private static final String CALIBRATION_PROMPT = "Write a short paragraph about the ocean.";
+    private static final int CALIBRATION_TOKENS = 32;
 
     private Context context;
-    private Process inferenceProcess;
-    private boolean isRunning;
 
     // 推理参数
     private int contextLength = 2048;
@@ -26,142 +45,1162 @@ public class AIInferenceService {
     private float temperature = 0.7f;
     private float topP = 0.9f;
     private int maxTokens = 512;
+    // 随机种子，-1 表示每次随机
+    private int seed = -1;
+
+    // 线程与绑核（0 表示交给 llama.cpp 默认值 / 不绑定）
+    private int threads = 0;
+    private long cpuMask = 0;
+
+    // 常驻 server 后端（每个模型一个）
+    private boolean useServerBackend = true;
+    private final Map<String, LlamaServerBackend> serverBackends = new HashMap<>();
+    // 后端启动时的命令前缀和参数，变化后下次使用时重启
+    private final Map<String, List<String>> serverBackendArgs = new HashMap<>();
+
+    // 多轮会话缓存
+    private final SessionManager sessionManager;
+
+    // 所有请求都经过调度器，默认同一时间只跑一个推理
+    private final InferenceScheduler scheduler = new InferenceScheduler(1, 16);
+
+    // 结果缓存（仅用于无状态的单轮推理，且输出确定时才生效）
+    private final ResponseCache responseCache;
+    private boolean useResponseCache = true;
+
+    // 耗时统计
+    private final InferenceStats stats;
+
+    // 硬件自动调优
+    private final DeviceTuner deviceTuner;
+
+    // 投机解码：用同系列的小模型起草，主模型批量验证
+    private final AIModelManager modelManager;
+    private boolean useSpeculative = false;
+    private int draftTokens = 8;
+
+    // 多模型常驻
+    private final ModelResidencyManager residencyManager;
+
+    // 文档向量索引，按目录缓存
+    private final Map<String, EmbeddingIndex> embeddingIndexes = new HashMap<>();
+    private static final String EMBEDDING_SUFFIX = "#embedding";
+
+    private static final String SUMMARY_INSTRUCTION =
+            "Summarize the following conversation in a few sentences, keeping names, facts and decisions.\n\n";
+    private static final String EMBEDDING_SEPARATOR = "<#sep#>";
+    private static final int EMBEDDING_CONTEXT = 2048;
 
     public AIInferenceService(Context context) {
         this.context = context;
+        this.stats = new InferenceStats(new File(context.getExternalFilesDir(null), "inference-stats.jsonl"), 256);
+        this.deviceTuner = new DeviceTuner(new File(context.getFilesDir(), "tuning"));
+        this.modelManager = new AIModelManager(context);
+        this.residencyManager = new ModelResidencyManager(deviceTuner, this::unloadModel);
+        this.sessionManager = new SessionManager(new File(context.getCacheDir(), "sessions"));
+        this.responseCache = new ResponseCache(new File(context.getCacheDir(), "responses"),
+                64, 32L * 1024 * 1024);
+        // 模型目录索引里的完整 SHA-256（下载校验或后台计算）作为缓存键的模型标识
+        this.responseCache.setModelHashProvider(path -> modelManager.getCatalog().getSha256(path));
     }
 
     /**
      * 执行 AI 推理
      */
     public String inference(String modelPath, String prompt) throws Exception {
+        if (!isResponseCacheable()) {
+            return scheduler.submit(timed(modelPath, handle -> doInference(handle, modelPath, prompt, null)),
+                    InferenceScheduler.PRIORITY_NORMAL, null).await();
+        }
+        String key = buildCacheKey(modelPath, prompt);
+        return responseCache.getOrCompute(key, () ->
+                scheduler.submit(timed(modelPath, handle -> doInference(handle, modelPath, prompt, null)),
+                        InferenceScheduler.PRIORITY_NORMAL, null).await());
+    }
+
+    /**
+     * 流式推理
+     */
+    public InferenceHandle streamInference(String modelPath, String prompt, InferenceCallback callback) {
+        return submitInference(modelPath, prompt, InferenceScheduler.PRIORITY_NORMAL, callback);
+    }
+
+    /**
+     * 按优先级提交流式推理请求，队列已满时通过 onError 通知并返回 null
+     */
+    public InferenceHandle submitInference(String modelPath, String prompt, int priority,
+                                           InferenceCallback callback) {
+        if (!isResponseCacheable()) {
+            return submit(timed(modelPath, handle -> doInference(handle, modelPath, prompt, callback)),
+                    priority, callback);
+        }
+
+        // 提交前查缓存：命中或有相同请求正在计算时不进队列，不必排在正在运行的推理后面
+        ResponseCache.Claim claim;
+        try {
+            claim = responseCache.claim(buildCacheKey(modelPath, prompt));
+        } catch (Exception e) {
+            callback.onError(e.getMessage());
+            return null;
+        }
+        if (!claim.isOwner()) {
+            try {
+                return scheduler.runImmediately(handle -> {
+                    String result = claim.await();
+                    callback.onToken(result);
+                    return result;
+                }, callback);
+            } catch (Exception e) {
+                callback.onError(e.getMessage());
+                return null;
+            }
+        }
+
+        InferenceHandle submitted = submit(timed(modelPath, handle -> {
+            try {
+                String result = doInference(handle, modelPath, prompt, callback);
+                if (handle.isCancelled()) {
+                    claim.fail(new Exception("推理已取消"));
+                } else {
+                    claim.complete(result);
+                }
+                return result;
+            } catch (Exception e) {
+                claim.fail(e);
+                throw e;
+            }
+        }), priority, callback);
+        if (submitted == null) {
+            claim.fail(new Exception("推理请求提交失败"));
+        }
+        return submitted;
+    }
+
+    /**
+     * 多轮会话推理，复用会话已评估的前缀
+     */
+    public String chat(InferenceSession session, String message) throws Exception {
+        return scheduler.submit(timed(session.getModelPath(),
+                handle -> sessionInference(handle, session, message, null)),
+                InferenceScheduler.PRIORITY_NORMAL, null).await();
+    }
+
+    /**
+     * 多轮会话流式推理
+     */
+    public InferenceHandle streamChat(InferenceSession session, String message, InferenceCallback callback) {
+        return submit(timed(session.getModelPath(),
+                handle -> sessionInference(handle, session, message, callback)),
+                InferenceScheduler.PRIORITY_NORMAL, callback);
+    }
+
+    /**
+     * 批量推理，返回结果与 prompts 一一对应
+     */
+    public List<String> inferBatch(String modelPath, List<String> prompts) throws Exception {
+        final String[] results = new String[prompts.size()];
+        scheduler.submit(timed(modelPath, handle -> runBatch(handle, modelPath, prompts, new BatchCallback() {
+            @Override
+            public void onToken(int index, String token) {
+            }
+
+            @Override
+            public void onResult(int index, String result) {
+                results[index] = result;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        })), InferenceScheduler.PRIORITY_NORMAL, null).await();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 批量流式推理，每个 prompt 的增量和结果分别回调，先完成的先返回
+     */
+    public InferenceHandle streamBatch(String modelPath, List<String> prompts, BatchCallback callback) {
+        InferenceCallback completion = new InferenceCallback() {
+            @Override
+            public void onToken(String token) {
+            }
+
+            @Override
+            public void onComplete() {
+                callback.onComplete();
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        };
+        return submit(timed(modelPath, handle -> runBatch(handle, modelPath, prompts, callback)),
+                InferenceScheduler.PRIORITY_NORMAL, completion);
+    }
+
+    /**
+     * 执行批量推理
+     * server 模式下每个请求占用一个无会话专用 slot，同时发出与专用 slot 数相同的请求，
+     * 由 server 连续批处理一起解码，不会挤掉会话 slot 里的 KV 缓存；
+     * 单次进程模式没有并行解码能力，按顺序逐个执行
+     */
+    private String runBatch(InferenceHandle handle, String modelPath, List<String> prompts,
+                            BatchCallback callback) throws Exception {
+        if (!new File(modelPath).exists()) {
+            throw new Exception("模型文件不存在: " + modelPath);
+        }
+
+        if (!isServerBackendEnabled()) {
+            for (int i = 0; i < prompts.size() && !handle.isCancelled(); i++) {
+                String result = runProcess(handle, buildCommand(modelPath, prompts.get(i)),
+                        new BatchTokenCallback(i, callback), null);
+                callback.onResult(i, result.trim());
+            }
+            return null;
+        }
+
+        LlamaServerBackend backend = getServerBackend(modelPath, handle.getTiming());
+        List<Integer> scratchSlots = sessionManager.getScratchSlots();
+        int parallel = Math.max(1, Math.min(scratchSlots.size(), prompts.size()));
+        BlockingQueue<Integer> freeSlots = new LinkedBlockingQueue<>(scratchSlots);
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < prompts.size(); i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> {
+                    if (handle.isCancelled()) {
+                        return null;
+                    }
+                    JsonObject body = buildCompletionBody(prompts.get(index));
+                    Integer slot = freeSlots.take();
+                    String result;
+                    try {
+                        body.addProperty("id_slot", slot);
+                        result = serverStream(handle, backend, body, new BatchTokenCallback(index, callback));
+                    } finally {
+                        freeSlots.put(slot);
+                    }
+                    if (!handle.isCancelled()) {
+                        callback.onResult(index, result.trim());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return null;
+    }
+
+    /**
+     * 预热 server 后端：启动 server 并跑一次 1 token 的推理
+     * 单次进程模式没有常驻状态可预热，返回 null
+     */
+    public InferenceHandle warmUpBackend(String modelPath) throws Exception {
+        if (!isServerBackendEnabled()) {
+            return null;
+        }
+        return scheduler.submit(inUse(modelPath, handle -> {
+            LlamaServerBackend backend = getServerBackend(modelPath, handle.getTiming());
+            JsonObject body = buildCompletionBody("Hello");
+            body.addProperty("n_predict", 1);
+            body.addProperty("id_slot", sessionManager.nextScratchSlot());
+            return serverComplete(handle, backend, body);
+        }), InferenceScheduler.PRIORITY_LOW, null);
+    }
+
+    /**
+     * 请求成功结束后记录耗时（缓存命中等没有实际推理的请求不记录）
+     */
+    private InferenceScheduler.Task timed(String modelPath, InferenceScheduler.Task task) {
+        return inUse(modelPath, handle -> {
+            String result = task.run(handle);
+            InferenceTiming timing = handle.getTiming();
+            timing.finish();
+            if (!handle.isCancelled() && (timing.hasTokenCounts() || timing.ttftMs >= 0)) {
+                timing.model = new File(modelPath).getName();
+                stats.record(timing);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 任务执行期间把后端标记为使用中，防止被内存管理淘汰
+     */
+    private InferenceScheduler.Task inUse(String residencyKey, InferenceScheduler.Task task) {
+        return handle -> {
+            residencyManager.beginUse(residencyKey);
+            try {
+                return task.run(handle);
+            } finally {
+                residencyManager.endUse(residencyKey);
+            }
+        };
+    }
+
+    public InferenceStats getStats() {
+        return stats;
+    }
+
+    private InferenceHandle submit(InferenceScheduler.Task task, int priority, InferenceCallback callback) {
+        try {
+            return scheduler.submit(task, priority, callback);
+        } catch (Exception e) {
+            callback.onError(e.getMessage());
+            return null;
+        }
+    }
+
+    private String doInference(InferenceHandle handle, String modelPath, String prompt,
+                               InferenceCallback streamCallback) throws Exception {
+        return doInference(handle, modelPath, prompt, streamCallback, currentOptions());
+    }
+
+    /**
+     * 按给定的参数快照推理，不读取服务的当前设置
+     */
+    private String doInference(InferenceHandle handle, String modelPath, String prompt,
+                               InferenceCallback streamCallback, RequestOptions options) throws Exception {
         File modelFile = new File(modelPath);
         if (!modelFile.exists()) {
             throw new Exception("模型文件不存在: " + modelPath);
         }
 
-        // 构建 llama.cpp 命令
-        List<String> command = new ArrayList<>();
-        command.add(getLlamaCppPath());
+        if (isServerBackendEnabled()) {
+            // 无会话请求（包括后台摘要）固定走 scratch slot，不覆盖会话 slot 里的 KV 缓存
+            LlamaServerBackend backend = getServerBackend(modelPath, handle.getTiming(), options);
+            JsonObject body = buildCompletionBody(prompt, options);
+            body.addProperty("id_slot", sessionManager.nextScratchSlot());
+            if (streamCallback != null) {
+                return serverStream(handle, backend, body, streamCallback);
+            }
+            return serverComplete(handle, backend, body).trim();
+        }
+
+        return runProcess(handle, buildCommand(modelPath, prompt, options), streamCallback, null).trim();
+    }
+
+    private String buildCacheKey(String modelPath, String prompt) throws Exception {
+        if (!new File(modelPath).exists()) {
+            throw new Exception("模型文件不存在: " + modelPath);
+        }
+        return responseCache.buildKey(modelPath, prompt, temperature, topP, seed, maxTokens, contextLength);
+    }
+
+    /**
+     * 只有输出确定（温度为 0 或固定种子）时才缓存，否则同一问题每次都会得到同一个“随机”回答
+     */
+    private boolean isResponseCacheable() {
+        return useResponseCache && (temperature == 0 || seed >= 0);
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * 设置是否缓存单轮推理结果（只对温度为 0 或固定种子的请求生效）
+     */
+    public void setUseResponseCache(boolean useResponseCache) {
+        this.useResponseCache = useResponseCache;
+    }
+
+    /**
+     * 创建多轮会话
+     */
+    public InferenceSession createSession(String modelPath) {
+        return sessionManager.createSession(modelPath);
+    }
+
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
+
+    private String sessionInference(InferenceHandle handle, InferenceSession session, String message,
+                                    InferenceCallback streamCallback) throws Exception {
+        String modelPath = session.getModelPath();
+        if (!new File(modelPath).exists()) {
+            throw new Exception("模型文件不存在: " + modelPath);
+        }
+
+        // 每条消息只计算一次 token 数，回复的 token 数直接取推理统计
+        LlamaServerBackend backend = isServerBackendEnabled()
+                ? getServerBackend(modelPath, handle.getTiming()) : null;
+        ContextManager contextManager = session.getContext();
+        int messageTokens = countTokens(backend, message);
+        String prompt = contextManager.buildPrompt(message, messageTokens, getPromptBudget());
+        String response;
+
+        if (backend != null) {
+            // server 模式：会话固定在一个 slot 上，cache_prompt 让 server 只评估新增后缀
+            JsonObject body = buildCompletionBody(prompt);
+            body.addProperty("cache_prompt", true);
+            body.addProperty("id_slot", sessionManager.acquireSlot(session, backend));
+            if (streamCallback != null) {
+                response = serverStream(handle, backend, body, streamCallback);
+            } else {
+                response = serverComplete(handle, backend, body);
+            }
+        } else {
+            // 单次进程模式：prompt cache 文件保存已评估的前缀
+            sessionManager.touch(session);
+            List<String> command = buildCommand(modelPath, prompt);
+            command.add("--prompt-cache");
+            command.add(sessionManager.getPromptCacheFile(session).getAbsolutePath());
+            command.add("--prompt-cache-all");
+            File errorLog = new File(context.getExternalFilesDir(null), "llama-main.log");
+            response = runProcess(handle, command, streamCallback, errorLog);
+        }
+
+        if (!handle.isCancelled()) {
+            int responseTokens = handle.getTiming().generatedTokens;
+            if (responseTokens <= 0) {
+                responseTokens = estimateTokens(response);
+            }
+            contextManager.commit(message, messageTokens, response, responseTokens);
+            summarizeInBackground(session);
+        }
+        sessionManager.trimDisk();
+        return response.trim();
+    }
+
+    /**
+     * prompt 可用的 token 数：上下文长度减去生成预留
+     */
+    public int getPromptBudget() {
+        return Math.max(contextLength / 4, contextLength - maxTokens);
+    }
+
+    /**
+     * 文本的 token 数：server 模式用模型自己的分词器，否则估算
+     */
+    private int countTokens(LlamaServerBackend backend, String text) {
+        if (backend != null) {
+            try {
+                return backend.countTokens(text);
+            } catch (Exception e) {
+                Log.w(TAG, "分词失败，使用估算: " + e.getMessage());
+            }
+        }
+        return estimateTokens(text);
+    }
+
+    /**
+     * 粗估 token 数：中日韩字符按每字 1 个，其余按每 4 个字符 1 个
+     */
+    static int estimateTokens(String text) {
+        int wide = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x2E80) {
+                wide++;
+            } else {
+                other++;
+            }
+        }
+        return wide + (other + 3) / 4;
+    }
+
+    /**
+     * 把移出窗口的轮次并入滚动摘要（低优先级，不阻塞对话）
+     */
+    private void summarizeInBackground(InferenceSession session) {
+        ContextManager contextManager = session.getContext();
+        List<ContextManager.Turn> batch = contextManager.beginSummary();
+        if (batch == null) {
+            return;
+        }
+
+        StringBuilder prompt = new StringBuilder(SUMMARY_INSTRUCTION);
+        String previous = contextManager.getSummary();
+        if (!previous.isEmpty()) {
+            prompt.append("Existing summary: ").append(previous).append("\n\n");
+        }
+        for (ContextManager.Turn turn : batch) {
+            prompt.append(turn.text);
+        }
+        prompt.append("\nSummary: ");
+
+        String modelPath = session.getModelPath();
+        try {
+            scheduler.submit(inUse(modelPath, handle -> {
+                String summary = null;
+                try {
+                    summary = doInference(handle, modelPath, prompt.toString(), null).trim();
+                    int tokens = handle.getTiming().generatedTokens;
+                    contextManager.finishSummary(batch, summary, tokens > 0 ? tokens : estimateTokens(summary));
+                } finally {
+                    if (summary == null) {
+                        contextManager.finishSummary(batch, null, 0);
+                    }
+                }
+                return summary;
+            }), InferenceScheduler.PRIORITY_LOW, null);
+        } catch (Exception e) {
+            Log.w(TAG, "提交摘要任务失败: " + e.getMessage());
+            contextManager.finishSummary(batch, null, 0);
+        }
+    }
+
+    /**
+     * 构建 llama.cpp 命令
+     */
+    private List<String> buildCommand(String modelPath, String prompt) {
+        return buildCommand(modelPath, prompt, currentOptions());
+    }
+
+    private List<String> buildCommand(String modelPath, String prompt, RequestOptions options) {
+        List<String> command = getCommandPrefix(options.cpuMask);
+        AIModelManager.ModelInfo draft = getDraftModel(modelPath);
+        if (draft != null && new File(getLlamaSpeculativePath()).exists()) {
+            command.add(getLlamaSpeculativePath());
+            command.add("-md");
+            command.add(draft.path);
+            command.add("--draft");
+            command.add(String.valueOf(draftTokens));
+        } else {
+            command.add(getLlamaCppPath());
+        }
         command.add("-m");
         command.add(modelPath);
         command.add("-p");
         command.add(prompt);
         command.add("-n");
-        command.add(String.valueOf(maxTokens));
+        command.add(String.valueOf(options.maxTokens));
         command.add("--ctx-size");
-        command.add(String.valueOf(contextLength));
+        command.add(String.valueOf(options.contextLength));
         command.add("--temp");
-        command.add(String.valueOf(temperature));
+        command.add(String.valueOf(options.temperature));
         command.add("--top-p");
-        command.add(String.valueOf(topP));
+        command.add(String.valueOf(options.topP));
+        if (options.seed >= 0) {
+            command.add("--seed");
+            command.add(String.valueOf(options.seed));
+        }
         command.add("-b");
-        command.add(String.valueOf(batchSize));
+        command.add(String.valueOf(options.batchSize));
+        if (options.threads > 0) {
+            command.add("-t");
+            command.add(String.valueOf(options.threads));
+        }
+        command.add("--no-display-prompt");
+        return command;
+    }
 
-        // 执行命令
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
+    /**
+     * 绑核前缀：设置了 CPU 掩码且系统有 taskset 时使用
+     */
+    private List<String> getCommandPrefix() {
+        return getCommandPrefix(cpuMask);
+    }
 
-        inferenceProcess = processBuilder.start();
-        isRunning = true;
+    private List<String> getCommandPrefix(long cpuMask) {
+        List<String> prefix = new ArrayList<>();
+        if (cpuMask != 0 && new File(TASKSET_PATH).exists()) {
+            prefix.add(TASKSET_PATH);
+            prefix.add(Long.toHexString(cpuMask));
+        }
+        return prefix;
+    }
 
-        // 读取输出
-        StringBuilder output = new StringBuilder();
-        BufferedReader reader = new BufferedReader(
-                new InputStreamReader(inferenceProcess.getInputStream()));
+    /**
+     * 启动 llama.cpp 进程并读取输出
+     * stdout 只包含生成内容；stderr 在单独线程中读取，解析 llama_print_timings 耗时
+     *
+     * @param streamCallback 非空时按小块把输出增量推送出去
+     * @param errorLog       非空时 stderr 同时追加写入该文件
+     */
+    private String runProcess(InferenceHandle handle, List<String> command,
+                              InferenceCallback streamCallback, File errorLog) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        Process process = processBuilder.start();
+        handle.attachProcess(process);
+        Thread stderrReader = readTimings(process, handle.getTiming(), errorLog);
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
-        }
+        String output = ProcessOutputReader.readOutput(process.getInputStream(), handle.getTiming(),
+                new ProcessOutputReader.OutputListener() {
+                    @Override
+                    public boolean isCancelled() {
+                        return handle.isCancelled();
+                    }
+
+                    @Override
+                    public void onOutput(String delta) {
+                        if (streamCallback != null) {
+                            streamCallback.onToken(delta);
+                        }
+                    }
+                });
 
         // 等待进程结束
-        int exitCode = inferenceProcess.waitFor();
-        isRunning = false;
+        int exitCode = process.waitFor();
+        stderrReader.join(1000);
+        if (handle.isCancelled()) {
+            return output;
+        }
 
         if (exitCode != 0) {
             throw new Exception("推理失败，退出码: " + exitCode);
         }
 
-        return output.toString().trim();
+        return output;
     }
 
     /**
-     * 流式推理
+     * 读取 llama.cpp 的 stderr 日志并解析耗时
      */
-    public void streamInference(String modelPath, String prompt, InferenceCallback callback) {
-        new Thread(() -> {
+    private Thread readTimings(Process process, InferenceTiming timing, File errorLog) {
+        Thread reader = new Thread(() -> {
+            Writer log = null;
             try {
-                File modelFile = new File(modelPath);
-                if (!modelFile.exists()) {
-                    callback.onError("模型文件不存在: " + modelPath);
-                    return;
+                if (errorLog != null) {
+                    log = new OutputStreamWriter(new FileOutputStream(errorLog, true), StandardCharsets.UTF_8);
+                }
+                ProcessOutputReader.readTimingLog(process.getErrorStream(), timing, log);
+            } catch (Exception e) {
+                Log.w(TAG, "读取 llama.cpp 日志失败: " + e.getMessage());
+            } finally {
+                if (log != null) {
+                    try {
+                        log.close();
+                    } catch (Exception ignored) {
+                    }
                 }
+            }
+        }, "llama-stderr");
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * 通过 server 非流式推理
+     */
+    private String serverComplete(InferenceHandle handle, LlamaServerBackend backend,
+                                  JsonObject body) throws Exception {
+        JsonObject response = backend.complete(body);
+        if (!response.has("content")) {
+            throw new Exception("server 响应缺少 content 字段");
+        }
+        if (response.has("timings")) {
+            handle.getTiming().addServerTimings(response.getAsJsonObject("timings"));
+        }
+        return response.get("content").getAsString();
+    }
+
+    /**
+     * 通过 server 流式推理，取消时停止接收
+     */
+    private String serverStream(InferenceHandle handle, LlamaServerBackend backend, JsonObject body,
+                                InferenceCallback streamCallback) throws Exception {
+        StringBuilder output = new StringBuilder();
+        JsonObject last = backend.streamCompletion(body, content -> {
+            if (handle.isCancelled()) {
+                return false;
+            }
+            handle.getTiming().markFirstToken();
+            output.append(content);
+            streamCallback.onToken(content);
+            return true;
+        });
+        if (last.has("timings")) {
+            handle.getTiming().addServerTimings(last.getAsJsonObject("timings"));
+        }
+        return output.toString();
+    }
+
+    /**
+     * 构建 /completion 请求体
+     */
+    private JsonObject buildCompletionBody(String prompt) {
+        return buildCompletionBody(prompt, currentOptions());
+    }
+
+    private JsonObject buildCompletionBody(String prompt, RequestOptions options) {
+        JsonObject body = new JsonObject();
+        body.addProperty("prompt", prompt);
+        body.addProperty("n_predict", options.maxTokens);
+        body.addProperty("temperature", options.temperature);
+        body.addProperty("top_p", options.topP);
+        if (options.seed >= 0) {
+            body.addProperty("seed", options.seed);
+        }
+        body.addProperty("stream", false);
+        return body;
+    }
+
+    /**
+     * 获取模型对应的 server 后端，不存在或参数已变化时（重新）启动
+     */
+    private LlamaServerBackend getServerBackend(String modelPath, InferenceTiming timing) throws Exception {
+        return getServerBackend(modelPath, timing, currentOptions());
+    }
+
+    private LlamaServerBackend getServerBackend(String modelPath, InferenceTiming timing,
+                                                RequestOptions options) throws Exception {
+        LlamaServerBackend backend;
+        synchronized (serverBackends) {
+            List<String> args = buildServerArgs(modelPath, options);
+            List<String> signature = new ArrayList<>(getCommandPrefix(options.cpuMask));
+            signature.addAll(args);
+            backend = serverBackends.get(modelPath);
+            if (backend != null && !signature.equals(serverBackendArgs.get(modelPath))) {
+                unloadModel(modelPath);
+                backend = null;
+            }
+            if (backend == null) {
+                residencyManager.reserve(modelPath, estimateFootprint(modelPath, options.contextLength));
+                File logFile = new File(context.getExternalFilesDir(null), "llama-server.log");
+                backend = new LlamaServerBackend(getLlamaServerPath(), modelPath,
+                        LlamaServerBackend.findFreePort(), args, logFile);
+                backend.setCommandPrefix(getCommandPrefix(options.cpuMask));
+                serverBackends.put(modelPath, backend);
+                serverBackendArgs.put(modelPath, signature);
+            }
+        }
+        residencyManager.touch(modelPath);
+        long start = System.currentTimeMillis();
+        backend.ensureRunning();
+        if (timing != null) {
+            timing.addLoadTime(System.currentTimeMillis() - start);
+        }
+        return backend;
+    }
 
-                List<String> command = new ArrayList<>();
-                command.add(getLlamaCppPath());
-                command.add("-m");
-                command.add(modelPath);
-                command.add("-p");
-                command.add(prompt);
-                command.add("-n");
-                command.add(String.valueOf(maxTokens));
-                command.add("--ctx-size");
-                command.add(String.valueOf(contextLength));
-                command.add("--temp");
-                command.add(String.valueOf(temperature));
-                command.add("--top-p");
-                command.add(String.valueOf(topP));
-                command.add("-b");
-                command.add(String.valueOf(batchSize));
-
-                ProcessBuilder processBuilder = new ProcessBuilder(command);
-                processBuilder.redirectErrorStream(true);
-
-                inferenceProcess = processBuilder.start();
-                isRunning = true;
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(inferenceProcess.getInputStream()));
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (!isRunning) {
-                        break;
+    private List<String> buildServerArgs(String modelPath, RequestOptions options) {
+        // 每个 slot 都要有完整的上下文长度，会话 slot 存盘到 SessionManager 的缓存目录
+        int slots = sessionManager.getServerSlots();
+        List<String> args = new ArrayList<>();
+        args.add("--ctx-size");
+        args.add(String.valueOf(options.contextLength * slots));
+        args.add("-b");
+        args.add(String.valueOf(options.batchSize));
+        args.add("-np");
+        args.add(String.valueOf(slots));
+        args.add("--slot-save-path");
+        args.add(sessionManager.getCacheDirectory().getAbsolutePath());
+        if (options.threads > 0) {
+            args.add("-t");
+            args.add(String.valueOf(options.threads));
+        }
+        AIModelManager.ModelInfo draft = getDraftModel(modelPath);
+        if (draft != null) {
+            args.add("-md");
+            args.add(draft.path);
+            args.add("--draft-max");
+            args.add(String.valueOf(draftTokens));
+        }
+        return args;
+    }
+
+    /**
+     * 估算后端常驻内存：模型权重 + 所有 slot 的 KV 缓存（+ 草稿模型）
+     */
+    private long estimateFootprint(String modelPath, int contextLength) {
+        AIModelManager.ModelInfo model = modelManager.getModelInfoByPath(modelPath);
+        long kvPerToken = model.getKvBytesPerToken();
+        if (kvPerToken <= 0) {
+            kvPerToken = Math.max(64 * 1024, model.size / 32768);
+        }
+        long footprint = model.size + kvPerToken * contextLength * sessionManager.getServerSlots();
+        AIModelManager.ModelInfo draft = getDraftModel(modelPath);
+        if (draft != null) {
+            footprint += draft.size;
+        }
+        return footprint;
+    }
+
+    /**
+     * 计算一组文本的向量（低优先级排队，不抢占对话）
+     * 优先使用目录中的专用向量模型，没有时进程模式用给定模型；
+     * server 模式不会为对话模型再常驻一个 --embedding 进程（内存会翻倍），直接报错
+     */
+    public List<float[]> embed(String modelPath, List<String> texts) throws Exception {
+        String embeddingModel = getEmbeddingModel(modelPath);
+        if (isServerBackendEnabled() && embeddingModel.equals(modelPath)) {
+            throw new Exception("未找到专用向量模型（文件名含 embed、bge、minilm 或 e5 的 GGUF），请先下载一个向量模型");
+        }
+        List<float[]> vectors = new ArrayList<>();
+        InferenceHandle handle = scheduler.submit(inUse(embeddingModel + EMBEDDING_SUFFIX, h -> {
+            if (isServerBackendEnabled()) {
+                LlamaServerBackend backend = getEmbeddingBackend(embeddingModel);
+                for (String text : texts) {
+                    if (h.isCancelled()) {
+                        throw new Exception("推理已取消");
                     }
-                    callback.onToken(line);
+                    vectors.add(backend.embed(text));
                 }
+            } else {
+                vectors.addAll(runEmbeddingProcess(h, embeddingModel, texts));
+            }
+            return null;
+        }), InferenceScheduler.PRIORITY_LOW, null);
+        handle.await();
+        return vectors;
+    }
 
-                int exitCode = inferenceProcess.waitFor();
-                isRunning = false;
+    /**
+     * 目录对应的向量索引（索引文件存放在缓存目录）
+     */
+    public EmbeddingIndex getEmbeddingIndex(String directory) {
+        String path = new File(directory).getAbsolutePath();
+        synchronized (embeddingIndexes) {
+            EmbeddingIndex index = embeddingIndexes.get(path);
+            if (index == null) {
+                String name = Integer.toHexString(path.hashCode()) + "-" + new File(path).getName();
+                index = new EmbeddingIndex(new File(path),
+                        new File(new File(context.getCacheDir(), "embeddings"), name));
+                embeddingIndexes.put(path, index);
+            }
+            return index;
+        }
+    }
 
-                if (exitCode != 0) {
-                    callback.onError("推理失败，退出码: " + exitCode);
-                } else {
-                    callback.onComplete();
+    /**
+     * 挑选向量模型：文件名像专用向量模型的优先，否则使用当前模型
+     */
+    public String getEmbeddingModel(String modelPath) {
+        for (AIModelManager.ModelInfo model : modelManager.getAvailableModels()) {
+            String name = model.name.toLowerCase();
+            if (name.contains("embed") || name.contains("bge") || name.contains("minilm")
+                    || name.startsWith("e5") || name.contains("-e5-")) {
+                return model.path;
+            }
+        }
+        return modelPath;
+    }
+
+    /**
+     * 向量计算专用的 server 后端，与对话后端分开，同样受常驻内存预算管理
+     */
+    private LlamaServerBackend getEmbeddingBackend(String modelPath) throws Exception {
+        String key = modelPath + EMBEDDING_SUFFIX;
+        LlamaServerBackend backend;
+        synchronized (serverBackends) {
+            backend = serverBackends.get(key);
+            if (backend == null) {
+                residencyManager.reserve(key, new File(modelPath).length());
+                List<String> args = new ArrayList<>();
+                args.add("--embedding");
+                args.add("--pooling");
+                args.add("mean");
+                args.add("--ctx-size");
+                args.add(String.valueOf(EMBEDDING_CONTEXT));
+                args.add("-b");
+                args.add(String.valueOf(EMBEDDING_CONTEXT));
+                args.add("-ub");
+                args.add(String.valueOf(EMBEDDING_CONTEXT));
+                if (threads > 0) {
+                    args.add("-t");
+                    args.add(String.valueOf(threads));
                 }
+                File logFile = new File(context.getExternalFilesDir(null), "llama-server.log");
+                backend = new LlamaServerBackend(getLlamaServerPath(), modelPath,
+                        LlamaServerBackend.findFreePort(), args, logFile);
+                backend.setCommandPrefix(getCommandPrefix());
+                serverBackends.put(key, backend);
+                serverBackendArgs.put(key, args);
+            }
+        }
+        residencyManager.touch(key);
+        backend.ensureRunning();
+        return backend;
+    }
 
-            } catch (Exception e) {
-                isRunning = false;
-                callback.onError(e.getMessage());
+    /**
+     * 进程模式：一次运行 llama.cpp embedding 计算整批文本，输出 JSON
+     */
+    private List<float[]> runEmbeddingProcess(InferenceHandle handle, String modelPath,
+                                              List<String> texts) throws Exception {
+        StringBuilder prompt = new StringBuilder();
+        for (String text : texts) {
+            if (prompt.length() > 0) {
+                prompt.append(EMBEDDING_SEPARATOR);
+            }
+            prompt.append(text);
+        }
+        List<String> command = getCommandPrefix();
+        command.add(getLlamaEmbeddingPath());
+        command.add("-m");
+        command.add(modelPath);
+        command.add("-p");
+        command.add(prompt.toString());
+        command.add("--embd-separator");
+        command.add(EMBEDDING_SEPARATOR);
+        command.add("--embd-output-format");
+        command.add("json");
+        command.add("--pooling");
+        command.add("mean");
+        command.add("-c");
+        command.add(String.valueOf(EMBEDDING_CONTEXT));
+        command.add("-b");
+        command.add(String.valueOf(EMBEDDING_CONTEXT));
+        if (threads > 0) {
+            command.add("-t");
+            command.add(String.valueOf(threads));
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(new File("/dev/null"));
+        Process process = pb.start();
+        handle.attachProcess(process);
+
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                output.append(buffer, 0, read);
+            }
+        }
+        int exitCode = process.waitFor();
+        if (handle.isCancelled()) {
+            throw new Exception("推理已取消");
+        }
+        int start = output.indexOf("{");
+        if (exitCode != 0 || start < 0) {
+            throw new Exception("向量计算失败，退出码: " + exitCode);
+        }
+
+        JsonObject result = new Gson().fromJson(output.substring(start), JsonObject.class);
+        JsonArray data = result.getAsJsonArray("data");
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            JsonArray embedding = data.get(i).getAsJsonObject().getAsJsonArray("embedding");
+            float[] vector = new float[embedding.size()];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = embedding.get(j).getAsFloat();
             }
-        }).start();
+            vectors.add(vector);
+        }
+        if (vectors.size() != texts.size()) {
+            throw new Exception("向量数量不符: " + vectors.size() + " / " + texts.size());
+        }
+        return vectors;
+    }
+
+    /**
+     * 卸载模型的 server 后端，下次使用时重新加载
+     */
+    public void unloadModel(String modelPath) {
+        LlamaServerBackend backend;
+        synchronized (serverBackends) {
+            backend = serverBackends.remove(modelPath);
+            serverBackendArgs.remove(modelPath);
+            if (backend != null) {
+                backend.shutdown();
+                sessionManager.releaseModel(modelPath);
+            }
+        }
+        residencyManager.onUnloaded(modelPath);
+    }
+
+    public ModelResidencyManager getResidencyManager() {
+        return residencyManager;
+    }
+
+    /**
+     * 关闭所有 server 后端
+     */
+    private void shutdownServerBackends() {
+        synchronized (serverBackends) {
+            for (Map.Entry<String, LlamaServerBackend> entry : serverBackends.entrySet()) {
+                entry.getValue().shutdown();
+                sessionManager.releaseModel(entry.getKey());
+                residencyManager.onUnloaded(entry.getKey());
+            }
+            serverBackends.clear();
+            serverBackendArgs.clear();
+        }
+    }
+
+    /**
+     * 是否使用常驻 server 后端
+     */
+    private boolean isServerBackendEnabled() {
+        return useServerBackend && new File(getLlamaServerPath()).exists();
+    }
+
+    /**
+     * 设置是否使用常驻 server 后端（server 不可用时自动回退到单次进程模式）
+     */
+    public void setUseServerBackend(boolean useServerBackend) {
+        this.useServerBackend = useServerBackend;
+        if (!useServerBackend) {
+            shutdownServerBackends();
+        }
     }
 
     /**
      * 停止推理
      */
     public void stopInference() {
-        if (inferenceProcess != null && isRunning) {
-            isRunning = false;
-            inferenceProcess.destroy();
+        scheduler.cancelAll();
+    }
+
+    public DeviceTuner getDeviceTuner() {
+        return deviceTuner;
+    }
+
+    public InferenceScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 设置会话缓存预算（会重启 server 后端以应用新的 slot 数）
+     */
+    public void setSessionBudget(int slotsPerModel, int maxSessions, long maxDiskBytes) {
+        shutdownServerBackends();
+        sessionManager.setBudget(slotsPerModel, maxSessions, maxDiskBytes);
+    }
+
+    /**
+     * 按当前设备和模型自动调优线程数、绑核、批大小和上下文长度
+     * 已保存的配置直接使用；calibrate 为 true 时用几次短推理实测线程数
+     */
+    public DeviceTuner.TuningProfile autoTune(String modelPath, boolean calibrate) {
+        AIModelManager.ModelInfo model = modelManager.getModelInfoByPath(modelPath);
+        DeviceTuner.Calibrator calibrator = null;
+        if (calibrate) {
+            calibrator = candidate -> measureTokensPerSecond(modelPath, candidate);
+        }
+        DeviceTuner.TuningProfile profile = deviceTuner.getProfile(model, calibrator);
+        applyProfile(profile);
+        return profile;
+    }
+
+    /**
+     * 应用调优参数
+     * 已常驻的后端保留启动时的参数，参数不同的模型下次使用时才重启，切换模型不影响其他常驻模型
+     */
+    public void applyProfile(DeviceTuner.TuningProfile profile) {
+        this.threads = profile.threads;
+        this.cpuMask = profile.cpuMask;
+        this.contextLength = profile.contextLength;
+        this.batchSize = profile.batchSize;
+    }
+
+    /**
+     * 校准用：按给定参数跑一次短推理，返回生成速度
+     */
+    private double measureTokensPerSecond(String modelPath, DeviceTuner.TuningProfile profile) throws Exception {
+        RequestOptions options = currentOptions();
+        options.applyProfile(profile);
+        options.maxTokens = CALIBRATION_TOKENS;
+        InferenceHandle handle = scheduler.submit(
+                inUse(modelPath, h -> doInference(h, modelPath, CALIBRATION_PROMPT, null, options)),
+                InferenceScheduler.PRIORITY_HIGH, null);
+        handle.await();
+        return handle.getTiming().getGenerationTokensPerSecond();
+    }
+
+    /**
+     * 基准测试用：按给定参数提交一次不走缓存的流式推理（贪心采样、固定生成长度），返回带耗时记录的句柄
+     * 参数只对这次请求生效，不改动服务的当前设置
+     */
+    InferenceHandle runBenchmark(String modelPath, String prompt, DeviceTuner.TuningProfile profile,
+                                 int nPredict) throws Exception {
+        RequestOptions options = currentOptions();
+        options.applyProfile(profile);
+        options.maxTokens = nPredict;
+        options.temperature = 0;
+        InferenceCallback discard = new InferenceCallback() {
+            @Override
+            public void onToken(String token) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        };
+        return scheduler.submit(inUse(modelPath, h -> {
+            String result = doInference(h, modelPath, prompt, discard, options);
+            h.getTiming().finish();
+            return result;
+        }), InferenceScheduler.PRIORITY_HIGH, null);
+    }
+
+    /**
+     * 开启投机解码时返回可用的草稿模型，没有兼容的草稿模型则返回 null（回退到普通解码）
+     */
+    public AIModelManager.ModelInfo getDraftModel(String modelPath) {
+        if (!useSpeculative) {
+            return null;
+        }
+        return modelManager.findDraftModel(modelPath);
+    }
+
+    /**
+     * 设置投机解码
+     *
+     * @param draftTokens 每轮起草的 token 数
+     */
+    public void setSpeculativeDecoding(boolean enabled, int draftTokens) {
+        if (enabled != useSpeculative || draftTokens != this.draftTokens) {
+            shutdownServerBackends();
         }
+        this.useSpeculative = enabled;
+        this.draftTokens = draftTokens;
+    }
+
+    public boolean isSpeculativeDecoding() {
+        return useSpeculative;
+    }
+
+    /**
+     * 当前推理参数的快照
+     */
+    private RequestOptions currentOptions() {
+        RequestOptions options = new RequestOptions();
+        options.threads = threads;
+        options.cpuMask = cpuMask;
+        options.contextLength = contextLength;
+        options.batchSize = batchSize;
+        options.maxTokens = maxTokens;
+        options.temperature = temperature;
+        options.topP = topP;
+        options.seed = seed;
+        return options;
+    }
+
+    /**
+     * 设置线程数（0 表示使用 llama.cpp 默认值）
+     */
+    public void setThreads(int threads) {
+        if (threads != this.threads) {
+            shutdownServerBackends();
+        }
+        this.threads = threads;
     }
 
     /**
      * 设置推理参数
      */
     public void setParameters(int contextLength, int batchSize, float temperature, float topP, int maxTokens) {
+        if (contextLength != this.contextLength || batchSize != this.batchSize) {
+            // 上下文和批大小是 server 启动参数，需要重启后端才能生效
+            shutdownServerBackends();
+        }
         this.contextLength = contextLength;
         this.batchSize = batchSize;
         this.temperature = temperature;
@@ -169,6 +1208,13 @@ public class AIInferenceService {
         this.maxTokens = maxTokens;
     }
 
+    /**
+     * 设置随机种子，-1 表示每次随机；固定种子时相同请求的输出可复现，可以缓存
+     */
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
     /**
      * 获取 llama.cpp 路径
      */
@@ -188,6 +1234,54 @@ public class AIInferenceService {
         return new File(context.getExternalFilesDir(null), "llama.cpp/main").getAbsolutePath();
     }
 
+    /**
+     * 获取 llama.cpp speculative 路径
+     */
+    private String getLlamaSpeculativePath() {
+        File speculative = new File(context.getExternalFilesDir(null), "llama.cpp/speculative");
+        if (speculative.exists()) {
+            return speculative.getAbsolutePath();
+        }
+
+        if (new File("/data/local/tmp/llama-speculative").exists()) {
+            return "/data/local/tmp/llama-speculative";
+        }
+
+        return speculative.getAbsolutePath();
+    }
+
+    /**
+     * 获取 llama.cpp embedding 路径
+     */
+    private String getLlamaEmbeddingPath() {
+        File embedding = new File(context.getExternalFilesDir(null), "llama.cpp/embedding");
+        if (embedding.exists()) {
+            return embedding.getAbsolutePath();
+        }
+
+        if (new File("/data/local/tmp/llama-embedding").exists()) {
+            return "/data/local/tmp/llama-embedding";
+        }
+
+        return embedding.getAbsolutePath();
+    }
+
+    /**
+     * 获取 llama.cpp server 路径
+     */
+    private String getLlamaServerPath() {
+        File server = new File(context.getExternalFilesDir(null), "llama.cpp/server");
+        if (server.exists()) {
+            return server.getAbsolutePath();
+        }
+
+        if (new File("/data/local/tmp/llama-server").exists()) {
+            return "/data/local/tmp/llama-server";
+        }
+
+        return server.getAbsolutePath();
+    }
+
     /**
      * 检查 llama.cpp 是否可用
      */
@@ -199,7 +1293,65 @@ public class AIInferenceService {
      * 清理资源
      */
     public void cleanup() {
-        stopInference();
+        scheduler.shutdown();
+        shutdownServerBackends();
+    }
+
+    /**
+     * 单次请求的推理参数；校准和基准测试按自己的参数运行，不改动服务的当前设置
+     */
+    private static class RequestOptions {
+        int threads;
+        long cpuMask;
+        int contextLength;
+        int batchSize;
+        int maxTokens;
+        float temperature;
+        float topP;
+        int seed;
+
+        void applyProfile(DeviceTuner.TuningProfile profile) {
+            threads = profile.threads;
+            cpuMask = profile.cpuMask;
+            contextLength = profile.contextLength;
+            batchSize = profile.batchSize;
+        }
+    }
+
+    /**
+     * 把单个 prompt 的增量转发给批量回调
+     */
+    private static class BatchTokenCallback implements InferenceCallback {
+        private final int index;
+        private final BatchCallback callback;
+
+        BatchTokenCallback(int index, BatchCallback callback) {
+            this.index = index;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onToken(String token) {
+            callback.onToken(index, token);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onError(String error) {
+        }
+    }
+
+    /**
+     * 批量推理回调接口
+     */
+    public interface BatchCallback {
+        void onToken(int index, String token);
+        void onResult(int index, String result);
+        void onComplete();
+        void onError(String error);
     }
 
     /**
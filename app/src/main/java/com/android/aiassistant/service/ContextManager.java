@@ -0,0 +1,167 @@
+package com.android.aiassistant.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话上下文窗口
+ * 每轮对话只计算一次 token 数并维护累计值；prompt 由固定的系统前缀、滚动摘要和放得下的最近几轮组成。
+ * 超出预算时一次性把最早的若干轮移出窗口（降到预算的一半，避免每轮都改动前缀导致 KV 缓存失效），
+ * 移出的轮次交给后台生成摘要。每轮的开销只与窗口大小有关，与历史总长度无关
+ */
+public class ContextManager {
+
+    // 截断后保留的比例
+    private static final double TRIM_TARGET = 0.5;
+
+    private String systemPrompt = "";
+    private int systemTokens;
+    private String summary = "";
+    private int summaryTokens;
+
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private int turnTokens;
+    // 窗口内各轮拼接好的文本，移出最早的轮次时只前移起点
+    private final StringBuilder history = new StringBuilder();
+    private int historyStart;
+
+    // 已移出窗口、等待并入摘要的轮次
+    private final List<Turn> evicted = new ArrayList<>();
+    private boolean summarizing;
+
+    /**
+     * 设置固定的系统前缀
+     */
+    public synchronized void setSystemPrompt(String systemPrompt, int tokens) {
+        this.systemPrompt = systemPrompt != null ? systemPrompt : "";
+        this.systemTokens = tokens;
+    }
+
+    /**
+     * 构建本轮 prompt，窗口放不下时先移出最早的轮次
+     *
+     * @param budget prompt 可用的 token 数（上下文长度减去生成预留）
+     * @throws Exception 移出所有历史轮次后本轮消息仍然放不下时拒绝，不改动窗口
+     */
+    public synchronized String buildPrompt(String message, int messageTokens, int budget) throws Exception {
+        int fixed = systemTokens + summaryTokens + messageTokens;
+        if (fixed > budget) {
+            throw new Exception("消息过长（约 " + messageTokens + " tokens），超出上下文可用的 "
+                    + (budget - systemTokens - summaryTokens) + " tokens，请缩短后重试");
+        }
+        if (fixed + turnTokens > budget) {
+            int target = (int) (budget * TRIM_TARGET);
+            while (!turns.isEmpty() && fixed + turnTokens > target) {
+                Turn oldest = turns.removeFirst();
+                turnTokens -= oldest.tokens;
+                historyStart += oldest.text.length();
+                evicted.add(oldest);
+            }
+            compactHistory();
+        }
+
+        StringBuilder prompt = new StringBuilder(systemPrompt.length() + summary.length()
+                + history.length() - historyStart + message.length() + 32);
+        prompt.append(systemPrompt);
+        if (!summary.isEmpty()) {
+            prompt.append("Summary of earlier conversation: ").append(summary).append("\n");
+        }
+        prompt.append(history, historyStart, history.length());
+        prompt.append(formatUser(message));
+        return prompt.toString();
+    }
+
+    /**
+     * 本轮完成后记入窗口
+     */
+    public synchronized void commit(String message, int messageTokens, String response, int responseTokens) {
+        Turn turn = new Turn();
+        turn.text = formatUser(message) + response + "\n";
+        turn.tokens = messageTokens + responseTokens;
+        turns.addLast(turn);
+        turnTokens += turn.tokens;
+        history.append(turn.text);
+    }
+
+    /**
+     * 取出待摘要的轮次并标记为正在摘要；没有待处理的或已有摘要任务时返回 null
+     */
+    public synchronized List<Turn> beginSummary() {
+        if (summarizing || evicted.isEmpty()) {
+            return null;
+        }
+        summarizing = true;
+        List<Turn> batch = new ArrayList<>(evicted);
+        evicted.clear();
+        return batch;
+    }
+
+    /**
+     * 摘要完成（失败时 newSummary 为 null，轮次放回待处理列表）
+     */
+    public synchronized void finishSummary(List<Turn> batch, String newSummary, int tokens) {
+        summarizing = false;
+        if (newSummary == null) {
+            evicted.addAll(0, batch);
+            return;
+        }
+        summary = newSummary.trim();
+        summaryTokens = tokens;
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * 窗口内已使用的 token 数（不含本轮消息）
+     */
+    public synchronized int getUsedTokens() {
+        return systemTokens + summaryTokens + turnTokens;
+    }
+
+    public synchronized int getTurnCount() {
+        return turns.size();
+    }
+
+    /**
+     * 当前窗口的完整文本
+     */
+    public synchronized String getTranscript() {
+        return systemPrompt + (summary.isEmpty() ? "" : "Summary of earlier conversation: " + summary + "\n")
+                + history.substring(historyStart);
+    }
+
+    public synchronized void reset() {
+        turns.clear();
+        turnTokens = 0;
+        history.setLength(0);
+        historyStart = 0;
+        evicted.clear();
+        summary = "";
+        summaryTokens = 0;
+    }
+
+    /**
+     * 已移出的文本超过一半时才真正删除，摊还后每轮常数开销
+     */
+    private void compactHistory() {
+        if (historyStart > history.length() / 2) {
+            history.delete(0, historyStart);
+            historyStart = 0;
+        }
+    }
+
+    private static String formatUser(String message) {
+        return "User: " + message + "\nAssistant: ";
+    }
+
+    /**
+     * 一轮对话及其 token 数
+     */
+    public static class Turn {
+        public String text;
+        public int tokens;
+    }
+}
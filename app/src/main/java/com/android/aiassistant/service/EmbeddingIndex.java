@@ -0,0 +1,412 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import com.android.aiassistant.utils.FileUtils;
+import com.android.aiassistant.utils.HnswGraph;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 目录文档的向量索引
+ * 文本文件切块后计算向量，向量按行连续存放在 vectors.f32 中并映射到内存（不占 Java 堆），
+ * 块信息存在 chunks.json。更新时只重新计算大小或修改时间变化的文件；
+ * 块数较多时用 HNSW 近似检索，否则直接暴力计算
+ */
+public class EmbeddingIndex {
+
+    private static final String TAG = "EmbeddingIndex";
+    private static final int CHUNK_CHARS = 800;
+    private static final int CHUNK_OVERLAP = 100;
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    private static final int EMBED_BATCH = 16;
+    // 块数达到该值才建 HNSW 图，少量向量暴力计算更快也更准
+    private static final int HNSW_THRESHOLD = 512;
+    private static final int HNSW_NEIGHBORS = 16;
+    private static final int HNSW_EF_CONSTRUCTION = 100;
+    private static final int HNSW_EF_SEARCH = 64;
+
+    private final File directory;
+    private final File indexDirectory;
+    private final Gson gson = new Gson();
+
+    private Meta meta;
+    private FloatBuffer vectors;
+    private HnswGraph graph;
+
+    public EmbeddingIndex(File directory, File indexDirectory) {
+        this.directory = directory;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * 增量更新索引，返回重新计算向量的块数
+     *
+     * @param model 计算向量的模型，换模型后全部重建
+     */
+    public synchronized int update(String model, Embedder embedder, ProgressListener listener) throws Exception {
+        if (!directory.isDirectory()) {
+            throw new Exception("目录不存在: " + directory.getAbsolutePath());
+        }
+        load();
+        boolean sameModel = meta != null && model.equals(meta.model);
+
+        // 已有块按文件分组，文件未变化的直接沿用
+        Map<String, List<Integer>> oldRows = new HashMap<>();
+        if (sameModel) {
+            for (int row = 0; row < meta.chunks.size(); row++) {
+                Chunk chunk = meta.chunks.get(row);
+                List<Integer> rows = oldRows.get(chunk.file);
+                if (rows == null) {
+                    rows = new ArrayList<>();
+                    oldRows.put(chunk.file, rows);
+                }
+                rows.add(row);
+            }
+        }
+
+        List<File> files = new ArrayList<>();
+        collectFiles(directory, files);
+
+        List<Chunk> chunks = new ArrayList<>();
+        List<Integer> keptRows = new ArrayList<>();
+        List<Chunk> pending = new ArrayList<>();
+        boolean changed = !sameModel;
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            List<Integer> rows = oldRows.remove(path);
+            if (rows != null) {
+                Chunk first = meta.chunks.get(rows.get(0));
+                if (first.lastModified == file.lastModified() && first.size == file.length()) {
+                    for (int row : rows) {
+                        chunks.add(meta.chunks.get(row));
+                        keptRows.add(row);
+                    }
+                    continue;
+                }
+            }
+            changed = true;
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            for (String piece : split(text)) {
+                Chunk chunk = new Chunk();
+                chunk.file = path;
+                chunk.lastModified = file.lastModified();
+                chunk.size = file.length();
+                chunk.text = piece;
+                pending.add(chunk);
+            }
+        }
+        if (!oldRows.isEmpty()) {
+            // 有文件被删除
+            changed = true;
+        }
+        if (!changed) {
+            return 0;
+        }
+
+        // 计算新块的向量
+        List<float[]> newVectors = new ArrayList<>();
+        int dimension = sameModel ? meta.dimension : 0;
+        for (int start = 0; start < pending.size(); start += EMBED_BATCH) {
+            List<String> texts = new ArrayList<>();
+            for (int i = start; i < Math.min(pending.size(), start + EMBED_BATCH); i++) {
+                texts.add(pending.get(i).text);
+            }
+            for (float[] vector : embedder.embed(texts)) {
+                if (dimension == 0) {
+                    dimension = vector.length;
+                } else if (vector.length != dimension) {
+                    throw new Exception("向量维度不一致: " + vector.length + " / " + dimension);
+                }
+                newVectors.add(normalize(vector));
+            }
+            if (listener != null) {
+                listener.onProgress(newVectors.size(), pending.size());
+            }
+        }
+        chunks.addAll(pending);
+
+        // 写新的向量文件：沿用的行从旧文件拷贝，新行追加在后面
+        if (!indexDirectory.exists()) {
+            indexDirectory.mkdirs();
+        }
+        File tmp = new File(indexDirectory, "vectors.f32.tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer row = ByteBuffer.allocateDirect(Math.max(1, dimension) * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int oldRow : keptRows) {
+                row.clear();
+                for (int i = 0; i < dimension; i++) {
+                    row.putFloat(vectors.get(oldRow * dimension + i));
+                }
+                row.flip();
+                channel.write(row);
+            }
+            for (float[] vector : newVectors) {
+                row.clear();
+                row.asFloatBuffer().put(vector);
+                row.limit(dimension * 4);
+                channel.write(row);
+            }
+        }
+
+        Meta updated = new Meta();
+        updated.directory = directory.getAbsolutePath();
+        updated.model = model;
+        updated.dimension = dimension;
+        updated.chunks = chunks;
+        File vectorFile = new File(indexDirectory, "vectors.f32");
+        if (!tmp.renameTo(vectorFile)) {
+            throw new Exception("无法写入向量文件: " + vectorFile.getAbsolutePath());
+        }
+        saveMeta(updated);
+
+        meta = updated;
+        vectors = null;
+        graph = null;
+        mapVectors();
+        Log.i(TAG, "索引更新: " + directory + "，共 " + chunks.size() + " 块，新增 " + pending.size());
+        return pending.size();
+    }
+
+    /**
+     * 检索与查询向量最相似的 k 个块
+     */
+    public synchronized List<SearchResult> search(float[] query, int k) throws Exception {
+        load();
+        List<SearchResult> results = new ArrayList<>();
+        if (meta == null || meta.chunks.isEmpty()) {
+            return results;
+        }
+        if (query.length != meta.dimension) {
+            throw new Exception("查询向量维度不一致: " + query.length + " / " + meta.dimension);
+        }
+        float[] normalized = normalize(query);
+
+        int count = meta.chunks.size();
+        int[] rows;
+        if (count >= HNSW_THRESHOLD) {
+            if (graph == null) {
+                long start = System.currentTimeMillis();
+                graph = new HnswGraph(vectors, meta.dimension, HNSW_NEIGHBORS, HNSW_EF_CONSTRUCTION);
+                graph.build(count);
+                Log.d(TAG, "HNSW 构建 " + count + " 个向量: " + (System.currentTimeMillis() - start) + "ms");
+            }
+            rows = graph.search(normalized, k, HNSW_EF_SEARCH);
+        } else {
+            rows = bruteForce(normalized, k);
+        }
+
+        for (int row : rows) {
+            Chunk chunk = meta.chunks.get(row);
+            SearchResult result = new SearchResult();
+            result.file = chunk.file;
+            result.text = chunk.text;
+            result.score = dot(normalized, row);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * 暴力检索：逐行计算内积，保留前 k 个
+     */
+    int[] bruteForce(float[] query, int k) {
+        int count = meta.chunks.size();
+        int n = Math.min(k, count);
+        int[] best = new int[n];
+        float[] bestScores = new float[n];
+        int found = 0;
+        for (int row = 0; row < count; row++) {
+            float score = dot(query, row);
+            if (found < n) {
+                best[found] = row;
+                bestScores[found] = score;
+                found++;
+            } else if (score > bestScores[n - 1]) {
+                best[n - 1] = row;
+                bestScores[n - 1] = score;
+            } else {
+                continue;
+            }
+            // 插入排序保持降序
+            for (int i = found - 1; i > 0 && bestScores[i] > bestScores[i - 1]; i--) {
+                float s = bestScores[i];
+                bestScores[i] = bestScores[i - 1];
+                bestScores[i - 1] = s;
+                int r = best[i];
+                best[i] = best[i - 1];
+                best[i - 1] = r;
+            }
+        }
+        return best;
+    }
+
+    public synchronized int getChunkCount() throws Exception {
+        load();
+        return meta != null ? meta.chunks.size() : 0;
+    }
+
+    private float dot(float[] query, int row) {
+        int base = row * meta.dimension;
+        float sum = 0;
+        for (int i = 0; i < meta.dimension; i++) {
+            sum += query[i] * vectors.get(base + i);
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm > 0 ? (float) (vector[i] / norm) : 0;
+        }
+        return result;
+    }
+
+    /**
+     * 按字符数切块，尽量在换行处断开，相邻块有少量重叠
+     */
+    static List<String> split(String text) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + CHUNK_CHARS);
+            if (end < text.length()) {
+                int newline = text.lastIndexOf('\n', end);
+                if (newline > start + CHUNK_CHARS / 2) {
+                    end = newline + 1;
+                }
+            }
+            String piece = text.substring(start, end).trim();
+            if (!piece.isEmpty()) {
+                pieces.add(piece);
+            }
+            if (end >= text.length()) {
+                break;
+            }
+            start = Math.max(start + 1, end - CHUNK_OVERLAP);
+        }
+        return pieces;
+    }
+
+    private void collectFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.getName().startsWith(".")) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else if (FileUtils.isTextFile(child.getName()) && child.length() <= MAX_FILE_SIZE) {
+                files.add(child);
+            }
+        }
+    }
+
+    private void load() throws Exception {
+        if (meta != null) {
+            return;
+        }
+        File metaFile = new File(indexDirectory, "chunks.json");
+        if (!metaFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(metaFile), StandardCharsets.UTF_8)) {
+            meta = gson.fromJson(reader, Meta.class);
+        }
+        mapVectors();
+    }
+
+    private void mapVectors() throws Exception {
+        File vectorFile = new File(indexDirectory, "vectors.f32");
+        if (meta == null || !vectorFile.exists()) {
+            meta = null;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(vectorFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            long expected = (long) meta.chunks.size() * meta.dimension * 4;
+            if (channel.size() != expected) {
+                Log.w(TAG, "向量文件大小不符，重建索引");
+                meta = null;
+                return;
+            }
+            vectors = channel.map(FileChannel.MapMode.READ_ONLY, 0, expected)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    private void saveMeta(Meta updated) throws Exception {
+        File metaFile = new File(indexDirectory, "chunks.json");
+        File tmp = new File(indexDirectory, "chunks.json.tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(updated, writer);
+        }
+        if (!tmp.renameTo(metaFile)) {
+            throw new Exception("无法写入索引文件: " + metaFile.getAbsolutePath());
+        }
+    }
+
+    private static class Meta {
+        String directory;
+        String model;
+        int dimension;
+        List<Chunk> chunks = new ArrayList<>();
+    }
+
+    private static class Chunk {
+        String file;
+        long lastModified;
+        long size;
+        String text;
+    }
+
+    /**
+     * 检索结果
+     */
+    public static class SearchResult {
+        public String file;
+        public String text;
+        public float score;
+    }
+
+    /**
+     * 批量计算文本向量，结果与输入一一对应
+     */
+    public interface Embedder {
+        List<float[]> embed(List<String> texts) throws Exception;
+    }
+
+    /**
+     * 索引进度回调
+     */
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+}
@@ -0,0 +1,397 @@
+package com.android.aiassistant.service;
+
+import android.os.Build;
+import android.util.Log;
+import com.android.aiassistant.utils.AIModelManager;
+import com.android.aiassistant.utils.DeviceTuner;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 推理基准测试
+ * 用固定的 prompt 语料在选定模型和参数组合（批大小、线程数、上下文长度）上逐一推理，
+ * 记录 prompt 处理速度、生成速度、首字时间和推理进程的峰值内存，报告写成 CSV 和 JSON
+ */
+public class InferenceBenchmark {
+
+    private static final String TAG = "InferenceBenchmark";
+
+    // 固定语料：短/中/长 prompt，中英文各有，保证不同设备之间可比
+    public static final List<String> DEFAULT_PROMPTS = Arrays.asList(
+            "Hello! Please introduce yourself in one sentence.",
+            "用三句话解释什么是快速排序，并说明它的平均时间复杂度。",
+            "Write a Java method that reverses a singly linked list, then explain how it works step by step.",
+            "下面是一段会议记录，请总结出三个要点：今天的会议讨论了新版本的发布时间。测试团队认为还需要两周完成回归测试，"
+                    + "产品团队希望在月底前上线，以配合市场活动。最后决定先发布灰度版本，覆盖百分之十的用户，"
+                    + "根据崩溃率和用户反馈再决定是否全量发布。同时要求开发团队每天同步一次缺陷修复进度。"
+    );
+
+    private static final int GENERATE_TOKENS = 64;
+    private static final long RSS_SAMPLE_INTERVAL_MS = 100;
+
+    private final AIInferenceService aiService;
+    private final DeviceTuner deviceTuner;
+    private final File reportDirectory;
+    private volatile boolean cancelled;
+    private volatile InferenceHandle current;
+
+    public InferenceBenchmark(AIInferenceService aiService, File reportDirectory) {
+        this.aiService = aiService;
+        this.deviceTuner = aiService.getDeviceTuner();
+        this.reportDirectory = reportDirectory;
+    }
+
+    /**
+     * 运行基准测试并写出报告
+     * 每组参数先跑一次预热（不计入结果），避免把模型加载时间算进首字时间；
+     * 各组参数只用于基准请求本身，不改动推理服务的当前设置
+     */
+    public Report run(List<AIModelManager.ModelInfo> models, List<Config> grid, List<String> prompts,
+                      ProgressListener listener) throws Exception {
+        cancelled = false;
+        Report report = createReport();
+        int total = models.size() * grid.size() * prompts.size();
+        int done = 0;
+
+        for (AIModelManager.ModelInfo model : models) {
+            DeviceTuner.TuningProfile base = deviceTuner.getProfile(model, null);
+            for (Config config : grid) {
+                DeviceTuner.TuningProfile profile = config.apply(base);
+                runOne(model.path, prompts.get(0), profile, 1);
+
+                for (int i = 0; i < prompts.size(); i++) {
+                    if (cancelled) {
+                        throw new Exception("基准测试已取消");
+                    }
+                    RssSampler sampler = new RssSampler(model.path);
+                    sampler.start();
+                    InferenceHandle handle;
+                    try {
+                        handle = runOne(model.path, prompts.get(i), profile, GENERATE_TOKENS);
+                    } finally {
+                        sampler.finish();
+                    }
+
+                    Result result = new Result(model, profile, i, handle.getTiming(), sampler.peakRss);
+                    report.results.add(result);
+                    done++;
+                    if (listener != null) {
+                        listener.onResult(result, done, total);
+                    }
+                }
+            }
+        }
+
+        writeReport(report);
+        return report;
+    }
+
+    /**
+     * 取消基准测试，只终止基准自己的请求，不影响其他推理
+     */
+    public void cancel() {
+        cancelled = true;
+        InferenceHandle handle = current;
+        if (handle != null) {
+            handle.cancel();
+        }
+    }
+
+    private InferenceHandle runOne(String modelPath, String prompt, DeviceTuner.TuningProfile profile,
+                                   int nPredict) throws Exception {
+        InferenceHandle handle = aiService.runBenchmark(modelPath, prompt, profile, nPredict);
+        current = handle;
+        try {
+            if (cancelled) {
+                handle.cancel();
+            }
+            handle.await();
+            return handle;
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * 参数网格：当前调优参数，full 时再加上全部核心和不同批大小的组合
+     */
+    public static List<Config> buildGrid(boolean full, int totalCores) {
+        List<Config> grid = new ArrayList<>();
+        grid.add(new Config(0, 0, 0));
+        if (full) {
+            for (int batchSize : new int[]{128, 512}) {
+                grid.add(new Config(batchSize, 0, 0));
+                if (totalCores > 0) {
+                    grid.add(new Config(batchSize, totalCores, 0));
+                }
+            }
+            grid.add(new Config(0, 0, 4096));
+        }
+        return grid;
+    }
+
+    private Report createReport() {
+        Report report = new Report();
+        report.timestamp = System.currentTimeMillis();
+        report.device = Build.MANUFACTURER + " " + Build.MODEL;
+        report.hardware = Build.HARDWARE;
+        report.androidVersion = Build.VERSION.RELEASE;
+        report.totalMemory = deviceTuner.readTotalMemory();
+        report.coreMaxFrequencies = deviceTuner.readCoreMaxFrequencies();
+        return report;
+    }
+
+    private void writeReport(Report report) throws Exception {
+        if (!reportDirectory.exists()) {
+            reportDirectory.mkdirs();
+        }
+        String name = "bench-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date(report.timestamp));
+        File csv = new File(reportDirectory, name + ".csv");
+        File json = new File(reportDirectory, name + ".json");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8)) {
+            writer.write("model,quantization,threads,batch,ctx,prompt,prompt_tokens,prompt_tps,"
+                    + "gen_tokens,gen_tps,ttft_ms,total_ms,peak_rss_bytes\n");
+            for (Result r : report.results) {
+                writer.write(String.format(Locale.US, "%s,%s,%d,%d,%d,%d,%d,%.2f,%d,%.2f,%d,%d,%d\n",
+                        csvField(r.model), csvField(r.quantization), r.threads, r.batchSize, r.contextLength, r.prompt,
+                        r.promptTokens, r.promptTokensPerSecond, r.generatedTokens, r.generationTokensPerSecond,
+                        r.ttftMs, r.totalMs, r.peakRssBytes));
+            }
+        }
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(json), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+        report.csvFile = csv.getAbsolutePath();
+        report.jsonFile = json.getAbsolutePath();
+        Log.i(TAG, "报告已写入: " + csv + ", " + json);
+    }
+
+    /**
+     * CSV 字段：含逗号、引号或换行时加引号，内部引号双写
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * 推理期间每 RSS_SAMPLE_INTERVAL_MS 轮询一次 /proc，记录命令行包含该模型路径的进程（main 或 server）
+     * VmRSS 的最大值。
+     * 不用 VmHWM：常驻的 llama-server 的 VmHWM 是进程生命周期内的峰值，会带上预热和之前各轮的占用
+     */
+    private static class RssSampler extends Thread {
+        private final String modelPath;
+        private volatile boolean running = true;
+        long peakRss;
+
+        RssSampler(String modelPath) {
+            super("bench-rss");
+            this.modelPath = modelPath;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(RSS_SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void finish() throws InterruptedException {
+            running = false;
+            interrupt();
+            join();
+            sample();
+        }
+
+        private void sample() {
+            File[] processes = new File("/proc").listFiles();
+            if (processes == null) {
+                return;
+            }
+            for (File dir : processes) {
+                String name = dir.getName();
+                if (name.isEmpty() || !Character.isDigit(name.charAt(0))) {
+                    continue;
+                }
+                try {
+                    byte[] cmdline = Files.readAllBytes(new File(dir, "cmdline").toPath());
+                    if (!new String(cmdline, StandardCharsets.UTF_8).contains(modelPath)) {
+                        continue;
+                    }
+                    long rss = readStatusValue(new File(dir, "status"), "VmRSS:");
+                    peakRss = Math.max(peakRss, rss);
+                } catch (Exception ignored) {
+                    // 进程已退出或无权读取
+                }
+            }
+        }
+
+        private static long readStatusValue(File status, String field) throws Exception {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(status), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(field)) {
+                        return Long.parseLong(line.substring(field.length()).trim().split("\\s+")[0]) * 1024;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 一组参数，0 表示沿用调优结果
+     */
+    public static class Config {
+        public int batchSize;
+        public int threads;
+        public int contextLength;
+
+        public Config(int batchSize, int threads, int contextLength) {
+            this.batchSize = batchSize;
+            this.threads = threads;
+            this.contextLength = contextLength;
+        }
+
+        DeviceTuner.TuningProfile apply(DeviceTuner.TuningProfile base) {
+            DeviceTuner.TuningProfile profile = base.copy();
+            if (batchSize > 0) {
+                profile.batchSize = batchSize;
+            }
+            if (threads > 0) {
+                profile.threads = threads;
+                // 指定线程数时不绑核
+                profile.cpuMask = 0;
+            }
+            if (contextLength > 0) {
+                profile.contextLength = contextLength;
+            }
+            return profile;
+        }
+    }
+
+    /**
+     * 单次测量结果
+     */
+    public static class Result {
+        public String model;
+        public String quantization;
+        public int threads;
+        public int batchSize;
+        public int contextLength;
+        public int prompt;
+        public int promptTokens;
+        public double promptTokensPerSecond;
+        public int generatedTokens;
+        public double generationTokensPerSecond;
+        public long ttftMs;
+        public long totalMs;
+        public long peakRssBytes;
+
+        Result(AIModelManager.ModelInfo model, DeviceTuner.TuningProfile profile, int prompt,
+               InferenceTiming timing, long peakRssBytes) {
+            this.model = model.name;
+            this.quantization = model.quantization;
+            this.threads = profile.threads;
+            this.batchSize = profile.batchSize;
+            this.contextLength = profile.contextLength;
+            this.prompt = prompt;
+            this.promptTokens = timing.promptTokens;
+            this.promptTokensPerSecond = timing.getPromptTokensPerSecond();
+            this.generatedTokens = timing.generatedTokens;
+            this.generationTokensPerSecond = timing.getGenerationTokensPerSecond();
+            this.ttftMs = timing.ttftMs;
+            this.totalMs = timing.totalMs;
+            this.peakRssBytes = peakRssBytes;
+        }
+    }
+
+    /**
+     * 报告：设备信息 + 全部测量结果
+     */
+    public static class Report {
+        public long timestamp;
+        public String device;
+        public String hardware;
+        public String androidVersion;
+        public long totalMemory;
+        public List<Long> coreMaxFrequencies;
+        public List<Result> results = new ArrayList<>();
+        public transient String csvFile;
+        public transient String jsonFile;
+
+        /**
+         * 按模型和参数汇总的平均值
+         */
+        public String summarize() {
+            StringBuilder result = new StringBuilder();
+            result.append(device).append("\n");
+            String lastKey = null;
+            double promptTps = 0;
+            double genTps = 0;
+            long ttft = 0;
+            long rss = 0;
+            int n = 0;
+            for (int i = 0; i <= results.size(); i++) {
+                Result r = i < results.size() ? results.get(i) : null;
+                String key = r != null ? r.model + " t" + r.threads + " b" + r.batchSize + " c" + r.contextLength : null;
+                if (lastKey != null && !lastKey.equals(key)) {
+                    result.append(String.format(Locale.US, "  %s: prompt %.1f tok/s，生成 %.1f tok/s，首字 %d ms，峰值内存 %d MB\n",
+                            lastKey, promptTps / n, genTps / n, ttft / n, rss / 1024 / 1024));
+                    promptTps = 0;
+                    genTps = 0;
+                    ttft = 0;
+                    rss = 0;
+                    n = 0;
+                }
+                if (r == null) {
+                    break;
+                }
+                lastKey = key;
+                promptTps += r.promptTokensPerSecond;
+                genTps += r.generationTokensPerSecond;
+                ttft += Math.max(0, r.ttftMs);
+                rss = Math.max(rss, r.peakRssBytes);
+                n++;
+            }
+            return result.toString().trim();
+        }
+    }
+
+    /**
+     * 进度回调（在测试线程调用）
+     */
+    public interface ProgressListener {
+        void onResult(Result result, int done, int total);
+    }
+}
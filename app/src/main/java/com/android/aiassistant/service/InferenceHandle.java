@@ -0,0 +1,137 @@
+package com.android.aiassistant.service;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 推理请求句柄
+ * 由 InferenceScheduler 返回，可查询状态、排队耗时，并取消请求
+ */
+public class InferenceHandle {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final InferenceScheduler scheduler;
+    final InferenceScheduler.Task task;
+    final AIInferenceService.InferenceCallback callback;
+    final int priority;
+    final long sequence;
+
+    private final long submitTime;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelled;
+    private volatile Process process;
+
+    private final InferenceTiming timing = new InferenceTiming();
+
+    private String result;
+    private Exception error;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    InferenceHandle(InferenceScheduler scheduler, InferenceScheduler.Task task,
+                    AIInferenceService.InferenceCallback callback, int priority, long sequence) {
+        this.scheduler = scheduler;
+        this.task = task;
+        this.callback = callback;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 取消请求：排队中直接移出队列，运行中则终止对应进程
+     */
+    public boolean cancel() {
+        return scheduler.cancel(this);
+    }
+
+    /**
+     * 等待请求结束并返回结果
+     */
+    public String await() throws Exception {
+        done.await();
+        if (status == Status.CANCELLED) {
+            throw new Exception("推理已取消");
+        }
+        if (error != null) {
+            throw error;
+        }
+        return result;
+    }
+
+    /**
+     * 绑定当前请求使用的进程，取消时一并终止
+     */
+    void attachProcess(Process process) {
+        this.process = process;
+        if (cancelled) {
+            process.destroy();
+        }
+    }
+
+    void markStarted() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+        timing.start(startTime - submitTime);
+    }
+
+    void markCancelled() {
+        cancelled = true;
+        Process current = process;
+        if (current != null) {
+            current.destroy();
+        }
+    }
+
+    void finish(String result, Exception error) {
+        this.result = result;
+        this.error = error;
+        endTime = System.currentTimeMillis();
+        if (cancelled) {
+            status = Status.CANCELLED;
+        } else {
+            status = error == null ? Status.COMPLETED : Status.FAILED;
+        }
+        done.countDown();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * 本次请求的耗时记录
+     */
+    public InferenceTiming getTiming() {
+        return timing;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * 排队等待时间（仍在排队时返回已等待的时间）
+     */
+    public long getQueueWaitMs() {
+        long start = startTime != 0 ? startTime : (endTime != 0 ? endTime : System.currentTimeMillis());
+        return start - submitTime;
+    }
+
+    /**
+     * 实际运行时间
+     */
+    public long getRunTimeMs() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime != 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+}
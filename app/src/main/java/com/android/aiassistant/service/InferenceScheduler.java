@@ -0,0 +1,211 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 推理请求调度器
+ * 有界优先级队列 + 并发上限，保证同一时间不会有过多模型同时加载/推理
+ */
+public class InferenceScheduler {
+
+    private static final String TAG = "InferenceScheduler";
+
+    // 数值越小优先级越高
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_LOW = 10;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<InferenceHandle> queue = new PriorityQueue<>(16,
+            new Comparator<InferenceHandle>() {
+                @Override
+                public int compare(InferenceHandle a, InferenceHandle b) {
+                    if (a.priority != b.priority) {
+                        return Integer.compare(a.priority, b.priority);
+                    }
+                    return Long.compare(a.sequence, b.sequence);
+                }
+            });
+    private final Set<InferenceHandle> running = new HashSet<>();
+    // 不经过队列直接执行的请求，不占用并发名额
+    private final Set<InferenceHandle> immediate = new HashSet<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    private int maxQueueSize;
+    private int maxConcurrency;
+    private long nextSequence;
+    private boolean shutdown;
+
+    public InferenceScheduler(int maxConcurrency, int maxQueueSize) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * 提交请求
+     *
+     * @param callback 可为空；请求结束时回调 onComplete / onError（取消也走 onError）
+     */
+    public InferenceHandle submit(Task task, int priority,
+                                  AIInferenceService.InferenceCallback callback) throws Exception {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new Exception("推理调度器已关闭");
+            }
+            if (queue.size() >= maxQueueSize) {
+                throw new Exception("推理队列已满 (" + maxQueueSize + ")");
+            }
+            InferenceHandle handle = new InferenceHandle(this, task, callback, priority, nextSequence++);
+            queue.add(handle);
+            dispatch();
+            return handle;
+        }
+    }
+
+    /**
+     * 不经过队列立即执行，用于缓存命中、等待相同请求结果这类不占用推理资源的任务
+     */
+    public InferenceHandle runImmediately(Task task,
+                                          AIInferenceService.InferenceCallback callback) throws Exception {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new Exception("推理调度器已关闭");
+            }
+            InferenceHandle handle = new InferenceHandle(this, task, callback, PRIORITY_HIGH, nextSequence++);
+            immediate.add(handle);
+            handle.markStarted();
+            workers.execute(() -> execute(handle));
+            return handle;
+        }
+    }
+
+    /**
+     * 取消请求
+     */
+    boolean cancel(InferenceHandle handle) {
+        synchronized (lock) {
+            if (queue.remove(handle)) {
+                handle.markCancelled();
+                handle.finish(null, null);
+                notifyResult(handle, null, null);
+                return true;
+            }
+            if (running.contains(handle) || immediate.contains(handle)) {
+                handle.markCancelled();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 取消所有排队和运行中的请求
+     */
+    public void cancelAll() {
+        List<InferenceHandle> all;
+        synchronized (lock) {
+            all = new ArrayList<>(queue);
+            all.addAll(running);
+            all.addAll(immediate);
+        }
+        for (InferenceHandle handle : all) {
+            handle.cancel();
+        }
+    }
+
+    /**
+     * 关闭调度器
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        cancelAll();
+        workers.shutdown();
+    }
+
+    private void dispatch() {
+        while (running.size() < maxConcurrency && !queue.isEmpty()) {
+            final InferenceHandle handle = queue.poll();
+            running.add(handle);
+            handle.markStarted();
+            workers.execute(() -> execute(handle));
+        }
+    }
+
+    private void execute(InferenceHandle handle) {
+        String result = null;
+        Exception error = null;
+        try {
+            result = handle.task.run(handle);
+        } catch (Exception e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            running.remove(handle);
+            immediate.remove(handle);
+            dispatch();
+        }
+        handle.finish(result, error);
+        notifyResult(handle, result, error);
+    }
+
+    private void notifyResult(InferenceHandle handle, String result, Exception error) {
+        AIInferenceService.InferenceCallback callback = handle.callback;
+        if (callback == null) {
+            return;
+        }
+        try {
+            if (handle.isCancelled()) {
+                callback.onError("推理已取消");
+            } else if (error != null) {
+                callback.onError(error.getMessage());
+            } else {
+                callback.onComplete();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "回调异常", e);
+        }
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        synchronized (lock) {
+            this.maxConcurrency = maxConcurrency;
+            dispatch();
+        }
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        synchronized (lock) {
+            this.maxQueueSize = maxQueueSize;
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running.size();
+        }
+    }
+
+    /**
+     * 调度执行的推理任务
+     */
+    public interface Task {
+        String run(InferenceHandle handle) throws Exception;
+    }
+}
@@ -0,0 +1,57 @@
+package com.android.aiassistant.service;
+
+/**
+ * 多轮推理会话
+ * 上下文由 ContextManager 按 token 预算维护；后端据此复用 KV 缓存，只评估新增的后缀
+ */
+public class InferenceSession {
+
+    private final String id;
+    private final String modelPath;
+    private final ContextManager context = new ContextManager();
+
+    // 由 SessionManager 维护
+    long lastUsed;
+    int slotId = -1;
+    boolean slotSaved;
+
+    InferenceSession(String id, String modelPath) {
+        this.id = id;
+        this.modelPath = modelPath;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * 会话的上下文窗口
+     */
+    public ContextManager getContext() {
+        return context;
+    }
+
+    /**
+     * 清空上下文
+     */
+    public void reset() {
+        context.reset();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    public String getTranscript() {
+        return context.getTranscript();
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public boolean isResident() {
+        return slotId >= 0;
+    }
+}
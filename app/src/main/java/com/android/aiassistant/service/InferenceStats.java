@@ -0,0 +1,159 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 推理耗时统计
+ * 最近的记录保存在定长环形缓冲区中，同时追加写入 JSON Lines 文件
+ */
+public class InferenceStats {
+
+    private static final String TAG = "InferenceStats";
+
+    private final File logFile;
+    private final InferenceTiming[] ring;
+    private final Gson gson = new Gson();
+    private int next;
+    private int count;
+
+    public InferenceStats(File logFile, int capacity) {
+        this.logFile = logFile;
+        this.ring = new InferenceTiming[capacity];
+    }
+
+    /**
+     * 记录一次推理
+     */
+    public void record(InferenceTiming timing) {
+        synchronized (ring) {
+            ring[next] = timing;
+            next = (next + 1) % ring.length;
+            if (count < ring.length) {
+                count++;
+            }
+        }
+
+        if (logFile == null) {
+            return;
+        }
+        synchronized (this) {
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+                writer.write(gson.toJson(timing));
+                writer.write("\n");
+            } catch (Exception e) {
+                Log.w(TAG, "写入统计文件失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 最近的记录（从旧到新）
+     */
+    public List<InferenceTiming> getRecent() {
+        synchronized (ring) {
+            List<InferenceTiming> recent = new ArrayList<>(count);
+            int start = (next - count + ring.length) % ring.length;
+            for (int i = 0; i < count; i++) {
+                recent.add(ring[(start + i) % ring.length]);
+            }
+            return recent;
+        }
+    }
+
+    /**
+     * 按模型汇总 p50 / p95
+     */
+    public String summarize() {
+        Map<String, List<InferenceTiming>> byModel = new LinkedHashMap<>();
+        for (InferenceTiming timing : getRecent()) {
+            List<InferenceTiming> list = byModel.get(timing.model);
+            if (list == null) {
+                list = new ArrayList<>();
+                byModel.put(timing.model, list);
+            }
+            list.add(timing);
+        }
+
+        if (byModel.isEmpty()) {
+            return "暂无推理记录";
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, List<InferenceTiming>> entry : byModel.entrySet()) {
+            List<InferenceTiming> list = entry.getValue();
+            int n = list.size();
+            double[] queue = new double[n];
+            double[] load = new double[n];
+            double[] ttft = new double[n];
+            double[] promptTps = new double[n];
+            double[] genTps = new double[n];
+            double[] total = new double[n];
+            for (int i = 0; i < n; i++) {
+                InferenceTiming t = list.get(i);
+                queue[i] = t.queueWaitMs;
+                load[i] = t.loadMs;
+                ttft[i] = Math.max(0, t.ttftMs);
+                promptTps[i] = t.getPromptTokensPerSecond();
+                genTps[i] = t.getGenerationTokensPerSecond();
+                total[i] = t.totalMs;
+            }
+
+            result.append(entry.getKey()).append(" (").append(n).append(" 次)\n");
+            result.append(formatLine("排队 ms", queue));
+            result.append(formatLine("加载 ms", load));
+            result.append(formatLine("首字 ms", ttft));
+            result.append(formatLine("prompt tok/s", promptTps));
+            result.append(formatLine("生成 tok/s", genTps));
+            result.append(formatLine("总耗时 ms", total));
+
+            List<Double> acceptance = new ArrayList<>();
+            for (InferenceTiming t : list) {
+                if (t.getAcceptanceRate() >= 0) {
+                    acceptance.add(t.getAcceptanceRate() * 100);
+                }
+            }
+            if (!acceptance.isEmpty()) {
+                double[] values = new double[acceptance.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = acceptance.get(i);
+                }
+                result.append(formatLine("草稿接受率 %", values));
+            }
+        }
+        return result.toString().trim();
+    }
+
+    private static String formatLine(String label, double[] values) {
+        return String.format("  %-14s p50 %.1f  p95 %.1f\n", label,
+                percentile(values, 0.50), percentile(values, 0.95));
+    }
+
+    /**
+     * 最近秩法求百分位
+     */
+    static double percentile(double[] values, double p) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+}
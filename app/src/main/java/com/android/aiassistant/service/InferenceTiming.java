@@ -0,0 +1,173 @@
+package com.android.aiassistant.service;
+
+import com.google.gson.JsonObject;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 单次推理的耗时记录
+ * 进程模式从 llama.cpp 的 llama_print_timings 日志解析，server 模式取响应中的 timings 字段
+ */
+public class InferenceTiming {
+
+    private static final Pattern LOAD_TIME = Pattern.compile("load time\\s*=\\s*([\\d.]+) ms");
+    private static final Pattern PROMPT_EVAL = Pattern.compile(
+            "prompt eval time\\s*=\\s*([\\d.]+) ms\\s*/\\s*(\\d+) tokens");
+    private static final Pattern EVAL = Pattern.compile(
+            "\\beval time\\s*=\\s*([\\d.]+) ms\\s*/\\s*(\\d+) (?:runs|tokens)");
+    // llama.cpp speculative 示例的统计输出
+    private static final Pattern DECODED = Pattern.compile(
+            "decoded\\s+(\\d+) tokens in\\s+([\\d.]+) seconds");
+    private static final Pattern DRAFTED = Pattern.compile("n_drafted\\s*=\\s*(\\d+)");
+    private static final Pattern ACCEPTED = Pattern.compile("n_accept\\s*=\\s*(\\d+)");
+
+    public String model;
+    public long timestamp;
+    public long queueWaitMs;
+    public long loadMs;
+    public long ttftMs = -1;
+    public int promptTokens;
+    public double promptMs;
+    public int generatedTokens;
+    public double generationMs;
+    public long totalMs;
+
+    // 投机解码
+    public int draftTokens;
+    public int acceptedTokens;
+    public int decodedTokens;
+    public double decodedMs;
+
+    // 运行期间使用，不写入记录
+    private transient long startNanos;
+
+    InferenceTiming() {
+    }
+
+    /**
+     * 开始执行（出队）时调用
+     */
+    void start(long queueWaitMs) {
+        this.timestamp = System.currentTimeMillis();
+        this.queueWaitMs = queueWaitMs;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 收到第一段输出时调用，只记录第一次
+     */
+    synchronized void markFirstToken() {
+        if (ttftMs < 0 && startNanos != 0) {
+            ttftMs = (System.nanoTime() - startNanos) / 1000000;
+        }
+    }
+
+    synchronized void finish() {
+        totalMs = (System.nanoTime() - startNanos) / 1000000;
+        if (ttftMs < 0 && promptMs > 0) {
+            // 非流式请求拿不到首字时间，用加载 + prompt 评估时间近似
+            ttftMs = loadMs + (long) promptMs;
+        }
+    }
+
+    /**
+     * 解析一行 llama.cpp 日志，返回是否包含耗时信息
+     */
+    synchronized boolean parseLogLine(String line) {
+        // 投机解码时 eval 只统计主模型的验证批次，有效速度以 decoded 行为准
+        Matcher matcher = DECODED.matcher(line);
+        if (matcher.find()) {
+            decodedTokens += Integer.parseInt(matcher.group(1));
+            decodedMs += Double.parseDouble(matcher.group(2)) * 1000;
+            return true;
+        }
+        matcher = DRAFTED.matcher(line);
+        if (matcher.find()) {
+            draftTokens += Integer.parseInt(matcher.group(1));
+            return true;
+        }
+        matcher = ACCEPTED.matcher(line);
+        if (matcher.find()) {
+            acceptedTokens += Integer.parseInt(matcher.group(1));
+            return true;
+        }
+        matcher = PROMPT_EVAL.matcher(line);
+        if (matcher.find()) {
+            promptMs += Double.parseDouble(matcher.group(1));
+            promptTokens += Integer.parseInt(matcher.group(2));
+            return true;
+        }
+        matcher = EVAL.matcher(line);
+        if (matcher.find()) {
+            generationMs += Double.parseDouble(matcher.group(1));
+            generatedTokens += Integer.parseInt(matcher.group(2));
+            return true;
+        }
+        matcher = LOAD_TIME.matcher(line);
+        if (matcher.find()) {
+            loadMs += (long) Double.parseDouble(matcher.group(1));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 累加 server 响应中的 timings 字段
+     */
+    synchronized void addServerTimings(JsonObject timings) {
+        if (timings == null) {
+            return;
+        }
+        if (timings.has("prompt_n")) {
+            promptTokens += timings.get("prompt_n").getAsInt();
+        }
+        if (timings.has("prompt_ms")) {
+            promptMs += timings.get("prompt_ms").getAsDouble();
+        }
+        if (timings.has("predicted_n")) {
+            generatedTokens += timings.get("predicted_n").getAsInt();
+        }
+        if (timings.has("predicted_ms")) {
+            generationMs += timings.get("predicted_ms").getAsDouble();
+        }
+        if (timings.has("draft_n")) {
+            draftTokens += timings.get("draft_n").getAsInt();
+        }
+        if (timings.has("draft_n_accepted")) {
+            acceptedTokens += timings.get("draft_n_accepted").getAsInt();
+        }
+    }
+
+    synchronized void addLoadTime(long ms) {
+        loadMs += ms;
+    }
+
+    public double getPromptTokensPerSecond() {
+        return promptMs > 0 ? promptTokens * 1000.0 / promptMs : 0;
+    }
+
+    /**
+     * 生成速度；投机解码时为实际输出 token 的有效速度
+     */
+    public double getGenerationTokensPerSecond() {
+        if (decodedMs > 0) {
+            return decodedTokens * 1000.0 / decodedMs;
+        }
+        return generationMs > 0 ? generatedTokens * 1000.0 / generationMs : 0;
+    }
+
+    /**
+     * 草稿 token 接受率，未使用投机解码时返回 -1
+     */
+    public double getAcceptanceRate() {
+        return draftTokens > 0 ? acceptedTokens * 1.0 / draftTokens : -1;
+    }
+
+    public int getTotalTokens() {
+        return promptTokens + generatedTokens;
+    }
+
+    public boolean hasTokenCounts() {
+        return promptTokens > 0 || generatedTokens > 0 || decodedTokens > 0;
+    }
+}
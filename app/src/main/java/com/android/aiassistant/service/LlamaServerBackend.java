@@ -0,0 +1,414 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+/**
+ * llama.cpp server 后端
+ * 每个模型常驻一个 server 进程，通过 HTTP 通信，避免每次推理都重新加载模型
+ */
+public class LlamaServerBackend {
+
+    private static final String TAG = "LlamaServerBackend";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    // 重启次数按时间窗口统计，窗口内崩溃过多才放弃
+    private static final long DEFAULT_RESTART_WINDOW_MS = 10 * 60 * 1000;
+
+    private final String serverBinary;
+    private final String modelPath;
+    private final String host;
+    private final int port;
+    private final List<String> extraArgs;
+    private final File logFile;
+    private final OkHttpClient httpClient;
+    private final Gson gson = new Gson();
+
+    private Process serverProcess;
+    private int restartCount;
+    private long restartWindowStart;
+    private List<String> commandPrefix = new ArrayList<>();
+
+    // 运行参数
+    private int maxRestarts = 3;
+    private long restartWindowMs = DEFAULT_RESTART_WINDOW_MS;
+    private long startupTimeoutMs = 120000;
+    private long healthCheckIntervalMs = 250;
+
+    /**
+     * 启动并管理本地 server 进程
+     *
+     * @param serverBinary llama.cpp server 可执行文件
+     * @param modelPath    模型路径
+     * @param port         监听端口
+     * @param extraArgs    额外的 server 参数（上下文长度、批大小等）
+     * @param logFile      server 日志输出文件
+     */
+    public LlamaServerBackend(String serverBinary, String modelPath, int port,
+                              List<String> extraArgs, File logFile) {
+        this(serverBinary, modelPath, "127.0.0.1", port, extraArgs, logFile);
+    }
+
+    private LlamaServerBackend(String serverBinary, String modelPath, String host, int port,
+                               List<String> extraArgs, File logFile) {
+        this.serverBinary = serverBinary;
+        this.modelPath = modelPath;
+        this.host = host;
+        this.port = port;
+        this.extraArgs = extraArgs != null ? extraArgs : new ArrayList<String>();
+        this.logFile = logFile;
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 连接到已在运行的 server（不管理进程，测试时可指向本地模拟服务器）
+     */
+    public static LlamaServerBackend attach(String host, int port) {
+        return new LlamaServerBackend(null, null, host, port, null, null);
+    }
+
+    /**
+     * 获取一个空闲端口
+     */
+    public static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 启动 server 并等待健康检查通过
+     */
+    public synchronized void start() throws Exception {
+        if (isManaged() && !isProcessAlive()) {
+            List<String> command = new ArrayList<>(commandPrefix);
+            command.add(serverBinary);
+            command.add("-m");
+            command.add(modelPath);
+            command.add("--host");
+            command.add(host);
+            command.add("--port");
+            command.add(String.valueOf(port));
+            command.addAll(extraArgs);
+
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            if (logFile != null) {
+                processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+            }
+            serverProcess = processBuilder.start();
+            if (logFile == null) {
+                drainOutput(serverProcess);
+            }
+            Log.i(TAG, "server 已启动: " + modelPath + " @ " + port);
+        }
+
+        waitUntilHealthy();
+    }
+
+    /**
+     * 确保 server 在运行，进程崩溃时自动重启
+     */
+    public synchronized void ensureRunning() throws Exception {
+        if (!isManaged()) {
+            return;
+        }
+        if (isProcessAlive()) {
+            return;
+        }
+        if (serverProcess != null) {
+            long now = System.currentTimeMillis();
+            if (now - restartWindowStart > restartWindowMs) {
+                restartCount = 0;
+                restartWindowStart = now;
+            }
+            if (restartCount >= maxRestarts) {
+                throw new Exception("server 重启次数过多: " + modelPath);
+            }
+            restartCount++;
+            Log.w(TAG, "server 已退出 (退出码 " + serverProcess.exitValue() + ")，正在重启: " + modelPath);
+        }
+        start();
+    }
+
+    /**
+     * 健康检查
+     */
+    public boolean isHealthy() {
+        Request request = new Request.Builder()
+                .url(getBaseUrl() + "/health")
+                .get()
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 执行补全请求 (POST /completion)
+     */
+    public JsonObject complete(JsonObject body) throws Exception {
+        ensureRunning();
+        try {
+            return postJson("/completion", body);
+        } catch (IOException e) {
+            // 连接失败时多半是进程刚崩溃，重启后重试一次
+            if (isManaged() && !isProcessAlive()) {
+                ensureRunning();
+                return postJson("/completion", body);
+            }
+            throw new Exception("server 请求失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 流式补全 (POST /completion, stream=true)
+     * 逐个解析 SSE 事件并把 content 增量交给 listener，返回最后一个事件（含 stop 和 timings）
+     */
+    public JsonObject streamCompletion(JsonObject body, StreamListener listener) throws Exception {
+        ensureRunning();
+        body.addProperty("stream", true);
+        Request request = new Request.Builder()
+                .url(getBaseUrl() + "/completion")
+                .post(RequestBody.create(gson.toJson(body), JSON))
+                .build();
+
+        JsonObject last = null;
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new Exception("server 返回错误 " + response.code());
+            }
+            BufferedSource source = response.body().source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                JsonObject event = gson.fromJson(line.substring(5).trim(), JsonObject.class);
+                last = event;
+                if (event.has("content")) {
+                    String content = event.get("content").getAsString();
+                    if (!content.isEmpty() && !listener.onContent(content)) {
+                        break;
+                    }
+                }
+                if (event.has("stop") && event.get("stop").getAsBoolean()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new Exception("server 流式请求失败: " + e.getMessage());
+        }
+        return last != null ? last : new JsonObject();
+    }
+
+    /**
+     * 把 slot 的 KV 缓存保存到 --slot-save-path 下的文件
+     */
+    public void saveSlot(int slotId, String filename) throws Exception {
+        slotAction(slotId, "save", filename);
+    }
+
+    /**
+     * 从文件恢复 slot 的 KV 缓存
+     */
+    public void restoreSlot(int slotId, String filename) throws Exception {
+        slotAction(slotId, "restore", filename);
+    }
+
+    /**
+     * 清空 slot 的 KV 缓存
+     */
+    public void eraseSlot(int slotId) throws Exception {
+        slotAction(slotId, "erase", null);
+    }
+
+    private void slotAction(int slotId, String action, String filename) throws Exception {
+        ensureRunning();
+        JsonObject body = new JsonObject();
+        if (filename != null) {
+            body.addProperty("filename", filename);
+        }
+        postJson("/slots/" + slotId + "?action=" + action, body);
+    }
+
+    /**
+     * 文本的 token 数 (POST /tokenize)
+     */
+    public int countTokens(String text) throws Exception {
+        ensureRunning();
+        JsonObject body = new JsonObject();
+        body.addProperty("content", text);
+        return postJson("/tokenize", body).getAsJsonArray("tokens").size();
+    }
+
+    /**
+     * 计算文本向量 (POST /embedding，server 需以 --embedding 启动)
+     * 兼容旧版返回的 {"embedding": [...]} 和新版返回的 [{"embedding": [[...]]}]
+     */
+    public float[] embed(String text) throws Exception {
+        ensureRunning();
+        JsonObject body = new JsonObject();
+        body.addProperty("content", text);
+        JsonElement result = post("/embedding", body);
+        if (result.isJsonArray()) {
+            result = result.getAsJsonArray().get(0);
+        }
+        JsonArray embedding = result.getAsJsonObject().getAsJsonArray("embedding");
+        if (embedding.size() > 0 && embedding.get(0).isJsonArray()) {
+            // 未池化时每个 token 一行，取第一行（池化后只有一行）
+            embedding = embedding.get(0).getAsJsonArray();
+        }
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i).getAsFloat();
+        }
+        return vector;
+    }
+
+    /**
+     * 发送 JSON POST 请求
+     */
+    JsonObject postJson(String path, JsonObject body) throws Exception {
+        return post(path, body).getAsJsonObject();
+    }
+
+    private JsonElement post(String path, JsonObject body) throws Exception {
+        Request request = new Request.Builder()
+                .url(getBaseUrl() + path)
+                .post(RequestBody.create(gson.toJson(body), JSON))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            String text = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new Exception("server 返回错误 " + response.code() + ": " + text);
+            }
+            return gson.fromJson(text, JsonElement.class);
+        }
+    }
+
+    /**
+     * 关闭 server
+     */
+    public synchronized void shutdown() {
+        if (serverProcess == null) {
+            return;
+        }
+        serverProcess.destroy();
+        try {
+            if (!serverProcess.waitFor(3, TimeUnit.SECONDS)) {
+                serverProcess.destroyForcibly();
+                serverProcess.waitFor(2, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            serverProcess.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        serverProcess = null;
+        restartCount = 0;
+        Log.i(TAG, "server 已关闭: " + modelPath);
+    }
+
+    private void waitUntilHealthy() throws Exception {
+        long deadline = System.currentTimeMillis() + startupTimeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            if (isHealthy()) {
+                return;
+            }
+            if (isManaged() && !isProcessAlive()) {
+                throw new Exception("server 启动失败，退出码: " + serverProcess.exitValue());
+            }
+            Thread.sleep(healthCheckIntervalMs);
+        }
+        throw new Exception("server 启动超时: " + getBaseUrl());
+    }
+
+    private void drainOutput(Process process) {
+        Thread drainer = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (process.getInputStream().read(buffer) != -1) {
+                    // 丢弃日志，防止管道写满阻塞 server
+                }
+            } catch (IOException ignored) {
+            }
+        }, "llama-server-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private boolean isManaged() {
+        return serverBinary != null;
+    }
+
+    private boolean isProcessAlive() {
+        return serverProcess != null && serverProcess.isAlive();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + host + ":" + port;
+    }
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * 设置启动命令前缀（如 taskset 绑核），下次启动时生效
+     */
+    public void setCommandPrefix(List<String> commandPrefix) {
+        this.commandPrefix = new ArrayList<>(commandPrefix);
+    }
+
+    public void setMaxRestarts(int maxRestarts) {
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * 设置统计重启次数的时间窗口，窗口内重启超过 maxRestarts 次才放弃
+     */
+    public void setRestartWindowMs(long restartWindowMs) {
+        this.restartWindowMs = restartWindowMs;
+    }
+
+    public void setStartupTimeoutMs(long startupTimeoutMs) {
+        this.startupTimeoutMs = startupTimeoutMs;
+    }
+
+    /**
+     * 流式输出监听器
+     */
+    public interface StreamListener {
+        /**
+         * @return false 表示停止接收
+         */
+        boolean onContent(String content);
+    }
+}
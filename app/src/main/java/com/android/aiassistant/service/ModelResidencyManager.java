@@ -0,0 +1,248 @@
+package com.android.aiassistant.service;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import com.android.aiassistant.utils.DeviceTuner;
+import com.android.aiassistant.utils.FileUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多模型常驻管理
+ * 在内存预算内同时保留多个模型的 server 后端，切换模型不用冷启动。
+ * 加载新模型前、每次使用时都对照 /proc/meminfo 检查，超出预算或可用内存过低时
+ * 按最近最少使用顺序卸载，当前使用的模型固定不卸载
+ */
+public class ModelResidencyManager {
+
+    private static final String TAG = "ModelResidencyManager";
+
+    // 未设置预算时默认使用总内存的该比例
+    private static final double DEFAULT_BUDGET_RATIO = 0.5;
+
+    private final DeviceTuner deviceTuner;
+    private final Unloader unloader;
+    private final List<UnloadListener> unloadListeners = new CopyOnWriteArrayList<>();
+
+    // 按访问顺序排列，最前面的最久未使用
+    private final LinkedHashMap<String, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // 正在处理请求的模型及请求数，不参与淘汰
+    private final Map<String, Integer> inUse = new HashMap<>();
+    private String pinnedModel;
+
+    private long budgetBytes;
+    private long minFreeBytes = 512L * 1024 * 1024;
+
+    public ModelResidencyManager(DeviceTuner deviceTuner, Unloader unloader) {
+        this.deviceTuner = deviceTuner;
+        this.unloader = unloader;
+    }
+
+    /**
+     * 加载模型前调用：为新模型腾出空间（按需卸载其他模型）
+     *
+     * @param footprint 模型权重 + KV 缓存的估算内存占用
+     */
+    public void reserve(String modelPath, long footprint) {
+        synchronized (this) {
+            resident.remove(modelPath);
+        }
+        String victim;
+        while ((victim = pickVictim(footprint)) != null) {
+            evict(victim, "为 " + shortName(modelPath) + " 腾出内存");
+        }
+        synchronized (this) {
+            resident.put(modelPath, footprint);
+        }
+    }
+
+    /**
+     * 每次使用模型时调用，更新使用顺序并检查系统可用内存（只卸载空闲的模型）
+     */
+    public void touch(String modelPath) {
+        synchronized (this) {
+            resident.get(modelPath);
+        }
+        String victim;
+        while ((victim = pickVictim(0)) != null) {
+            evict(victim, "可用内存不足");
+        }
+    }
+
+    /**
+     * 请求开始使用模型，结束前不会被淘汰
+     */
+    public synchronized void beginUse(String modelPath) {
+        Integer count = inUse.get(modelPath);
+        inUse.put(modelPath, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * 请求结束，与 beginUse 成对调用
+     */
+    public synchronized void endUse(String modelPath) {
+        Integer count = inUse.get(modelPath);
+        if (count == null || count <= 1) {
+            inUse.remove(modelPath);
+        } else {
+            inUse.put(modelPath, count - 1);
+        }
+    }
+
+    /**
+     * 模型后端已关闭（淘汰、外部卸载或重启时）
+     */
+    public void onUnloaded(String modelPath) {
+        synchronized (this) {
+            resident.remove(modelPath);
+        }
+        for (UnloadListener listener : unloadListeners) {
+            listener.onUnloaded(modelPath);
+        }
+    }
+
+    /**
+     * 监听模型卸载（预热状态等需要随之失效）
+     */
+    public void addUnloadListener(UnloadListener listener) {
+        unloadListeners.add(listener);
+    }
+
+    /**
+     * 固定当前使用的模型，不参与淘汰
+     */
+    public synchronized void pin(String modelPath) {
+        this.pinnedModel = modelPath;
+    }
+
+    /**
+     * 系统内存压力回调：运行中内存紧张（或进程即将被回收）时卸载所有未固定的空闲模型。
+     * 界面隐藏、进入后台这些级别不代表内存紧张，只按实际可用内存检查
+     */
+    public void onTrimMemory(int level) {
+        if (level != ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                && level != ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            touch(pinnedModel);
+            return;
+        }
+        for (String modelPath : getResidentModels()) {
+            if (!modelPath.equals(pinnedModel)) {
+                evict(modelPath, "系统内存压力 (" + level + ")");
+            }
+        }
+    }
+
+    /**
+     * 设置内存预算（字节，0 表示使用总内存的一半）
+     */
+    public void setBudget(long budgetBytes, long minFreeBytes) {
+        synchronized (this) {
+            this.budgetBytes = budgetBytes;
+            this.minFreeBytes = minFreeBytes;
+        }
+        touch(null);
+    }
+
+    public synchronized long getBudget() {
+        if (budgetBytes > 0) {
+            return budgetBytes;
+        }
+        return (long) (deviceTuner.readTotalMemory() * DEFAULT_BUDGET_RATIO);
+    }
+
+    public synchronized long getResidentBytes() {
+        long total = 0;
+        for (long footprint : resident.values()) {
+            total += footprint;
+        }
+        return total;
+    }
+
+    /**
+     * 常驻模型，从最久未使用到最近使用
+     */
+    public synchronized List<String> getResidentModels() {
+        return new ArrayList<>(resident.keySet());
+    }
+
+    public synchronized boolean isResident(String modelPath) {
+        return resident.containsKey(modelPath);
+    }
+
+    public String getSummary() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("常驻 %s / 预算 %s，系统可用 %s\n",
+                FileUtils.formatFileSize(getResidentBytes()), FileUtils.formatFileSize(getBudget()),
+                FileUtils.formatFileSize(deviceTuner.readAvailableMemory())));
+        synchronized (this) {
+            List<String> models = new ArrayList<>(resident.keySet());
+            for (int i = models.size() - 1; i >= 0; i--) {
+                String modelPath = models.get(i);
+                result.append("  ").append(shortName(modelPath))
+                        .append(" ").append(FileUtils.formatFileSize(resident.get(modelPath)))
+                        .append(modelPath.equals(pinnedModel) ? " (当前)" : "").append("\n");
+            }
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * 需要腾出空间时返回最久未使用的未固定模型，否则返回 null
+     * 只在锁内做决定，卸载在锁外进行，避免与后端锁互相等待
+     */
+    private String pickVictim(long incoming) {
+        long available = deviceTuner.readAvailableMemory();
+        long budget = getBudget();
+        synchronized (this) {
+            boolean overBudget = budget > 0 && getResidentBytes() + incoming > budget;
+            // 读不到 meminfo 时只按预算判断
+            boolean lowMemory = available > 0 && available - incoming < minFreeBytes;
+            if (!overBudget && !lowMemory) {
+                return null;
+            }
+            for (Map.Entry<String, Long> entry : resident.entrySet()) {
+                if (!entry.getKey().equals(pinnedModel) && !inUse.containsKey(entry.getKey())) {
+                    return entry.getKey();
+                }
+            }
+            if (incoming > 0) {
+                Log.w(TAG, "没有可卸载的模型，内存可能不足: 可用 " + FileUtils.formatFileSize(available));
+            }
+            return null;
+        }
+    }
+
+    private void evict(String modelPath, String reason) {
+        synchronized (this) {
+            // 有请求正在使用的后端不能关闭
+            if (inUse.containsKey(modelPath) || resident.remove(modelPath) == null) {
+                return;
+            }
+        }
+        Log.i(TAG, "卸载 " + shortName(modelPath) + "：" + reason);
+        unloader.unload(modelPath);
+    }
+
+    private static String shortName(String modelPath) {
+        return modelPath.substring(modelPath.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 卸载模型后端
+     */
+    public interface Unloader {
+        void unload(String modelPath);
+    }
+
+    /**
+     * 模型卸载通知
+     */
+    public interface UnloadListener {
+        void onUnloaded(String modelPath);
+    }
+}
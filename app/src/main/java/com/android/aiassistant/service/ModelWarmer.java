@@ -0,0 +1,170 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 模型预热
+ * 启动后在后台按页顺序读取模型文件，把它预取进页缓存（限速，避免影响前台 I/O），
+ * server 模式下再启动后端并跑一次 1 token 的推理，第一次真实提问就不用冷读闪存
+ */
+public class ModelWarmer {
+
+    private static final String TAG = "ModelWarmer";
+    private static final int PAGE_SIZE = 4096;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private final AIInferenceService aiService;
+    private final Set<String> hotModels = Collections.synchronizedSet(new HashSet<String>());
+
+    private long maxBytesPerSecond = 256L * 1024 * 1024;
+    private WarmUpTask currentTask;
+
+    public ModelWarmer(AIInferenceService aiService) {
+        this.aiService = aiService;
+        // 模型被卸载（淘汰、内存压力、参数变化重启）后不再算作已预热
+        aiService.getResidencyManager().addUnloadListener(hotModels::remove);
+    }
+
+    /**
+     * 开始预热模型；正在预热的其他模型会被取消
+     */
+    public synchronized void warmUp(String modelPath, WarmUpListener listener) {
+        cancel();
+        currentTask = new WarmUpTask(modelPath, listener);
+        Thread thread = new Thread(currentTask, "model-warmup");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * 取消正在进行的预热
+     */
+    public synchronized void cancel() {
+        if (currentTask != null) {
+            currentTask.cancelled = true;
+            InferenceHandle handle = currentTask.backendHandle;
+            if (handle != null) {
+                handle.cancel();
+            }
+            currentTask = null;
+        }
+    }
+
+    /**
+     * 模型是否已预热
+     */
+    public boolean isHot(String modelPath) {
+        return hotModels.contains(modelPath);
+    }
+
+    /**
+     * 预取限速（字节/秒，0 表示不限速）
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    private class WarmUpTask implements Runnable {
+        final String modelPath;
+        final WarmUpListener listener;
+        volatile boolean cancelled;
+        volatile InferenceHandle backendHandle;
+
+        WarmUpTask(String modelPath, WarmUpListener listener) {
+            this.modelPath = modelPath;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!hotModels.contains(modelPath)) {
+                    prefetch();
+                }
+                if (cancelled) {
+                    return;
+                }
+
+                // server 模式下加载模型并跑一个 token，把初始化开销提前付掉
+                backendHandle = aiService.warmUpBackend(modelPath);
+                if (backendHandle != null) {
+                    if (cancelled) {
+                        backendHandle.cancel();
+                    }
+                    backendHandle.await();
+                }
+                if (cancelled) {
+                    return;
+                }
+
+                hotModels.add(modelPath);
+                listener.onHot(modelPath);
+            } catch (Exception e) {
+                if (!cancelled) {
+                    Log.w(TAG, "预热失败: " + e.getMessage());
+                    listener.onError(modelPath, e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * 分窗口映射文件，每页读一个字节触发缺页读入
+         */
+        private void prefetch() throws Exception {
+            File file = new File(modelPath);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                long size = channel.size();
+                long start = System.nanoTime();
+                long done = 0;
+                int lastPercent = -1;
+                int checksum = 0;
+
+                while (done < size && !cancelled) {
+                    long length = Math.min(MAP_WINDOW, size - done);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, done, length);
+                    for (int offset = 0; offset < length && !cancelled; offset += PAGE_SIZE) {
+                        checksum += window.get(offset);
+                    }
+                    done += length;
+
+                    int percent = (int) (done * 100 / size);
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        listener.onProgress(modelPath, percent);
+                    }
+                    throttle(start, done);
+                }
+                Log.d(TAG, "预取完成: " + modelPath + " (" + checksum + ")");
+            }
+        }
+
+        private void throttle(long startNanos, long bytesDone) throws InterruptedException {
+            if (maxBytesPerSecond <= 0) {
+                return;
+            }
+            // 用浮点计算，大模型读过约 9.2GB 后整数乘法会溢出
+            long expectedNanos = (long) (bytesDone * 1e9 / maxBytesPerSecond);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (expectedNanos > elapsedNanos) {
+                Thread.sleep((expectedNanos - elapsedNanos) / 1000000);
+            }
+        }
+    }
+
+    /**
+     * 预热进度回调（在后台线程调用）
+     */
+    public interface WarmUpListener {
+        void onProgress(String modelPath, int percent);
+        void onHot(String modelPath);
+        void onError(String modelPath, String error);
+    }
+}
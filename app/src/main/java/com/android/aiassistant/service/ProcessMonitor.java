@@ -0,0 +1,730 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 进程监视器
+ * 直接读取 /proc/[pid]/stat、statm、cmdline 得到结构化的进程信息，替代解析 ps 的文本输出。
+ * 按间隔采样时与上一次采样对比计算 CPU 占用和 RSS 变化（类似 top）。
+ * 进程记录、读缓冲区和列表在采样之间复用，进程没有变化时采样不会新建记录。
+ * 有 root 服务时通过一次 root 往返读出全部进程（shell 内建 read，不启动子进程），
+ * 否则直接读文件（只能看到本应用有权限的进程）；proc 根目录可替换，便于用测试数据验证
+ */
+public class ProcessMonitor {
+
+    private static final String TAG = "ProcessMonitor";
+
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+    // cmdline 最多读取的字节数
+    private static final int MAX_CMDLINE_BYTES = 4096;
+
+    public enum SortBy {
+        CPU, MEMORY
+    }
+
+    private static final Comparator<ProcessInfo> BY_PID = (a, b) -> Integer.compare(a.pid, b.pid);
+    private static final Comparator<ProcessInfo> BY_CPU = (a, b) -> {
+        int result = Double.compare(b.cpuPercent, a.cpuPercent);
+        return result != 0 ? result : Long.compare(b.rssBytes, a.rssBytes);
+    };
+    private static final Comparator<ProcessInfo> BY_MEMORY = (a, b) -> Long.compare(b.rssBytes, a.rssBytes);
+
+    private final File procRoot;
+    private final RootShellService rootService;
+    private final String sampleScript;
+    private long pageSize = DEFAULT_PAGE_SIZE;
+
+    // 本次和上次采样的进程，均按 pid 排序，每次采样后交换
+    private ArrayList<ProcessInfo> current = new ArrayList<>();
+    private ArrayList<ProcessInfo> previous = new ArrayList<>();
+    // 已退出进程的记录，留给新进程复用
+    private final ArrayDeque<ProcessInfo> freeRecords = new ArrayDeque<>();
+    private final ArrayList<ProcessInfo> sorted = new ArrayList<>();
+
+    private final byte[] readBuffer = new byte[MAX_CMDLINE_BYTES];
+    private final StringBuilder text = new StringBuilder(512);
+    private final StringBuilder statText = new StringBuilder(512);
+    private int position;
+
+    private long lastCpuTotal;
+    private long cpuDelta;
+    private int cpuCount = 1;
+    private long sampleCount;
+
+    private Thread sampler;
+    private volatile boolean running;
+
+    public ProcessMonitor(RootShellService rootService) {
+        this(new File("/proc"), rootService);
+    }
+
+    /**
+     * @param procRoot    proc 根目录，测试时可指向测试数据目录
+     * @param rootService 为 null 时直接读文件
+     */
+    public ProcessMonitor(File procRoot, RootShellService rootService) {
+        this.procRoot = procRoot;
+        this.rootService = rootService;
+        // 输出 C <cpu 行>、P <stat 行>、M <statm 行>；进程在读取途中退出时跳过
+        this.sampleScript = "cd " + RootShellService.quote(procRoot.getPath()) + " || exit 1\n"
+                + "while read -r l; do case $l in cpu*) echo \"C $l\";; *) break;; esac; done < stat\n"
+                + "for d in [0-9]*; do\n"
+                + "  read -r s 2>/dev/null < $d/stat || continue\n"
+                + "  m=; read -r m 2>/dev/null < $d/statm\n"
+                + "  echo \"P $s\"; echo \"M $m\"\n"
+                + "done";
+    }
+
+    /**
+     * 设置内存页大小（statm 以页为单位），默认 4096
+     */
+    public synchronized void setPageSize(long pageSize) {
+        if (pageSize > 0) {
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * 采样一次，返回进程数；第一次采样没有对比基准，CPU 占用均为 0
+     */
+    public synchronized int sample() throws Exception {
+        ArrayList<ProcessInfo> swap = previous;
+        previous = current;
+        current = swap;
+        current.clear();
+        cpuDelta = 0;
+        int cpus = 0;
+        long cpuTotal = 0;
+
+        if (rootService != null) {
+            RootShellService.CommandResult result = rootService.executeCommandWithResult(sampleScript);
+            if (!result.success) {
+                restorePrevious();
+                throw new Exception("读取进程信息失败: " + (result.error != null ? result.error : result.output));
+            }
+            String output = result.output;
+            int lineStart = 0;
+            int statStart = -1;
+            int statEnd = -1;
+            while (lineStart < output.length()) {
+                int lineEnd = output.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = output.length();
+                }
+                if (lineEnd - lineStart >= 2) {
+                    char kind = output.charAt(lineStart);
+                    if (kind == 'C') {
+                        long total = parseCpuLine(output, lineStart + 2, lineEnd);
+                        if (cpuTotal == 0) {
+                            cpuTotal = total;
+                        } else {
+                            cpus++;
+                        }
+                    } else if (kind == 'P') {
+                        statStart = lineStart + 2;
+                        statEnd = lineEnd;
+                    } else if (kind == 'M' && statStart >= 0) {
+                        statText.setLength(0);
+                        statText.append(output, statStart, statEnd);
+                        addProcess(statText, output, lineStart + 2, lineEnd);
+                        statStart = -1;
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+        } else {
+            if (readFile(new File(procRoot, "stat"), text)) {
+                int lineStart = 0;
+                while (lineStart < text.length() && text.charAt(lineStart) == 'c') {
+                    int lineEnd = indexOf(text, '\n', lineStart);
+                    long total = parseCpuLine(text, lineStart, lineEnd);
+                    if (cpuTotal == 0) {
+                        cpuTotal = total;
+                    } else {
+                        cpus++;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+            String[] names = procRoot.list();
+            if (names != null) {
+                for (String name : names) {
+                    if (name.isEmpty() || name.charAt(0) < '0' || name.charAt(0) > '9') {
+                        continue;
+                    }
+                    File directory = new File(procRoot, name);
+                    if (!readFile(new File(directory, "stat"), statText)) {
+                        continue;
+                    }
+                    if (!readFile(new File(directory, "statm"), text)) {
+                        text.setLength(0);
+                    }
+                    addProcess(statText, text, 0, text.length());
+                }
+            }
+        }
+
+        current.sort(BY_PID);
+        if (cpuTotal > 0) {
+            if (lastCpuTotal > 0 && cpuTotal > lastCpuTotal) {
+                cpuDelta = cpuTotal - lastCpuTotal;
+            }
+            lastCpuTotal = cpuTotal;
+        }
+        cpuCount = Math.max(1, cpus);
+        for (int i = 0; i < current.size(); i++) {
+            ProcessInfo info = current.get(i);
+            // 第一次出现的进程以本次为基准
+            info.cpuPercent = cpuDelta > 0 && info.cpuDelta >= 0
+                    ? info.cpuDelta * 100.0 * cpuCount / cpuDelta : 0;
+        }
+        // 已退出的进程记录回收
+        for (int i = 0; i < previous.size(); i++) {
+            ProcessInfo info = previous.get(i);
+            if (info.generation != sampleCount + 1) {
+                freeRecords.push(info);
+            }
+        }
+        previous.clear();
+        sampleCount++;
+
+        // 命令行只在进程第一次出现时读取
+        if (rootService != null) {
+            loadCommandLines();
+        } else {
+            for (int i = 0; i < current.size(); i++) {
+                ensureCommandLine(current.get(i));
+            }
+        }
+        return current.size();
+    }
+
+    private void restorePrevious() {
+        ArrayList<ProcessInfo> swap = current;
+        current = previous;
+        previous = swap;
+    }
+
+    /**
+     * 解析一个进程的 stat 和 statm，沿用上次采样中 pid 和启动时间都相同的记录
+     */
+    private void addProcess(CharSequence stat, CharSequence statm, int statmStart, int statmEnd) {
+        int open = indexOf(stat, '(', 0);
+        int close = lastIndexOf(stat, ')');
+        if (open < 0 || close < open || close + 2 >= stat.length()) {
+            return;
+        }
+        position = 0;
+        int pid = (int) nextLong(stat, open);
+        position = close + 2;
+        char state = stat.charAt(position);
+        position++;
+        // 第 4 个字段起依次解析，只保留需要的字段
+        long ppid = 0, utime = 0, stime = 0, threads = 0, startTime = 0, vsize = 0, rssPages = 0;
+        for (int field = 4; field <= 24; field++) {
+            long value = nextLong(stat, stat.length());
+            switch (field) {
+                case 4:
+                    ppid = value;
+                    break;
+                case 14:
+                    utime = value;
+                    break;
+                case 15:
+                    stime = value;
+                    break;
+                case 20:
+                    threads = value;
+                    break;
+                case 22:
+                    startTime = value;
+                    break;
+                case 23:
+                    vsize = value;
+                    break;
+                case 24:
+                    rssPages = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        ProcessInfo info = findPrevious(pid);
+        boolean reused = info != null && info.startTime == startTime;
+        if (!reused) {
+            info = freeRecords.isEmpty() ? new ProcessInfo() : freeRecords.pop();
+            info.pid = pid;
+            info.startTime = startTime;
+            info.cmdline = null;
+            info.rssBytes = 0;
+        }
+        if (info.name == null || !contentEquals(info.name, stat, open + 1, close)) {
+            info.name = stat.subSequence(open + 1, close).toString();
+        }
+        long cpuTime = utime + stime;
+        info.cpuDelta = reused ? cpuTime - info.utime - info.stime : -1;
+        info.ppid = (int) ppid;
+        info.state = state;
+        info.utime = utime;
+        info.stime = stime;
+        info.threads = (int) threads;
+        info.vsizeBytes = vsize;
+
+        long rss = rssPages * pageSize;
+        long shared = 0;
+        if (statmEnd > statmStart) {
+            position = statmStart;
+            nextLong(statm, statmEnd);
+            rss = nextLong(statm, statmEnd) * pageSize;
+            shared = nextLong(statm, statmEnd) * pageSize;
+        }
+        info.rssDeltaBytes = reused ? rss - info.rssBytes : 0;
+        info.rssBytes = rss;
+        info.sharedBytes = shared;
+        info.generation = sampleCount + 1;
+        current.add(info);
+    }
+
+    private ProcessInfo findPrevious(int pid) {
+        int low = 0;
+        int high = previous.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            ProcessInfo info = previous.get(middle);
+            if (info.pid < pid) {
+                low = middle + 1;
+            } else if (info.pid > pid) {
+                high = middle - 1;
+            } else {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取新进程的命令行：一次 root 往返用 head 读出全部文件，文件之间以 ==> 名称 <== 分隔
+     */
+    private void loadCommandLines() {
+        StringBuilder command = new StringBuilder();
+        for (int i = 0; i < current.size(); i++) {
+            ProcessInfo info = current.get(i);
+            if (info.cmdline == null) {
+                info.cmdline = "";
+                command.append(' ').append(info.pid).append("/cmdline");
+            }
+        }
+        if (command.length() == 0) {
+            return;
+        }
+        RootShellService.CommandResult result = rootService.executeCommandWithResult(
+                "cd " + RootShellService.quote(procRoot.getPath()) + " && head -v -c " + MAX_CMDLINE_BYTES
+                        + " --" + command + " 2>/dev/null");
+        String output = result.output != null ? result.output : "";
+        int header = output.startsWith("==> ") ? 0 : output.indexOf("\n==> ");
+        while (header >= 0) {
+            int nameStart = header + (output.charAt(header) == '\n' ? 5 : 4);
+            int lineEnd = output.indexOf('\n', nameStart);
+            if (lineEnd < 0) {
+                break;
+            }
+            int next = output.indexOf("\n==> ", lineEnd);
+            int contentEnd = next < 0 ? output.length() : next;
+            int slash = output.indexOf('/', nameStart);
+            try {
+                int pid = Integer.parseInt(output.substring(nameStart, slash));
+                int index = indexOfPid(pid);
+                if (index >= 0) {
+                    current.get(index).cmdline = toCommandLine(output.substring(lineEnd + 1, contentEnd));
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "解析命令行失败: " + e.getMessage());
+            }
+            header = next;
+        }
+    }
+
+    private int indexOfPid(int pid) {
+        int low = 0;
+        int high = current.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = current.get(middle).pid;
+            if (value < pid) {
+                low = middle + 1;
+            } else if (value > pid) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 直接读取命令行文件
+     */
+    private String readCommandLine(int pid) {
+        File file = new File(new File(procRoot, String.valueOf(pid)), "cmdline");
+        try (FileInputStream input = new FileInputStream(file)) {
+            int length = 0;
+            int read;
+            while (length < readBuffer.length
+                    && (read = input.read(readBuffer, length, readBuffer.length - length)) != -1) {
+                length += read;
+            }
+            return toCommandLine(new String(readBuffer, 0, length, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * 参数之间以 \0 分隔，转成空格（参数中的换行同样替换，保证一行显示）
+     */
+    private static String toCommandLine(String raw) {
+        return raw.replace('\0', ' ').replace('\n', ' ').trim();
+    }
+
+    /**
+     * 读取小文件到复用的 StringBuilder（按单字节字符，/proc 数值文件都是 ASCII）
+     */
+    private boolean readFile(File file, StringBuilder target) {
+        target.setLength(0);
+        try (FileInputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(readBuffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    target.append((char) (readBuffer[i] & 0xff));
+                }
+            }
+            return target.length() > 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析 cpu 行，返回各项时间之和（jiffies）
+     */
+    private long parseCpuLine(CharSequence line, int start, int end) {
+        position = start;
+        while (position < end && line.charAt(position) != ' ') {
+            position++;
+        }
+        long total = 0;
+        // user nice system idle iowait irq softirq steal
+        for (int i = 0; i < 8 && position < end; i++) {
+            total += nextLong(line, end);
+        }
+        return total;
+    }
+
+    /**
+     * 从 position 开始跳过非数字字符读取下一个整数，position 移到数字之后
+     */
+    private long nextLong(CharSequence text, int end) {
+        while (position < end && !isNumberStart(text.charAt(position))) {
+            position++;
+        }
+        boolean negative = false;
+        if (position < end && text.charAt(position) == '-') {
+            negative = true;
+            position++;
+        }
+        long value = 0;
+        while (position < end) {
+            char c = text.charAt(position);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            position++;
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isNumberStart(char c) {
+        return (c >= '0' && c <= '9') || c == '-';
+    }
+
+    private static int indexOf(CharSequence text, char c, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int lastIndexOf(CharSequence text, char c) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contentEquals(String value, CharSequence text, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 最近一次采样的全部进程（按 pid 排序）
+     * 记录会在下一次采样时原地更新，需要保留时调用 ProcessInfo.copy()
+     */
+    public synchronized List<ProcessInfo> getProcesses() {
+        return new ArrayList<>(current);
+    }
+
+    /**
+     * 按 CPU 或内存占用取前 N 个进程
+     */
+    public synchronized List<ProcessInfo> getTop(SortBy sortBy, int count) {
+        sorted.clear();
+        sorted.addAll(current);
+        sorted.sort(sortBy == SortBy.CPU ? BY_CPU : BY_MEMORY);
+        return new ArrayList<>(sorted.subList(0, Math.min(count, sorted.size())));
+    }
+
+    /**
+     * 查找进程名或命令行第一个参数（含去掉路径后的文件名）等于 name 的进程
+     */
+    public synchronized List<ProcessInfo> findByName(String name) {
+        List<ProcessInfo> matches = new ArrayList<>();
+        for (ProcessInfo info : current) {
+            ensureCommandLine(info);
+            String program = info.getProgram();
+            if (name.equals(info.name) || name.equals(program) || program.endsWith("/" + name)) {
+                matches.add(info);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 查找命令行（内核线程为进程名）匹配正则的进程
+     */
+    public synchronized List<ProcessInfo> findMatching(Pattern pattern) {
+        List<ProcessInfo> matches = new ArrayList<>();
+        for (ProcessInfo info : current) {
+            ensureCommandLine(info);
+            if (pattern.matcher(info.getDisplayName()).find()) {
+                matches.add(info);
+            }
+        }
+        return matches;
+    }
+
+    private void ensureCommandLine(ProcessInfo info) {
+        if (info.cmdline == null) {
+            info.cmdline = readCommandLine(info.pid);
+        }
+    }
+
+    /**
+     * 按名称结束进程（先重新采样，避免 pid 已被复用），返回结束的进程
+     */
+    public List<ProcessInfo> killByName(String name, boolean force) throws Exception {
+        List<ProcessInfo> targets;
+        synchronized (this) {
+            sample();
+            targets = copyAll(findByName(name));
+        }
+        return kill(targets, force);
+    }
+
+    /**
+     * 结束命令行匹配正则的全部进程，返回结束的进程
+     */
+    public List<ProcessInfo> killMatching(String regex, boolean force) throws Exception {
+        Pattern pattern = Pattern.compile(regex);
+        List<ProcessInfo> targets;
+        synchronized (this) {
+            sample();
+            targets = copyAll(findMatching(pattern));
+        }
+        return kill(targets, force);
+    }
+
+    private List<ProcessInfo> kill(List<ProcessInfo> targets, boolean force) throws Exception {
+        if (targets.isEmpty()) {
+            return targets;
+        }
+        if (rootService == null) {
+            throw new Exception("结束进程需要 root 服务");
+        }
+        StringBuilder command = new StringBuilder(force ? "kill -9" : "kill");
+        for (ProcessInfo info : targets) {
+            command.append(' ').append(info.pid);
+        }
+        RootShellService.CommandResult result = rootService.executeCommandWithResult(command.toString());
+        if (result.exitCode < 0) {
+            throw new Exception("结束进程失败: " + result.error);
+        }
+        return targets;
+    }
+
+    private static List<ProcessInfo> copyAll(List<ProcessInfo> list) {
+        List<ProcessInfo> copies = new ArrayList<>(list.size());
+        for (ProcessInfo info : list) {
+            copies.add(info.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * 按间隔持续采样，每次采样后在采样线程回调
+     */
+    public synchronized void start(long intervalMs, SampleListener listener) {
+        stop();
+        running = true;
+        sampler = new Thread(() -> {
+            while (running) {
+                try {
+                    sample();
+                    if (listener != null) {
+                        listener.onSample(this);
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "采样失败: " + e.getMessage());
+                }
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }, "process-monitor");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (sampler != null) {
+            sampler.interrupt();
+            sampler = null;
+        }
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 格式化为类似 top 的表格
+     */
+    public static String format(List<ProcessInfo> processes) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%6s %6s %1s %6s %9s %9s %4s  %s\n",
+                "PID", "PPID", "S", "CPU%", "RSS", "ΔRSS", "THR", "NAME"));
+        for (ProcessInfo info : processes) {
+            builder.append(info).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 单个进程的信息（采样之间复用）
+     */
+    public static class ProcessInfo {
+        // 表格中命令行最多显示的字符数
+        private static final int MAX_DISPLAY_CHARS = 120;
+
+        public int pid;
+        public int ppid;
+        // /proc/[pid]/stat 中的进程名（最长 15 字符）
+        public String name;
+        // 参数以空格连接的命令行，内核线程为空
+        public String cmdline;
+        public char state;
+        public int threads;
+        // 用户态、内核态 CPU 时间（jiffies）
+        public long utime;
+        public long stime;
+        // 启动时间（开机后 jiffies），与 pid 一起判断是否为同一进程
+        public long startTime;
+        public long vsizeBytes;
+        public long rssBytes;
+        public long sharedBytes;
+        // 两次采样之间的 CPU 占用，100% 为一个核心跑满
+        public double cpuPercent;
+        // 与上次采样相比 RSS 的变化
+        public long rssDeltaBytes;
+
+        long cpuDelta;
+        long generation;
+
+        /**
+         * 命令行第一个参数，没有时为进程名
+         */
+        public String getProgram() {
+            if (cmdline == null || cmdline.isEmpty()) {
+                return name;
+            }
+            int space = cmdline.indexOf(' ');
+            return space < 0 ? cmdline : cmdline.substring(0, space);
+        }
+
+        public String getDisplayName() {
+            return cmdline == null || cmdline.isEmpty() ? "[" + name + "]" : cmdline;
+        }
+
+        public ProcessInfo copy() {
+            ProcessInfo copy = new ProcessInfo();
+            copy.pid = pid;
+            copy.ppid = ppid;
+            copy.name = name;
+            copy.cmdline = cmdline;
+            copy.state = state;
+            copy.threads = threads;
+            copy.utime = utime;
+            copy.stime = stime;
+            copy.startTime = startTime;
+            copy.vsizeBytes = vsizeBytes;
+            copy.rssBytes = rssBytes;
+            copy.sharedBytes = sharedBytes;
+            copy.cpuPercent = cpuPercent;
+            copy.rssDeltaBytes = rssDeltaBytes;
+            copy.cpuDelta = cpuDelta;
+            copy.generation = generation;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            String displayName = getDisplayName();
+            if (displayName.length() > MAX_DISPLAY_CHARS) {
+                displayName = displayName.substring(0, MAX_DISPLAY_CHARS) + "…";
+            }
+            return String.format("%6d %6d %c %6.1f %8dK %+8dK %4d  %s", pid, ppid, state, cpuPercent,
+                    rssBytes / 1024, rssDeltaBytes / 1024, threads, displayName);
+        }
+    }
+
+    /**
+     * 采样回调
+     */
+    public interface SampleListener {
+        void onSample(ProcessMonitor monitor);
+    }
+}
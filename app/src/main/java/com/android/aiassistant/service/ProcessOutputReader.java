@@ -0,0 +1,76 @@
+package com.android.aiassistant.service;
+
+import com.android.aiassistant.utils.Utf8StreamDecoder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * llama.cpp 进程输出的读取循环
+ * 不依赖 Android，进程模式推理和 JVM 基准（benchmark 模块）使用同一份实现
+ */
+final class ProcessOutputReader {
+
+    // stdout 每次读取的字节数，小块读取让流式输出尽快到达
+    static final int STREAM_CHUNK_SIZE = 256;
+
+    private ProcessOutputReader() {
+    }
+
+    /**
+     * 按小块读取 stdout 原始字节，到达即解码推送，不等待换行
+     * 取消后停止读取，已读到但未解码完整的尾部丢弃
+     */
+    static String readOutput(InputStream input, InferenceTiming timing, OutputListener listener)
+            throws IOException {
+        StringBuilder output = new StringBuilder();
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (listener.isCancelled()) {
+                return output.toString();
+            }
+            String delta = decoder.decode(buffer, 0, read);
+            if (!delta.isEmpty()) {
+                timing.markFirstToken();
+                output.append(delta);
+                listener.onOutput(delta);
+            }
+        }
+        String tail = decoder.finish();
+        if (!tail.isEmpty() && !listener.isCancelled()) {
+            output.append(tail);
+            listener.onOutput(tail);
+        }
+        return output.toString();
+    }
+
+    /**
+     * 逐行读取 stderr 并解析耗时日志，log 非空时原样追加写入
+     */
+    static void readTimingLog(InputStream input, InferenceTiming timing, Writer log) throws IOException {
+        try (BufferedReader stderr = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = stderr.readLine()) != null) {
+                timing.parseLogLine(line);
+                if (log != null) {
+                    log.write(line);
+                    log.write("\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * stdout 增量输出的接收方
+     */
+    interface OutputListener {
+        boolean isCancelled();
+
+        void onOutput(String delta);
+    }
+}
@@ -0,0 +1,425 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import com.android.aiassistant.utils.FileUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 推理结果缓存
+ * 键由模型内容标识、prompt 和全部采样参数（含随机种子）组成；内存 LRU + 限定大小的磁盘缓存，
+ * 相同请求并发到达时只计算一次（single-flight）。
+ * 只应缓存确定性的输出（温度为 0 或固定种子），否则同一问题每次都会得到同一个“随机”回答。
+ * 写入的结果统一去掉首尾空白，同一个键回放的内容与由哪个入口（流式或非流式）计算无关
+ */
+public class ResponseCache {
+
+    private static final String TAG = "ResponseCache";
+    private static final int FINGERPRINT_SAMPLE = 64 * 1024;
+
+    private final File cacheDirectory;
+    private final int maxMemoryEntries;
+    private final long maxDiskBytes;
+
+    private final LinkedHashMap<String, String> memory;
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    private final Map<String, String> fingerprints = new HashMap<>();
+    private ModelHashProvider hashProvider;
+    private long diskBytes;
+
+    // 统计
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long collapsed;
+
+    public ResponseCache(File cacheDirectory, int maxMemoryEntries, long maxDiskBytes) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > ResponseCache.this.maxMemoryEntries;
+            }
+        };
+        if (!cacheDirectory.exists()) {
+            cacheDirectory.mkdirs();
+        }
+        diskBytes = computeDiskUsage();
+    }
+
+    /**
+     * 设置模型内容哈希的来源（如模型目录索引），有完整哈希时用它代替头尾采样
+     */
+    public void setModelHashProvider(ModelHashProvider hashProvider) {
+        this.hashProvider = hashProvider;
+    }
+
+    /**
+     * 计算缓存键
+     */
+    public String buildKey(String modelPath, String prompt, float temperature, float topP, int seed,
+                           int maxTokens, int contextLength) throws Exception {
+        String raw = getModelFingerprint(modelPath) + "\n" + temperature + "\n" + topP + "\n" + seed + "\n"
+                + maxTokens + "\n" + contextLength + "\n" + prompt;
+        return sha256(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 查询缓存（内存 -> 磁盘），未命中返回 null
+     */
+    public String get(String key) {
+        synchronized (this) {
+            String value = memory.get(key);
+            if (value != null) {
+                memoryHits++;
+                return value;
+            }
+        }
+
+        String value = readDisk(key);
+        synchronized (this) {
+            if (value != null) {
+                diskHits++;
+                memory.put(key, value);
+            } else {
+                misses++;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 写入缓存，返回实际缓存的（规范化后的）结果
+     */
+    public String put(String key, String value) {
+        value = normalize(value);
+        synchronized (this) {
+            memory.put(key, value);
+        }
+        writeDisk(key, value);
+        return value;
+    }
+
+    private static String normalize(String value) {
+        return value.trim();
+    }
+
+    /**
+     * 查询缓存，未命中时计算；同一个键的并发请求只计算一次
+     */
+    public String getOrCompute(String key, Loader loader) throws Exception {
+        Claim claim = claim(key);
+        if (!claim.isOwner()) {
+            return claim.await();
+        }
+        try {
+            return claim.complete(loader.load());
+        } catch (Exception e) {
+            claim.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 非阻塞地认领一个键：命中时直接带回结果；同一个键已在计算时返回等待它的认领；
+     * 否则调用方成为计算者，必须以 complete 或 fail 结束认领
+     */
+    public Claim claim(String key) {
+        String cached = get(key);
+        if (cached != null) {
+            return new Claim(key, null, false, cached);
+        }
+        synchronized (this) {
+            InFlight flight = inFlight.get(key);
+            if (flight != null) {
+                collapsed++;
+                return new Claim(key, flight, false, null);
+            }
+            flight = new InFlight();
+            inFlight.put(key, flight);
+            return new Claim(key, flight, true, null);
+        }
+    }
+
+    private String finishFlight(String key, InFlight flight, String value, Exception error) {
+        if (error == null) {
+            value = put(key, value);
+        }
+        flight.value = value;
+        flight.error = error;
+        synchronized (this) {
+            inFlight.remove(key);
+        }
+        flight.latch.countDown();
+        return value;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        memory.clear();
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        diskBytes = 0;
+        memoryHits = 0;
+        diskHits = 0;
+        misses = 0;
+        collapsed = 0;
+    }
+
+    /**
+     * 统计信息
+     */
+    public synchronized String getStats() {
+        long lookups = memoryHits + diskHits + misses;
+        double hitRate = lookups == 0 ? 0 : (memoryHits + diskHits) * 100.0 / lookups;
+        return String.format("查询 %d 次，命中率 %.1f%% (内存 %d / 磁盘 %d / 未命中 %d)\n"
+                        + "合并并发请求 %d 次\n"
+                        + "内存条目 %d / %d，磁盘占用 %s / %s",
+                lookups, hitRate, memoryHits, diskHits, misses, collapsed,
+                memory.size(), maxMemoryEntries,
+                FileUtils.formatFileSize(diskBytes),
+                FileUtils.formatFileSize(maxDiskBytes));
+    }
+
+    /**
+     * 模型内容标识：有完整内容哈希时直接使用；否则用文件大小 + 头尾采样的摘要，按路径、大小、修改时间缓存
+     * （只在中间部分不同的两个文件采样结果相同，后台哈希算完后键随之区分）
+     */
+    private String getModelFingerprint(String modelPath) throws Exception {
+        ModelHashProvider provider = hashProvider;
+        String sha256 = provider != null ? provider.getSha256(modelPath) : null;
+        if (sha256 != null) {
+            return "sha256:" + sha256;
+        }
+        File file = new File(modelPath);
+        String stamp = modelPath + ":" + file.length() + ":" + file.lastModified();
+        synchronized (fingerprints) {
+            String cached = fingerprints.get(stamp);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] buffer = new byte[(int) Math.min(FINGERPRINT_SAMPLE, length)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            raf.seek(Math.max(0, length - buffer.length));
+            raf.readFully(buffer);
+            digest.update(buffer);
+            digest.update(String.valueOf(length).getBytes(StandardCharsets.UTF_8));
+        }
+        String fingerprint = toHex(digest.digest());
+        synchronized (fingerprints) {
+            fingerprints.put(stamp, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private String readDisk(String key) {
+        File file = new File(cacheDirectory, key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = input.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            // 更新修改时间，磁盘淘汰按最近使用排序
+            file.setLastModified(System.currentTimeMillis());
+            return new String(data, 0, offset, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            Log.w(TAG, "读取缓存失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String value) {
+        File file = new File(cacheDirectory, key);
+        File temp = new File(cacheDirectory, key + ".tmp");
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp)) {
+                output.write(data);
+            }
+            synchronized (this) {
+                long previous = file.length();
+                if (temp.renameTo(file)) {
+                    diskBytes += data.length - previous;
+                }
+                trimDisk();
+            }
+        } catch (Exception e) {
+            temp.delete();
+            Log.w(TAG, "写入缓存失败: " + e.getMessage());
+        }
+    }
+
+    private void trimDisk() {
+        if (diskBytes <= maxDiskBytes) {
+            return;
+        }
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> ordered = new ArrayList<>(Arrays.asList(files));
+        final Map<File, Long> modified = new HashMap<>();
+        for (File file : ordered) {
+            modified.put(file, file.lastModified());
+        }
+        ordered.sort(new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(modified.get(a), modified.get(b));
+            }
+        });
+        for (File file : ordered) {
+            if (diskBytes <= maxDiskBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                diskBytes -= length;
+            }
+        }
+    }
+
+    private long computeDiskUsage() {
+        long total = 0;
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return toHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 模型内容哈希的来源，尚未算出时返回 null
+     */
+    public interface ModelHashProvider {
+        String getSha256(String modelPath);
+    }
+
+    /**
+     * 缓存未命中时的计算逻辑
+     */
+    public interface Loader {
+        String load() throws Exception;
+    }
+
+    /**
+     * 缓存认领结果，见 claim
+     */
+    public class Claim {
+        private final String key;
+        private final InFlight flight;
+        private final boolean owner;
+        private final String value;
+        private boolean finished;
+
+        Claim(String key, InFlight flight, boolean owner, String value) {
+            this.key = key;
+            this.flight = flight;
+            this.owner = owner;
+            this.value = value;
+        }
+
+        /**
+         * 缓存命中
+         */
+        public boolean isHit() {
+            return value != null;
+        }
+
+        /**
+         * 调用方负责计算
+         */
+        public boolean isOwner() {
+            return owner;
+        }
+
+        /**
+         * 命中时直接返回结果，否则等待正在计算的请求结束
+         */
+        public String await() throws Exception {
+            if (value != null) {
+                return value;
+            }
+            flight.latch.await();
+            if (flight.error != null) {
+                throw flight.error;
+            }
+            return flight.value;
+        }
+
+        /**
+         * 计算完成，写入缓存并唤醒等待者，返回缓存的结果
+         */
+        public synchronized String complete(String result) {
+            if (owner && !finished) {
+                finished = true;
+                return finishFlight(key, flight, result, null);
+            }
+            return normalize(result);
+        }
+
+        /**
+         * 计算失败或取消，等待者收到同样的错误，结果不缓存
+         */
+        public synchronized void fail(Exception error) {
+            if (owner && !finished) {
+                finished = true;
+                finishFlight(key, flight, null, error);
+            }
+        }
+    }
+
+    private static class InFlight {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile String value;
+        volatile Exception error;
+    }
+}
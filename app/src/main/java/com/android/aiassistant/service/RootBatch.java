@@ -0,0 +1,197 @@
+package com.android.aiassistant.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 批量 root 文件操作
+ * 把一组操作拼成一个脚本，在同一个 root 会话中一次执行，每个操作后输出带序号和退出码的标记，
+ * 执行完再按标记拆回逐个操作的结果。检查上千个路径只需要几次往返，而不是每个路径一次。
+ * 脚本按字节数和操作数自动分块，参数一律单引号转义
+ */
+public class RootBatch {
+
+    // 单块脚本的最大字节数和操作数，避免单次输出过大
+    private static final int MAX_SCRIPT_BYTES = 32 * 1024;
+    private static final int MAX_OPS_PER_CHUNK = 500;
+
+    private static final Random RANDOM = new Random();
+
+    public enum Type {
+        EXISTS, FILE, DIRECTORY, STAT, CHMOD, CHOWN, RM, MKDIR
+    }
+
+    /**
+     * 在给定会话上执行全部操作，结果与输入一一对应
+     */
+    public static List<OpResult> run(RootShell shell, List<Op> ops, long timeoutMs) {
+        List<OpResult> results = new ArrayList<>(ops.size());
+        // 每批使用随机标记，避免和文件内容、报错信息混淆
+        String marker = "__RB" + Long.toHexString(RANDOM.nextLong()) + "_";
+
+        int start = 0;
+        while (start < ops.size()) {
+            StringBuilder script = new StringBuilder();
+            int scriptBytes = 0;
+            int end = start;
+            while (end < ops.size() && end - start < MAX_OPS_PER_CHUNK) {
+                String line = ops.get(end).toShell() + " 2>&1; printf '\\n" + marker + "%d:%d\\n' "
+                        + (end - start) + " $?\n";
+                int lineBytes = line.getBytes(StandardCharsets.UTF_8).length;
+                if (end > start && scriptBytes + lineBytes > MAX_SCRIPT_BYTES) {
+                    break;
+                }
+                script.append(line);
+                scriptBytes += lineBytes;
+                end++;
+            }
+
+            RootShellService.CommandResult result = shell.execute(script.toString(), timeoutMs);
+            parseChunk(ops.subList(start, end), result, marker, results);
+            start = end;
+        }
+        return results;
+    }
+
+    /**
+     * 按标记拆分一块脚本的输出；会话失败（超时等）时未完成的操作标记为失败
+     */
+    private static void parseChunk(List<Op> ops, RootShellService.CommandResult result, String marker,
+                                   List<OpResult> results) {
+        String output = result.output;
+        int position = 0;
+        int parsed = 0;
+        while (parsed < ops.size()) {
+            int markerIndex = output.indexOf(marker, position);
+            if (markerIndex < 0) {
+                break;
+            }
+            int lineEnd = output.indexOf('\n', markerIndex);
+            if (lineEnd < 0) {
+                lineEnd = output.length();
+            }
+            String[] status = output.substring(markerIndex + marker.length(), lineEnd).split(":");
+
+            // 标记前有一个额外换行
+            int textEnd = markerIndex;
+            if (textEnd > position && output.charAt(textEnd - 1) == '\n') {
+                textEnd--;
+            }
+            OpResult opResult = new OpResult();
+            opResult.op = ops.get(parsed);
+            opResult.output = output.substring(position, textEnd);
+            try {
+                opResult.exitCode = Integer.parseInt(status[1].trim());
+            } catch (Exception e) {
+                opResult.exitCode = -1;
+            }
+            opResult.success = opResult.exitCode == 0;
+            if (opResult.op.type == Type.STAT && opResult.success) {
+                opResult.stat = RootFileStat.parse(opResult.op.path, opResult.output);
+            }
+            results.add(opResult);
+
+            parsed++;
+            position = Math.min(output.length(), lineEnd + 1);
+        }
+
+        for (int i = parsed; i < ops.size(); i++) {
+            OpResult opResult = new OpResult();
+            opResult.op = ops.get(i);
+            opResult.output = "";
+            opResult.exitCode = -1;
+            opResult.error = result.error;
+            results.add(opResult);
+        }
+    }
+
+    /**
+     * 单个操作
+     */
+    public static class Op {
+        public Type type;
+        public String path;
+        // chmod 的权限、chown 的所有者
+        public String argument;
+
+        public Op(Type type, String path, String argument) {
+            this.type = type;
+            this.path = path;
+            this.argument = argument;
+        }
+
+        public static Op exists(String path) {
+            return new Op(Type.EXISTS, path, null);
+        }
+
+        public static Op isFile(String path) {
+            return new Op(Type.FILE, path, null);
+        }
+
+        public static Op isDirectory(String path) {
+            return new Op(Type.DIRECTORY, path, null);
+        }
+
+        public static Op stat(String path) {
+            return new Op(Type.STAT, path, null);
+        }
+
+        public static Op chmod(String path, String permissions) {
+            return new Op(Type.CHMOD, path, permissions);
+        }
+
+        public static Op chown(String path, String owner) {
+            return new Op(Type.CHOWN, path, owner);
+        }
+
+        public static Op rm(String path) {
+            return new Op(Type.RM, path, null);
+        }
+
+        public static Op mkdir(String path) {
+            return new Op(Type.MKDIR, path, null);
+        }
+
+        String toShell() {
+            String quoted = RootShellService.quote(path);
+            switch (type) {
+                case EXISTS:
+                    return "[ -e " + quoted + " ]";
+                case FILE:
+                    return "[ -f " + quoted + " ]";
+                case DIRECTORY:
+                    return "[ -d " + quoted + " ]";
+                case STAT:
+                    // 与 RootShellService.stat 一致跟随符号链接，两者写入同一份缓存
+                    return "stat -L -c " + RootShellService.quote(RootFileStat.STAT_FORMAT) + " -- " + quoted;
+                case CHMOD:
+                    return "chmod -- " + RootShellService.quote(argument) + " " + quoted;
+                case CHOWN:
+                    return "chown -- " + RootShellService.quote(argument) + " " + quoted;
+                case RM:
+                    return "rm -rf -- " + quoted;
+                case MKDIR:
+                    return "mkdir -p -- " + quoted;
+                default:
+                    throw new IllegalArgumentException("未知操作: " + type);
+            }
+        }
+    }
+
+    /**
+     * 单个操作的结果
+     */
+    public static class OpResult {
+        public Op op;
+        public int exitCode;
+        public boolean success;
+        // 操作的输出（含错误信息）
+        public String output;
+        // 会话级错误（超时等）
+        public String error;
+        // STAT 成功时的解析结果
+        public RootFileStat stat;
+    }
+}
@@ -0,0 +1,289 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import com.android.aiassistant.utils.Utf8StreamDecoder;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式 root 命令
+ * 适合 logcat、find /、dumpsys 这类长时间运行或输出量大的命令：单独启动一个 root 进程，
+ * stdout 和 stderr 各由一个线程读取，解码后放入有界队列，再由分发线程逐块（或逐行）交给监听器。
+ * 监听器处理不过来时队列写满，读取线程随之停止读管道，进程写满管道后自然暂停（背压），
+ * 内存占用只取决于队列容量，与命令的输出总量无关。两路管道分开读取，不会因为一路写满而死锁。
+ * 命令先输出自身 pid 再 exec，取消时通过 root 会话池结束它及其子进程；
+ * 只销毁 su 客户端的话 root 端的进程仍持有管道，读取永远不会结束
+ */
+public class RootCommandStream {
+
+    private static final String TAG = "RootCommandStream";
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    // 队列容量（块数），内存上限约为 容量 × 单块大小
+    private static final int QUEUE_CAPACITY = 64;
+    // 按行模式下单行过长时直接输出，保证缓冲有界
+    private static final int MAX_LINE_CHARS = 64 * 1024;
+    private static final long KILL_TIMEOUT_MS = 5000;
+
+    private final Process process;
+    private final RootShellPool killPool;
+    private final boolean lineMode;
+    private final StreamListener listener;
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean cancelled;
+    private volatile int exitCode = -1;
+    // root 端命令的 pid，读到 stdout 第一行之前为 -1
+    private volatile int pid = -1;
+
+    /**
+     * 启动命令并开始分发输出
+     *
+     * @param shellCommand 启动 shell 的命令（su 或测试用的 /bin/sh），命令通过 -c 传入
+     * @param killPool     取消时用来结束 root 端进程的会话池，为 null 时只销毁本地进程
+     * @param lineMode     true 时按行回调（不含换行符），否则按读取到的块回调
+     */
+    public static RootCommandStream start(String[] shellCommand, RootShellPool killPool, String command,
+                                          boolean lineMode, StreamListener listener) throws Exception {
+        List<String> args = new ArrayList<>();
+        for (String arg : shellCommand) {
+            args.add(arg);
+        }
+        args.add("-c");
+        // exec 保持 pid 不变，输出的 $$ 就是命令所在进程
+        args.add("echo $$; exec sh -c " + RootShellService.quote(command));
+        Process process = new ProcessBuilder(args).start();
+        // 不需要输入，关闭 stdin 避免命令等待读取
+        process.getOutputStream().close();
+        RootCommandStream stream = new RootCommandStream(process, killPool, lineMode, listener);
+        stream.startThreads();
+        return stream;
+    }
+
+    private RootCommandStream(Process process, RootShellPool killPool, boolean lineMode,
+                              StreamListener listener) {
+        this.process = process;
+        this.killPool = killPool;
+        this.lineMode = lineMode;
+        this.listener = listener;
+    }
+
+    private void startThreads() {
+        Thread stdout = startReader(process.getInputStream(), false);
+        Thread stderr = startReader(process.getErrorStream(), true);
+
+        Thread dispatcher = new Thread(() -> {
+            try {
+                int openStreams = 2;
+                while (openStreams > 0) {
+                    Chunk chunk = queue.take();
+                    if (chunk.text == null) {
+                        openStreams--;
+                    } else if (!cancelled) {
+                        if (chunk.stderr) {
+                            listener.onStderr(chunk.text);
+                        } else {
+                            listener.onStdout(chunk.text);
+                        }
+                    }
+                }
+                exitCode = process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.w(TAG, "输出处理失败: " + e.getMessage());
+                cancel();
+            }
+            try {
+                stdout.join();
+                stderr.join();
+            } catch (InterruptedException ignored) {
+            }
+            finished.countDown();
+            listener.onExit(cancelled ? -1 : exitCode);
+        }, "root-stream-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * 读取一路输出：按块读取原始字节，增量解码，行模式下切成整行后放入队列（队列满时阻塞）
+     */
+    private Thread startReader(InputStream input, boolean stderr) {
+        Thread reader = new Thread(() -> {
+            Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+            StringBuilder partial = new StringBuilder();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            try {
+                if (!stderr) {
+                    readPid(input, partial);
+                }
+                int read;
+                while (!cancelled && (read = input.read(buffer)) != -1) {
+                    emit(stderr, decoder.decode(buffer, 0, read), partial);
+                }
+                if (!cancelled) {
+                    emit(stderr, decoder.finish(), partial);
+                    if (partial.length() > 0) {
+                        put(stderr, partial.toString());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // 进程被销毁
+            } finally {
+                try {
+                    input.close();
+                } catch (Exception ignored) {
+                }
+                // 结束标记必须送达，队列满时等待分发线程取走
+                while (true) {
+                    try {
+                        queue.put(new Chunk(stderr, null));
+                        break;
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }, "root-stream-" + (stderr ? "err" : "out"));
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * stdout 第一行是 root 端进程的 pid；不是数字时（shell 打印了别的内容）当作普通输出
+     */
+    private void readPid(InputStream input, StringBuilder partial) throws Exception {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            line.append((char) b);
+        }
+        try {
+            pid = Integer.parseInt(line.toString().trim());
+        } catch (NumberFormatException e) {
+            emit(false, line + (b == '\n' ? "\n" : ""), partial);
+            return;
+        }
+        if (cancelled) {
+            // 读到 pid 之前已经取消
+            killRemote();
+        }
+    }
+
+    private void emit(boolean stderr, String text, StringBuilder partial) throws InterruptedException {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (!lineMode) {
+            put(stderr, text);
+            return;
+        }
+        int start = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', start)) >= 0) {
+            partial.append(text, start, newline);
+            put(stderr, partial.toString());
+            partial.setLength(0);
+            start = newline + 1;
+        }
+        partial.append(text, start, text.length());
+        if (partial.length() > MAX_LINE_CHARS) {
+            put(stderr, partial.toString());
+            partial.setLength(0);
+        }
+    }
+
+    private void put(boolean stderr, String text) throws InterruptedException {
+        if (!cancelled) {
+            queue.put(new Chunk(stderr, text));
+        }
+    }
+
+    /**
+     * 取消：结束 root 端进程和本地 su 进程，丢弃尚未分发的输出
+     * 不清空队列：读取线程的结束标记可能已在队列中，分发线程靠它们退出，其余输出由分发线程跳过
+     */
+    public void cancel() {
+        cancelled = true;
+        if (!killRemote()) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * 通过会话池结束 root 端进程及其子进程（管道命令的其他部分），之后再销毁本地进程；
+     * 先销毁的话子进程会被 init 收养，按父进程就找不到了。在后台线程执行，cancel 可在主线程调用
+     *
+     * @return false 表示还不知道 pid 或没有会话池，无法结束 root 端进程
+     */
+    private boolean killRemote() {
+        int target = pid;
+        if (target <= 0 || killPool == null) {
+            return false;
+        }
+        Thread killer = new Thread(() -> {
+            String command = "pkill -KILL -P " + target + " 2>/dev/null; kill -KILL " + target + " 2>/dev/null";
+            RootShellService.CommandResult result = killPool.execute(command, KILL_TIMEOUT_MS);
+            if (result.exitCode < 0) {
+                Log.w(TAG, "结束进程 " + target + " 失败: " + result.error);
+            }
+            process.destroy();
+        }, "root-stream-kill");
+        killer.setDaemon(true);
+        killer.start();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * 等待命令结束并分发完全部输出，返回退出码（取消时为 -1）
+     */
+    public int await() throws InterruptedException {
+        finished.await();
+        return cancelled ? -1 : exitCode;
+    }
+
+    /**
+     * 限时等待，超时返回 false
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        return finished.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Chunk {
+        final boolean stderr;
+        // null 表示该路输出结束
+        final String text;
+
+        Chunk(boolean stderr, String text) {
+            this.stderr = stderr;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 输出监听，在分发线程中回调；回调阻塞时命令会被背压暂停
+     */
+    public interface StreamListener {
+        void onStdout(String text);
+
+        void onStderr(String text);
+
+        void onExit(int exitCode);
+    }
+}
@@ -0,0 +1,66 @@
+package com.android.aiassistant.service;
+
+/**
+ * root 侧文件元数据（由 stat -c 输出解析）
+ */
+public class RootFileStat {
+
+    // stat 输出格式：类型|权限(八进制)|所有者|组|大小|修改时间(秒)
+    public static final String STAT_FORMAT = "%F|%a|%U|%G|%s|%Y";
+
+    public String path;
+    public String type;
+    public int mode;
+    public String owner;
+    public String group;
+    public long size;
+    public long lastModified;
+
+    /**
+     * 解析一行 STAT_FORMAT 格式的输出，格式不符时返回 null
+     */
+    public static RootFileStat parse(String path, String line) {
+        String[] fields = line.trim().split("\\|");
+        if (fields.length != 6) {
+            return null;
+        }
+        try {
+            RootFileStat stat = new RootFileStat();
+            stat.path = path;
+            stat.type = fields[0];
+            stat.mode = Integer.parseInt(fields[1], 8);
+            stat.owner = fields[2];
+            stat.group = fields[3];
+            stat.size = Long.parseLong(fields[4]);
+            stat.lastModified = Long.parseLong(fields[5]) * 1000;
+            return stat;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean isDirectory() {
+        return "directory".equals(type);
+    }
+
+    public boolean isFile() {
+        // GNU stat 对空文件输出 regular empty file
+        return type != null && type.startsWith("regular");
+    }
+
+    public boolean isSymlink() {
+        return "symbolic link".equals(type);
+    }
+
+    /**
+     * 权限字符串，如 755
+     */
+    public String getModeString() {
+        return Integer.toOctalString(mode);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + getModeString() + " " + owner + ":" + group + " " + size + " " + path;
+    }
+}
@@ -0,0 +1,246 @@
+package com.android.aiassistant.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * root 文件传输通道
+ * 每次传输单独启动一个 root 进程运行 cat，文件内容以原始字节经管道直接流过，
+ * 不经过命令行参数、不转成字符串，二进制安全，大小不受 argv 限制。
+ * 使用大缓冲区单次拷贝，传输时同步计算 SHA-256，可选与 root 侧 sha256sum 对比校验
+ */
+public class RootFileTransfer {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // 进度回调的最小间隔字节数
+    private static final long PROGRESS_STEP = 4 * 1024 * 1024;
+
+    private final String[] shellCommand;
+    private final RootShellService rootService;
+
+    public RootFileTransfer(String[] shellCommand, RootShellService rootService) {
+        this.shellCommand = shellCommand;
+        this.rootService = rootService;
+    }
+
+    /**
+     * 读取 root 侧文件写入输出流
+     */
+    public TransferResult read(String path, OutputStream output, ProgressListener listener) throws Exception {
+        long total = listener != null ? querySize(path) : -1;
+        Process process = startProcess("cat -- " + RootShellService.quote(path));
+        process.getOutputStream().close();
+        StderrCollector stderr = new StderrCollector(process.getErrorStream());
+
+        TransferResult result = new TransferResult();
+        long startTime = System.currentTimeMillis();
+        try (InputStream input = process.getInputStream()) {
+            result.bytes = copy(input, output, total, listener, result);
+        } catch (Exception e) {
+            process.destroy();
+            throw e;
+        }
+        finish(process, stderr, "读取", path);
+        result.millis = System.currentTimeMillis() - startTime;
+        return result;
+    }
+
+    /**
+     * 把输入流的内容写入 root 侧文件（覆盖）
+     *
+     * @param total 输入的总字节数，用于进度回调，未知时传 -1
+     */
+    public TransferResult write(String path, InputStream input, long total, ProgressListener listener)
+            throws Exception {
+        Process process = startProcess("cat > " + RootShellService.quote(path));
+        process.getInputStream().close();
+        StderrCollector stderr = new StderrCollector(process.getErrorStream());
+
+        TransferResult result = new TransferResult();
+        long startTime = System.currentTimeMillis();
+        try (OutputStream output = process.getOutputStream()) {
+            result.bytes = copy(input, output, total, listener, result);
+        } catch (IOException e) {
+            // cat 提前退出（如没有写权限）时管道断开，优先报告它的错误信息
+            finish(process, stderr, "写入", path);
+            throw e;
+        } catch (Exception e) {
+            process.destroy();
+            throw e;
+        }
+        finish(process, stderr, "写入", path);
+        result.millis = System.currentTimeMillis() - startTime;
+        return result;
+    }
+
+    /**
+     * 读取 root 侧文件到本地文件
+     */
+    public TransferResult readToFile(String path, File target, ProgressListener listener) throws Exception {
+        try (FileOutputStream output = new FileOutputStream(target)) {
+            return read(path, output, listener);
+        }
+    }
+
+    /**
+     * 把本地文件写入 root 侧路径
+     */
+    public TransferResult writeFromFile(File source, String path, ProgressListener listener) throws Exception {
+        try (FileInputStream input = new FileInputStream(source)) {
+            return write(path, input, source.length(), listener);
+        }
+    }
+
+    /**
+     * 读取整个文件为字节数组（适合小文件）
+     */
+    public byte[] readBytes(String path) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        read(path, output, null);
+        return output.toByteArray();
+    }
+
+    /**
+     * 用 root 侧 sha256sum 校验传输结果
+     */
+    public boolean verify(String path, TransferResult result) {
+        RootShellService.CommandResult check = rootService.executeCommandWithResult(
+                "sha256sum -- " + RootShellService.quote(path));
+        if (!check.success || check.output.isEmpty()) {
+            return false;
+        }
+        String remote = check.output.trim().split("\\s+")[0];
+        result.verified = remote.equalsIgnoreCase(result.sha256);
+        return result.verified;
+    }
+
+    /**
+     * 单次拷贝：读入大缓冲区后直接写出，同时更新摘要
+     */
+    private long copy(InputStream input, OutputStream output, long total, ProgressListener listener,
+                      TransferResult result) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long transferred = 0;
+        long nextProgress = PROGRESS_STEP;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+            digest.update(buffer, 0, read);
+            transferred += read;
+            if (listener != null && transferred >= nextProgress) {
+                listener.onProgress(transferred, total);
+                nextProgress = transferred + PROGRESS_STEP;
+            }
+        }
+        output.flush();
+        if (listener != null) {
+            listener.onProgress(transferred, total);
+        }
+        result.sha256 = toHex(digest.digest());
+        return transferred;
+    }
+
+    private long querySize(String path) {
+        RootShellService.CommandResult result = rootService.executeCommandWithResult(
+                "stat -c %s -- " + RootShellService.quote(path));
+        try {
+            return result.success ? Long.parseLong(result.output.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Process startProcess(String command) throws Exception {
+        List<String> args = new ArrayList<>();
+        for (String arg : shellCommand) {
+            args.add(arg);
+        }
+        args.add("-c");
+        args.add(command);
+        return new ProcessBuilder(args).start();
+    }
+
+    private static void finish(Process process, StderrCollector stderr, String action, String path)
+            throws Exception {
+        int exitCode = process.waitFor();
+        stderr.join();
+        if (exitCode != 0) {
+            throw new Exception(action + "失败 (" + exitCode + "): " + path + " " + stderr.getText().trim());
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 后台读取 stderr（内容很少，只用于报错）
+     */
+    private static class StderrCollector extends Thread {
+        private final InputStream input;
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+
+        StderrCollector(InputStream input) {
+            super("root-transfer-err");
+            this.input = input;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1024];
+            int read;
+            try {
+                while ((read = input.read(buffer)) != -1) {
+                    if (text.size() < 64 * 1024) {
+                        text.write(buffer, 0, read);
+                    }
+                }
+            } catch (Exception ignored) {
+            }
+        }
+
+        String getText() {
+            return new String(text.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 传输结果
+     */
+    public static class TransferResult {
+        public long bytes;
+        public long millis;
+        public String sha256;
+        public boolean verified;
+
+        /**
+         * 吞吐量（MB/s）
+         */
+        public double getMegabytesPerSecond() {
+            return millis > 0 ? bytes / 1048576.0 * 1000 / millis : 0;
+        }
+    }
+
+    /**
+     * 进度回调（在传输线程调用）
+     */
+    public interface ProgressListener {
+        void onProgress(long transferred, long total);
+    }
+}
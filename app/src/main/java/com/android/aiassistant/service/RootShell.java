@@ -0,0 +1,306 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常驻 root shell 会话
+ * 启动一次 su 进程，之后所有命令都写入它的 stdin，单次往返约 1ms，不再每条命令 fork 一个 su。
+ * 每条命令前后用唯一的结束标记分帧：stdout 的标记带上退出码，stderr 另有一个标记，
+ * 两路输出由各自的读取线程分别收集，任一管道写满都不会卡住进程。
+ * 输出按 UTF-8 文本逐行读取：换行（含 \r、\r\n）统一为 \n，非法字节被替换，并非原始字节；
+ * 需要二进制内容时在命令里先编码（如 base64）。
+ * 超时或 shell 意外退出时销毁进程，下一条命令自动重启新会话
+ */
+public class RootShell {
+
+    private static final String TAG = "RootShell";
+
+    private static final AtomicInteger SESSION_IDS = new AtomicInteger();
+
+    private final String[] shellCommand;
+    private final int sessionId = SESSION_IDS.incrementAndGet();
+    private int sequence;
+
+    private volatile Process process;
+    private OutputStream stdin;
+    private volatile Pending current;
+    private boolean started;
+
+    // 统计
+    private volatile int commandCount;
+    private volatile int failureCount;
+    private volatile int timeoutCount;
+    private volatile int restartCount;
+    private volatile long busyNanos;
+
+    /**
+     * @param shellCommand 启动 shell 的命令，通常为 su；测试时可用 /bin/sh
+     */
+    public RootShell(String... shellCommand) {
+        this.shellCommand = shellCommand;
+    }
+
+    /**
+     * 启动 shell（已在运行时不做任何事）
+     */
+    public synchronized void start() throws Exception {
+        if (isAlive()) {
+            return;
+        }
+        if (started) {
+            restartCount++;
+        }
+        started = true;
+        destroy();
+        Process shell = new ProcessBuilder(shellCommand).start();
+        startReader(shell, shell.getInputStream(), true);
+        startReader(shell, shell.getErrorStream(), false);
+        stdin = shell.getOutputStream();
+        process = shell;
+        // 记下初始目录和导出的环境变量，reset 时据此恢复和检查（OLDPWD 随 cd 变化，不参与比较）
+        stdin.write("__rsh_pwd=$PWD; unset OLDPWD; __rsh_env=$(export -p)\n".getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+    }
+
+    /**
+     * 恢复会话初始状态：切回启动时的目录，并检查导出的环境变量是否与启动时一致
+     *
+     * @return false 表示无法恢复（环境变量被修改、命令失败），调用方应丢弃该会话
+     */
+    public boolean reset(long timeoutMs) {
+        if (!isAlive()) {
+            // 未启动或已失效，下次使用时是新会话
+            return true;
+        }
+        return execute("cd \"$__rsh_pwd\" && unset OLDPWD && [ \"$(export -p)\" = \"$__rsh_env\" ]",
+                timeoutMs).success;
+    }
+
+    /**
+     * 执行一条命令，stdout 和 stderr 分开返回
+     * 命令在子 shell 的 { } 中运行，stdin 重定向到 /dev/null，不会读走后续命令
+     *
+     * @param timeoutMs 超时后销毁会话并返回失败
+     */
+    public synchronized RootShellService.CommandResult execute(String command, long timeoutMs) {
+        RootShellService.CommandResult result = new RootShellService.CommandResult();
+        result.command = command;
+        result.exitCode = -1;
+        result.output = "";
+        result.error = "";
+
+        long startNanos = System.nanoTime();
+        commandCount++;
+        Pending pending = null;
+        try {
+            start();
+            pending = new Pending(process, "__RSH_" + sessionId + "_" + (++sequence) + "__");
+            current = pending;
+
+            String body = command.trim().isEmpty() ? ":" : command;
+            String script = "{ " + body + "\n} </dev/null\n"
+                    + "__rsh_rc=$?\n"
+                    + "printf '\\n%s\\n' '" + pending.marker + "' >&2\n"
+                    + "printf '\\n%s:%d\\n' '" + pending.marker + "' \"$__rsh_rc\"\n";
+            stdin.write(script.getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+
+            if (!pending.done.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "命令超时，重启 root shell: " + command);
+                timeoutCount++;
+                destroy();
+                result.error = "命令超时 (" + timeoutMs + " ms)";
+                result.output = pending.getStdout();
+                return result;
+            }
+            if (!pending.completed) {
+                destroy();
+                result.error = "Root shell 已退出";
+                result.output = pending.getStdout();
+                return result;
+            }
+
+            result.exitCode = pending.exitCode;
+            result.output = pending.getStdout();
+            result.error = pending.getStderr();
+            result.success = result.exitCode == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroy();
+            result.error = "命令被中断";
+        } catch (Exception e) {
+            destroy();
+            result.error = String.valueOf(e.getMessage());
+        } finally {
+            current = null;
+            busyNanos += System.nanoTime() - startNanos;
+            if (result.exitCode < 0) {
+                failureCount++;
+            }
+        }
+        return result;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * 统计：命令数、会话级失败（超时、shell 退出）次数、重启次数和平均耗时
+     */
+    public String getStats() {
+        int commands = commandCount;
+        return String.format(Locale.US, "#%d %s，%d 条命令，失败 %d（超时 %d），重启 %d，平均 %.2f ms",
+                sessionId, isAlive() ? "运行中" : "未运行", commands, failureCount, timeoutCount, restartCount,
+                commands > 0 ? busyNanos / 1e6 / commands : 0.0);
+    }
+
+    public boolean isAlive() {
+        Process shell = process;
+        return shell != null && shell.isAlive();
+    }
+
+    /**
+     * 结束会话
+     */
+    public synchronized void close() {
+        if (isAlive()) {
+            try {
+                stdin.write("exit\n".getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            } catch (Exception ignored) {
+            }
+        }
+        destroy();
+    }
+
+    private synchronized void destroy() {
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+        Pending pending = current;
+        if (pending != null) {
+            pending.abort();
+        }
+    }
+
+    /**
+     * 读取线程：把输出追加到当前命令，遇到本命令的标记时结束这一路
+     */
+    private void startReader(Process owner, InputStream stream, boolean stdout) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader input = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    Pending pending = current;
+                    if (pending == null || pending.owner != owner) {
+                        // 后台进程在命令之间的残留输出
+                        continue;
+                    }
+                    int index = line.indexOf(pending.marker);
+                    if (index < 0) {
+                        pending.append(stdout, line);
+                        continue;
+                    }
+                    if (index > 0) {
+                        pending.append(stdout, line.substring(0, index));
+                    }
+                    if (stdout) {
+                        pending.finishStdout(line.substring(index + pending.marker.length()));
+                    } else {
+                        pending.finishStderr();
+                    }
+                }
+            } catch (Exception ignored) {
+                // 进程被销毁
+            }
+            // shell 退出：结束正在等待的命令（不取锁，execute 在锁内等待）
+            Pending pending = current;
+            if (pending != null && pending.owner == owner) {
+                pending.abort();
+            }
+        }, "root-shell-" + sessionId + (stdout ? "-out" : "-err"));
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 正在执行的命令
+     * 标记前总有一个额外换行，收集到的文本去掉最后一个换行即为命令的输出（按行归一化后的文本）
+     */
+    private static class Pending {
+        final Process owner;
+        final String marker;
+        final CountDownLatch done = new CountDownLatch(2);
+        private final AtomicInteger remaining = new AtomicInteger(2);
+        private final StringBuilder stdout = new StringBuilder();
+        private final StringBuilder stderr = new StringBuilder();
+        volatile int exitCode = -1;
+        volatile boolean completed;
+
+        Pending(Process owner, String marker) {
+            this.owner = owner;
+            this.marker = marker;
+        }
+
+        synchronized void append(boolean toStdout, String text) {
+            (toStdout ? stdout : stderr).append(text).append('\n');
+        }
+
+        void finishStdout(String suffix) {
+            try {
+                exitCode = Integer.parseInt(suffix.substring(suffix.indexOf(':') + 1).trim());
+            } catch (Exception e) {
+                exitCode = -1;
+            }
+            finish();
+        }
+
+        void finishStderr() {
+            finish();
+        }
+
+        private void finish() {
+            if (remaining.decrementAndGet() == 0) {
+                completed = true;
+            }
+            done.countDown();
+        }
+
+        void abort() {
+            while (done.getCount() > 0) {
+                done.countDown();
+            }
+        }
+
+        synchronized String getStdout() {
+            return trimLastNewline(stdout);
+        }
+
+        synchronized String getStderr() {
+            return trimLastNewline(stderr);
+        }
+
+        private static String trimLastNewline(StringBuilder text) {
+            int length = text.length();
+            if (length > 0 && text.charAt(length - 1) == '\n') {
+                length--;
+            }
+            return text.substring(0, length);
+        }
+    }
+}
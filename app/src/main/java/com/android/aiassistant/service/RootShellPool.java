@@ -0,0 +1,245 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Root shell 会话池
+ * 维护多个常驻 root shell，彼此独立的命令分发到空闲会话并行执行；
+ * 需要共享状态的一组命令（如先 cd 再执行）通过 withSession 固定在同一个会话上。
+ * 会话按需启动，归还时发现已失效（超时被销毁、shell 退出）就换成新会话
+ */
+public class RootShellPool {
+
+    private static final String TAG = "RootShellPool";
+    private static final long RESET_TIMEOUT_MS = 5000;
+
+    private final String[] shellCommand;
+
+    // 全部会话（含使用中的），idle 为空闲会话，后进先出以保持常用会话热
+    private final List<RootShell> sessions = new ArrayList<>();
+    private final ArrayDeque<RootShell> idle = new ArrayDeque<>();
+    private int poolSize;
+    private int replacedCount;
+
+    public RootShellPool(int poolSize, String... shellCommand) {
+        this.poolSize = Math.max(1, poolSize);
+        this.shellCommand = shellCommand;
+    }
+
+    /**
+     * 预先启动一个会话
+     */
+    public void start() throws Exception {
+        RootShell shell = acquire();
+        try {
+            shell.start();
+        } finally {
+            release(shell);
+        }
+    }
+
+    /**
+     * 在任一空闲会话上执行命令，没有空闲会话时等待
+     */
+    public RootShellService.CommandResult execute(String command, long timeoutMs) {
+        RootShell shell;
+        try {
+            shell = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            RootShellService.CommandResult result = new RootShellService.CommandResult();
+            result.command = command;
+            result.exitCode = -1;
+            result.output = "";
+            result.error = "命令被中断";
+            return result;
+        }
+        try {
+            return shell.execute(command, timeoutMs);
+        } finally {
+            release(shell);
+        }
+    }
+
+    /**
+     * 把互相独立的命令分发到多个会话并行执行，按输入顺序返回结果
+     */
+    public List<RootShellService.CommandResult> executeAll(List<String> commands, long timeoutMs) throws Exception {
+        int count = commands.size();
+        RootShellService.CommandResult[] results = new RootShellService.CommandResult[count];
+        int parallel = Math.max(1, Math.min(getPoolSize(), count));
+        AtomicInteger next = new AtomicInteger();
+
+        // 每个工作线程占用一个会话，依次领取下一条命令
+        ExecutorService workers = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < parallel; i++) {
+                futures.add(workers.submit(() -> {
+                    withSession(shell -> {
+                        int index;
+                        while ((index = next.getAndIncrement()) < count) {
+                            results[index] = shell.execute(commands.get(index), timeoutMs);
+                        }
+                        return null;
+                    });
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        List<RootShellService.CommandResult> list = new ArrayList<>(count);
+        for (RootShellService.CommandResult result : results) {
+            list.add(result);
+        }
+        return list;
+    }
+
+    /**
+     * 独占一个会话执行一组命令，期间 cd、export 等状态保留在该会话中
+     * 归还前切回初始目录；导出的环境变量被改动过的会话直接丢弃，不会带给后续命令
+     */
+    public <T> T withSession(SessionTask<T> task) throws Exception {
+        RootShell shell = acquire();
+        try {
+            return task.run(shell);
+        } finally {
+            release(shell, shell.reset(RESET_TIMEOUT_MS));
+        }
+    }
+
+    /**
+     * 调整池大小：扩大时新会话按需启动，缩小时多余的会话在空闲后关闭
+     */
+    public void setPoolSize(int poolSize) {
+        List<RootShell> removed = new ArrayList<>();
+        synchronized (this) {
+            this.poolSize = Math.max(1, poolSize);
+            while (sessions.size() > this.poolSize && !idle.isEmpty()) {
+                RootShell shell = idle.pollLast();
+                sessions.remove(shell);
+                removed.add(shell);
+            }
+            notifyAll();
+        }
+        for (RootShell shell : removed) {
+            shell.close();
+        }
+    }
+
+    public synchronized int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * 池状态和各会话统计
+     */
+    public String getStats() {
+        List<RootShell> snapshot;
+        StringBuilder result = new StringBuilder();
+        synchronized (this) {
+            snapshot = new ArrayList<>(sessions);
+            result.append("会话池 ").append(sessions.size()).append("/").append(poolSize)
+                    .append("，空闲 ").append(idle.size())
+                    .append("，已替换 ").append(replacedCount).append("\n");
+        }
+        for (RootShell shell : snapshot) {
+            result.append("  ").append(shell.getStats()).append("\n");
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * 关闭全部会话（之后再执行命令会重新启动会话）
+     */
+    public void close() {
+        List<RootShell> all;
+        synchronized (this) {
+            all = new ArrayList<>(sessions);
+            sessions.clear();
+            idle.clear();
+            notifyAll();
+        }
+        for (RootShell shell : all) {
+            shell.close();
+        }
+    }
+
+    private synchronized RootShell acquire() throws InterruptedException {
+        while (true) {
+            RootShell shell = idle.pollFirst();
+            if (shell != null) {
+                return shell;
+            }
+            if (sessions.size() < poolSize) {
+                shell = new RootShell(shellCommand);
+                sessions.add(shell);
+                return shell;
+            }
+            wait();
+        }
+    }
+
+    private void release(RootShell shell) {
+        release(shell, true);
+    }
+
+    /**
+     * @param reusable false 表示会话状态已被改动，关闭后由新会话替换
+     */
+    private void release(RootShell shell, boolean reusable) {
+        boolean discard;
+        synchronized (this) {
+            if (!sessions.contains(shell)) {
+                // 池已关闭或缩小
+                discard = true;
+            } else if (!reusable) {
+                Log.i(TAG, "会话 #" + shell.getSessionId() + " 状态无法恢复，替换");
+                sessions.remove(shell);
+                replacedCount++;
+                discard = true;
+            } else if (shell.getCommandCount() > 0 && !shell.isAlive()) {
+                // 会话失效，换成新会话（下次 acquire 时创建）
+                Log.w(TAG, "会话 #" + shell.getSessionId() + " 已失效，替换");
+                sessions.remove(shell);
+                replacedCount++;
+                discard = true;
+            } else if (sessions.size() > poolSize) {
+                sessions.remove(shell);
+                discard = true;
+            } else {
+                idle.addFirst(shell);
+                discard = false;
+            }
+            notifyAll();
+        }
+        if (discard) {
+            shell.close();
+        }
+    }
+
+    /**
+     * 在固定会话上执行的任务
+     */
+    public interface SessionTask<T> {
+        T run(RootShell shell) throws Exception;
+    }
+}
@@ -1,70 +1,79 @@
 package com.android.aiassistant.service;
 
 import android.content.Context;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
+import android.system.Os;
+import android.system.OsConstants;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Root Shell 服务
- * 提供执行 root 命令的能力
+ * 提供执行 root 命令的能力，命令在常驻 root shell 会话池中执行
  */
 public class RootShellService {
 
+    // 命令默认超时
+    private static final long DEFAULT_TIMEOUT_MS = 30000;
+    // 默认会话数
+    private static final int DEFAULT_POOL_SIZE = 3;
+    // 文件元数据缓存默认有效期
+    private static final long DEFAULT_STAT_TTL_MS = 2000;
+
     private Context context;
-    private Process shellProcess;
-    private DataOutputStream outputStream;
-    private BufferedReader inputStream;
-    private BufferedReader errorStream;
+    private final String[] shellCommand;
+    private final RootShellPool pool;
+    private final RootFileTransfer fileTransfer;
+    private final RootStatCache statCache = new RootStatCache(DEFAULT_STAT_TTL_MS);
+    private final ProcessMonitor processMonitor;
+    private volatile long commandTimeoutMs = DEFAULT_TIMEOUT_MS;
 
     public RootShellService(Context context) {
+        this(context, "su");
+    }
+
+    /**
+     * @param shellCommand 启动 shell 的命令，测试时可用 /bin/sh 代替 su
+     */
+    public RootShellService(Context context, String... shellCommand) {
         this.context = context;
+        this.shellCommand = shellCommand;
+        this.pool = new RootShellPool(DEFAULT_POOL_SIZE, shellCommand);
+        this.fileTransfer = new RootFileTransfer(shellCommand, this);
+        this.processMonitor = new ProcessMonitor(this);
     }
 
     /**
      * 初始化 root shell
      */
     public void initialize() {
+        processMonitor.setPageSize(Os.sysconf(OsConstants._SC_PAGESIZE));
         try {
-            shellProcess = Runtime.getRuntime().exec("su");
-            outputStream = new DataOutputStream(shellProcess.getOutputStream());
-            inputStream = new BufferedReader(new InputStreamReader(shellProcess.getInputStream()));
-            errorStream = new BufferedReader(new InputStreamReader(shellProcess.getErrorStream()));
+            pool.start();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * 执行 root 命令
+     * 执行 root 命令，返回 stdout，stderr 逐行加 [ERROR] 前缀附在后面
      */
     public String executeCommand(String command) throws Exception {
-        if (outputStream == null) {
-            throw new Exception("Root shell 未初始化");
+        CommandResult commandResult = executeCommandWithResult(command);
+        if (commandResult.exitCode < 0) {
+            throw new Exception("执行命令失败: " + commandResult.error);
         }
 
-        StringBuilder result = new StringBuilder();
-
-        try {
-            // 发送命令
-            outputStream.writeBytes(command + "\n");
-            outputStream.flush();
-
-            // 读取输出
-            String line;
-            while ((line = inputStream.readLine()) != null) {
-                result.append(line).append("\n");
-            }
-
-            // 读取错误
-            while ((line = errorStream.readLine()) != null) {
+        StringBuilder result = new StringBuilder(commandResult.output);
+        if (result.length() > 0 && result.charAt(result.length() - 1) != '\n') {
+            result.append("\n");
+        }
+        if (!commandResult.error.isEmpty()) {
+            for (String line : commandResult.error.split("\n")) {
                 result.append("[ERROR] ").append(line).append("\n");
             }
-
-        } catch (Exception e) {
-            throw new Exception("执行命令失败: " + e.getMessage());
         }
-
         return result.toString();
     }
 
@@ -72,63 +81,156 @@ public class RootShellService {
      * 执行命令并获取返回值
      */
     public CommandResult executeCommandWithResult(String command) {
-        CommandResult result = new CommandResult();
-        result.command = command;
+        return executeCommandWithResult(command, commandTimeoutMs);
+    }
 
-        try {
-            Process process = Runtime.getRuntime().exec(new String[]{"su", "-c", command});
+    /**
+     * 执行命令并获取返回值，超时后重启 shell 会话
+     */
+    public CommandResult executeCommandWithResult(String command, long timeoutMs) {
+        return pool.execute(command, timeoutMs);
+    }
 
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()));
-            BufferedReader errorReader = new BufferedReader(
-                    new InputStreamReader(process.getErrorStream()));
+    /**
+     * 流式执行命令（logcat、find 等输出量大或不会结束的命令），输出经有界缓冲逐块或逐行交给监听器，
+     * 不占用会话池，可随时取消
+     */
+    public RootCommandStream streamCommand(String command, boolean lineMode,
+                                           RootCommandStream.StreamListener listener) throws Exception {
+        return RootCommandStream.start(shellCommand, pool, command, lineMode, listener);
+    }
 
-            StringBuilder output = new StringBuilder();
-            StringBuilder error = new StringBuilder();
+    /**
+     * 并行执行互相独立的命令，按输入顺序返回结果
+     */
+    public List<CommandResult> executeParallel(List<String> commands) throws Exception {
+        return pool.executeAll(commands, commandTimeoutMs);
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
+    /**
+     * 在同一个会话上执行一组相关命令（如先 cd 再执行）
+     */
+    public <T> T withSession(RootShellPool.SessionTask<T> task) throws Exception {
+        return pool.withSession(task);
+    }
 
-            while ((line = errorReader.readLine()) != null) {
-                error.append(line).append("\n");
+    /**
+     * 批量执行文件操作（存在性、stat、chmod、chown、rm、mkdir），在同一个会话中按块流水执行
+     */
+    public List<RootBatch.OpResult> executeBatch(List<RootBatch.Op> ops) throws Exception {
+        try {
+            return pool.withSession(shell -> RootBatch.run(shell, ops, commandTimeoutMs));
+        } finally {
+            // 修改类操作执行后使相关缓存失效
+            for (RootBatch.Op op : ops) {
+                if (op.type == RootBatch.Type.CHMOD || op.type == RootBatch.Type.CHOWN
+                        || op.type == RootBatch.Type.RM || op.type == RootBatch.Type.MKDIR) {
+                    statCache.invalidate(op.path);
+                }
             }
+        }
+    }
 
-            result.exitCode = process.waitFor();
-            result.output = output.toString();
-            result.error = error.toString();
-            result.success = result.exitCode == 0;
+    /**
+     * 获取文件元数据，优先使用缓存；不存在时返回 null
+     * 与 [ -f ]、[ -d ] 一致，符号链接按目标文件判断
+     */
+    public RootFileStat stat(String path) {
+        RootStatCache.Lookup cached = statCache.getStat(path);
+        if (cached != null) {
+            return cached.stat;
+        }
+        long generation = statCache.getGeneration();
+        CommandResult result = executeCommandWithResult("stat -L -c " + quote(RootFileStat.STAT_FORMAT)
+                + " -- " + quote(path));
+        if (result.exitCode < 0) {
+            // 会话级失败（超时等）不缓存
+            return null;
+        }
+        RootFileStat stat = result.success ? RootFileStat.parse(path, result.output) : null;
+        statCache.putStat(path, stat, generation);
+        return stat;
+    }
 
-        } catch (Exception e) {
-            result.success = false;
-            result.error = e.getMessage();
+    /**
+     * 一次往返预取多个路径的元数据到缓存
+     */
+    public void prefetchStats(List<String> paths) throws Exception {
+        List<RootBatch.Op> ops = new ArrayList<>();
+        for (String path : paths) {
+            if (statCache.getStat(path) == null) {
+                ops.add(RootBatch.Op.stat(path));
+            }
+        }
+        if (ops.isEmpty()) {
+            return;
+        }
+        long generation = statCache.getGeneration();
+        for (RootBatch.OpResult result : executeBatch(ops)) {
+            if (result.exitCode >= 0) {
+                statCache.putStat(result.op.path, result.stat, generation);
+            }
         }
+    }
+
+    /**
+     * 文件元数据缓存（TTL、命中统计、手动失效）
+     * 通过 executeCommand 等直接执行的修改命令不会自动失效，需要时调用 invalidate
+     */
+    public RootStatCache getStatCache() {
+        return statCache;
+    }
 
-        return result;
+    /**
+     * 设置会话池大小
+     */
+    public void setPoolSize(int poolSize) {
+        pool.setPoolSize(poolSize);
+    }
+
+    /**
+     * 会话池状态和各会话统计
+     */
+    public String getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * 设置命令默认超时
+     */
+    public void setCommandTimeout(long timeoutMs) {
+        this.commandTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * 单引号转义，用于拼接 shell 命令参数
+     */
+    public static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
     }
 
     /**
      * 检查文件是否存在
      */
     public boolean fileExists(String path) {
-        CommandResult result = executeCommandWithResult("[ -f '" + path + "' ] && echo 'exists'");
-        return result.success && result.output.contains("exists");
+        RootFileStat stat = stat(path);
+        return stat != null && stat.isFile();
     }
 
     /**
      * 检查目录是否存在
      */
     public boolean directoryExists(String path) {
-        CommandResult result = executeCommandWithResult("[ -d '" + path + "' ] && echo 'exists'");
-        return result.success && result.output.contains("exists");
+        RootFileStat stat = stat(path);
+        return stat != null && stat.isDirectory();
     }
 
     /**
      * 创建目录
      */
     public boolean createDirectory(String path) {
-        CommandResult result = executeCommandWithResult("mkdir -p '" + path + "'");
+        CommandResult result = executeCommandWithResult("mkdir -p " + quote(path));
+        statCache.invalidate(path);
         return result.success;
     }
 
@@ -136,7 +238,8 @@ public class RootShellService {
      * 删除文件或目录
      */
     public boolean delete(String path) {
-        CommandResult result = executeCommandWithResult("rm -rf '" + path + "'");
+        CommandResult result = executeCommandWithResult("rm -rf " + quote(path));
+        statCache.invalidate(path);
         return result.success;
     }
 
@@ -144,7 +247,8 @@ public class RootShellService {
      * 复制文件
      */
     public boolean copy(String source, String target) {
-        CommandResult result = executeCommandWithResult("cp -r '" + source + "' '" + target + "'");
+        CommandResult result = executeCommandWithResult("cp -r " + quote(source) + " " + quote(target));
+        statCache.invalidate(target);
         return result.success;
     }
 
@@ -152,7 +256,9 @@ public class RootShellService {
      * 移动文件
      */
     public boolean move(String source, String target) {
-        CommandResult result = executeCommandWithResult("mv '" + source + "' '" + target + "'");
+        CommandResult result = executeCommandWithResult("mv " + quote(source) + " " + quote(target));
+        statCache.invalidate(source);
+        statCache.invalidate(target);
         return result.success;
     }
 
@@ -160,27 +266,47 @@ public class RootShellService {
      * 读取文件内容
      */
     public String readFile(String path) {
-        CommandResult result = executeCommandWithResult("cat '" + path + "'");
-        if (result.success) {
-            return result.output;
+        try {
+            return new String(fileTransfer.readBytes(path), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return null;
         }
-        return null;
     }
 
     /**
      * 写入文件内容
      */
     public boolean writeFile(String path, String content) {
-        CommandResult result = executeCommandWithResult("echo '" + content + "' > '" + path + "'");
-        return result.success;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try {
+            fileTransfer.write(path, new ByteArrayInputStream(bytes), bytes.length, null);
+            return true;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            statCache.invalidate(path);
+        }
+    }
+
+    /**
+     * 二进制安全的文件传输通道（大文件、流式读写）
+     */
+    public RootFileTransfer getFileTransfer() {
+        return fileTransfer;
     }
 
     /**
      * 列出目录内容
      */
     public String listDirectory(String path) {
-        CommandResult result = executeCommandWithResult("ls -la '" + path + "'");
+        String cached = statCache.getListing(path);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = statCache.getGeneration();
+        CommandResult result = executeCommandWithResult("ls -la " + quote(path));
         if (result.success) {
+            statCache.putListing(path, result.output, generation);
             return result.output;
         }
         return null;
@@ -190,8 +316,14 @@ public class RootShellService {
      * 获取文件权限
      */
     public String getFilePermissions(String path) {
-        CommandResult result = executeCommandWithResult("ls -ld '" + path + "'");
+        String cached = statCache.getPermissions(path);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = statCache.getGeneration();
+        CommandResult result = executeCommandWithResult("ls -ld " + quote(path));
         if (result.success) {
+            statCache.putPermissions(path, result.output, generation);
             return result.output;
         }
         return null;
@@ -201,7 +333,8 @@ public class RootShellService {
      * 修改文件权限
      */
     public boolean chmod(String path, String permissions) {
-        CommandResult result = executeCommandWithResult("chmod " + permissions + " '" + path + "'");
+        CommandResult result = executeCommandWithResult("chmod " + permissions + " " + quote(path));
+        statCache.invalidate(path);
         return result.success;
     }
 
@@ -209,7 +342,8 @@ public class RootShellService {
      * 修改文件所有者
      */
     public boolean chown(String path, String owner) {
-        CommandResult result = executeCommandWithResult("chown " + owner + " '" + path + "'");
+        CommandResult result = executeCommandWithResult("chown " + owner + " " + quote(path));
+        statCache.invalidate(path);
         return result.success;
     }
 
@@ -221,8 +355,9 @@ public class RootShellService {
         if (options != null && !options.isEmpty()) {
             cmd += " -o " + options;
         }
-        cmd += " '" + source + "' '" + target + "'";
+        cmd += " " + quote(source) + " " + quote(target);
         CommandResult result = executeCommandWithResult(cmd);
+        statCache.invalidate(target);
         return result.success;
     }
 
@@ -230,19 +365,28 @@ public class RootShellService {
      * 卸载文件系统
      */
     public boolean umount(String path) {
-        CommandResult result = executeCommandWithResult("umount '" + path + "'");
+        CommandResult result = executeCommandWithResult("umount " + quote(path));
+        statCache.invalidate(path);
         return result.success;
     }
 
     /**
-     * 获取进程列表
+     * 获取进程列表（按 pid 排序的表格）
      */
     public String getProcessList() {
-        CommandResult result = executeCommandWithResult("ps -A");
-        if (result.success) {
-            return result.output;
+        try {
+            processMonitor.sample();
+            return ProcessMonitor.format(processMonitor.getProcesses());
+        } catch (Exception e) {
+            return null;
         }
-        return null;
+    }
+
+    /**
+     * 基于 /proc 的进程监视器（结构化进程信息、CPU/内存排行、按名称结束进程）
+     */
+    public ProcessMonitor getProcessMonitor() {
+        return processMonitor;
     }
 
     /**
@@ -261,11 +405,18 @@ public class RootShellService {
         return result.success;
     }
 
+    /**
+     * 按名称杀死进程，返回结束的进程数
+     */
+    public int killProcessByName(String name, boolean force) throws Exception {
+        return processMonitor.killByName(name, force).size();
+    }
+
     /**
      * 安装 APK
      */
     public boolean installApk(String apkPath) {
-        CommandResult result = executeCommandWithResult("pm install -r '" + apkPath + "'");
+        CommandResult result = executeCommandWithResult("pm install -r " + quote(apkPath));
         return result.success;
     }
 
@@ -281,24 +432,8 @@ public class RootShellService {
      * 清理资源
      */
     public void cleanup() {
-        try {
-            if (outputStream != null) {
-                outputStream.writeBytes("exit\n");
-                outputStream.flush();
-                outputStream.close();
-            }
-            if (inputStream != null) {
-                inputStream.close();
-            }
-            if (errorStream != null) {
-                errorStream.close();
-            }
-            if (shellProcess != null) {
-                shellProcess.destroy();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        processMonitor.stop();
+        pool.close();
     }
 
     /**
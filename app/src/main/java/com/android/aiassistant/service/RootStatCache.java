@@ -0,0 +1,215 @@
+package com.android.aiassistant.service;
+
+import java.util.TreeMap;
+
+/**
+ * root 侧文件元数据缓存
+ * 按路径缓存解析后的 stat 结果（包括“不存在”）以及 ls 输出，在 TTL 内直接返回，不再走 root 往返。
+ * 修改类操作调用 invalidate 使该路径、其下整个子树以及父目录的缓存失效；
+ * 路径按字典序保存在 TreeMap 中，子树失效只需一次范围删除。
+ * 每次失效递增代数，写入时带上执行命令前读取的代数，期间发生过失效的结果直接丢弃，
+ * 避免与修改操作并发的查询把过期结果写回缓存
+ */
+public class RootStatCache {
+
+    // 条目数上限，超出时先清理过期条目，仍超出则全部清空
+    private static final int MAX_ENTRIES = 4096;
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private long ttlMs;
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+
+    public RootStatCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * 读取 stat 缓存，返回 null 表示未命中；命中时 found 为 false 表示路径不存在
+     */
+    public synchronized Lookup getStat(String path) {
+        Entry entry = getEntry(path);
+        if (entry == null || !isFresh(entry.statTime)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return new Lookup(entry.stat);
+    }
+
+    /**
+     * 当前代数，查询命令执行前读取，写入缓存时传回
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 写入 stat 结果，stat 为 null 表示路径不存在
+     */
+    public synchronized void putStat(String path, RootFileStat stat, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        Entry entry = getOrCreate(path);
+        entry.stat = stat;
+        entry.statTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 读取缓存的目录列表（ls -la 输出），未命中返回 null
+     */
+    public synchronized String getListing(String path) {
+        Entry entry = getEntry(path);
+        if (entry == null || !isFresh(entry.listingTime)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.listing;
+    }
+
+    public synchronized void putListing(String path, String listing, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        Entry entry = getOrCreate(path);
+        entry.listing = listing;
+        entry.listingTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 读取缓存的权限信息（ls -ld 输出），未命中返回 null
+     */
+    public synchronized String getPermissions(String path) {
+        Entry entry = getEntry(path);
+        if (entry == null || !isFresh(entry.permissionsTime)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.permissions;
+    }
+
+    public synchronized void putPermissions(String path, String permissions, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        Entry entry = getOrCreate(path);
+        entry.permissions = permissions;
+        entry.permissionsTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 使路径、其子树以及父目录（目录列表和修改时间会变）的缓存失效
+     */
+    public synchronized void invalidate(String path) {
+        generation++;
+        String key = normalize(path);
+        entries.remove(key);
+        String prefix = key.equals("/") ? "/" : key + "/";
+        // '/' 的下一个字符是 '0'，范围 [prefix, key + '0') 正好是整个子树
+        String end = key.equals("/") ? "0" : key + "0";
+        entries.subMap(prefix, end).clear();
+        int slash = key.lastIndexOf('/');
+        if (slash >= 0) {
+            entries.remove(slash == 0 ? "/" : key.substring(0, slash));
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * 设置缓存有效期（0 表示不缓存）
+     */
+    public synchronized void setTtl(long ttlMs) {
+        this.ttlMs = ttlMs;
+        if (ttlMs <= 0) {
+            entries.clear();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized String getStats() {
+        long total = hitCount + missCount;
+        return String.format("元数据缓存 %d 条，TTL %d ms，命中 %d / %d (%.1f%%)", entries.size(), ttlMs,
+                hitCount, total, total > 0 ? hitCount * 100.0 / total : 0.0);
+    }
+
+    private Entry getEntry(String path) {
+        if (ttlMs <= 0) {
+            return null;
+        }
+        return entries.get(normalize(path));
+    }
+
+    private Entry getOrCreate(String path) {
+        String key = normalize(path);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= MAX_ENTRIES) {
+                evictExpired();
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void evictExpired() {
+        entries.values().removeIf(entry -> !isFresh(entry.statTime) && !isFresh(entry.listingTime)
+                && !isFresh(entry.permissionsTime));
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+    }
+
+    private boolean isFresh(long time) {
+        return time > 0 && System.currentTimeMillis() - time < ttlMs;
+    }
+
+    /**
+     * 去掉末尾的 / 和重复的 /，保证同一路径只对应一个键
+     */
+    static String normalize(String path) {
+        String normalized = path.replaceAll("/+", "/");
+        if (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static class Entry {
+        RootFileStat stat;
+        long statTime;
+        String listing;
+        long listingTime;
+        String permissions;
+        long permissionsTime;
+    }
+
+    /**
+     * stat 缓存命中结果
+     */
+    public static class Lookup {
+        public final RootFileStat stat;
+        public final boolean found;
+
+        Lookup(RootFileStat stat) {
+            this.stat = stat;
+            this.found = stat != null;
+        }
+    }
+}
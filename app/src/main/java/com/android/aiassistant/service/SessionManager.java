@@ -0,0 +1,272 @@
+package com.android.aiassistant.service;
+
+import android.util.Log;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 推理会话管理器
+ * 单次进程模式下每个会话对应一个 llama.cpp prompt cache 文件；
+ * server 模式下会话占用一个 slot，被挤出时把 slot 状态存盘，再次使用时恢复。
+ * 常驻 slot（内存）和缓存文件（磁盘）都按 LRU 淘汰。
+ */
+public class SessionManager {
+
+    private static final String TAG = "SessionManager";
+
+    private final File cacheDirectory;
+
+    // 按访问顺序排列，最久未使用的在最前
+    private final LinkedHashMap<String, InferenceSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, InferenceSession[]> slotOwners = new LinkedHashMap<>();
+
+    // 预算
+    private int slotsPerModel = 2;
+    // 批量推理等无会话请求专用的 slot，编号排在会话 slot 之后，不会被会话占用
+    private int scratchSlotsPerModel = 2;
+    private int nextScratchSlot;
+    private int maxSessions = 32;
+    private long maxDiskBytes = 512L * 1024 * 1024;
+
+    public SessionManager(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        if (!cacheDirectory.exists()) {
+            cacheDirectory.mkdirs();
+        }
+        // 上次运行留下的缓存文件已无对应会话
+        File[] stale = cacheDirectory.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 创建新会话
+     */
+    public synchronized InferenceSession createSession(String modelPath) {
+        InferenceSession session = new InferenceSession(UUID.randomUUID().toString(), modelPath);
+        sessions.put(session.getId(), session);
+        while (sessions.size() > maxSessions) {
+            Iterator<InferenceSession> eldest = sessions.values().iterator();
+            InferenceSession evicted = eldest.next();
+            eldest.remove();
+            dropState(evicted);
+        }
+        return session;
+    }
+
+    /**
+     * 获取会话
+     */
+    public synchronized InferenceSession getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * 关闭会话并删除缓存
+     */
+    public synchronized void closeSession(String id) {
+        InferenceSession session = sessions.remove(id);
+        if (session != null) {
+            dropState(session);
+        }
+    }
+
+    /**
+     * 标记会话被使用
+     */
+    synchronized void touch(InferenceSession session) {
+        session.lastUsed = System.currentTimeMillis();
+        sessions.get(session.getId());
+    }
+
+    /**
+     * 单次进程模式下的 prompt cache 文件
+     */
+    File getPromptCacheFile(InferenceSession session) {
+        return new File(cacheDirectory, session.getId() + ".bin");
+    }
+
+    /**
+     * server slot 存盘文件名（相对于 --slot-save-path）
+     */
+    String getSlotFileName(InferenceSession session) {
+        return session.getId() + ".slot";
+    }
+
+    /**
+     * 为会话分配 server slot；slot 已满时把最久未使用的会话存盘后让出
+     */
+    synchronized int acquireSlot(InferenceSession session, LlamaServerBackend backend) throws Exception {
+        touch(session);
+        if (session.slotId >= 0) {
+            return session.slotId;
+        }
+
+        InferenceSession[] owners = slotOwners.get(session.getModelPath());
+        if (owners == null) {
+            owners = new InferenceSession[slotsPerModel];
+            slotOwners.put(session.getModelPath(), owners);
+        }
+
+        int slot = -1;
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] == null) {
+                slot = i;
+                break;
+            }
+            if (slot < 0 || owners[i].lastUsed < owners[slot].lastUsed) {
+                slot = i;
+            }
+        }
+
+        InferenceSession victim = owners[slot];
+        if (victim != null) {
+            try {
+                backend.saveSlot(slot, getSlotFileName(victim));
+                victim.slotSaved = true;
+            } catch (Exception e) {
+                Log.w(TAG, "slot 存盘失败，会话将重新评估: " + e.getMessage());
+                victim.slotSaved = false;
+            }
+            victim.slotId = -1;
+        }
+
+        owners[slot] = session;
+        session.slotId = slot;
+        if (session.slotSaved) {
+            try {
+                backend.restoreSlot(slot, getSlotFileName(session));
+            } catch (Exception e) {
+                Log.w(TAG, "slot 恢复失败，会话将重新评估: " + e.getMessage());
+            }
+        } else if (victim != null) {
+            backend.eraseSlot(slot);
+        }
+
+        trimDisk();
+        return slot;
+    }
+
+    /**
+     * 模型的 server 已关闭，slot 中的状态全部失效
+     */
+    synchronized void releaseModel(String modelPath) {
+        slotOwners.remove(modelPath);
+        for (InferenceSession session : sessions.values()) {
+            if (modelPath.equals(session.getModelPath())) {
+                session.slotId = -1;
+                session.slotSaved = false;
+                new File(cacheDirectory, getSlotFileName(session)).delete();
+            }
+        }
+    }
+
+    /**
+     * 磁盘缓存超出预算时，从最久未使用的会话开始删除缓存文件
+     */
+    synchronized void trimDisk() {
+        long total = getDiskUsage();
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        List<InferenceSession> ordered = new ArrayList<>(sessions.values());
+        for (InferenceSession session : ordered) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            if (session.slotId >= 0) {
+                continue;
+            }
+            total -= deleteFiles(session);
+            session.slotSaved = false;
+        }
+    }
+
+    /**
+     * 缓存目录当前占用
+     */
+    public long getDiskUsage() {
+        long total = 0;
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private void dropState(InferenceSession session) {
+        InferenceSession[] owners = slotOwners.get(session.getModelPath());
+        if (owners != null && session.slotId >= 0 && owners[session.slotId] == session) {
+            owners[session.slotId] = null;
+        }
+        session.slotId = -1;
+        session.slotSaved = false;
+        deleteFiles(session);
+    }
+
+    private long deleteFiles(InferenceSession session) {
+        long freed = 0;
+        File[] files = {getPromptCacheFile(session), new File(cacheDirectory, getSlotFileName(session))};
+        for (File file : files) {
+            long length = file.length();
+            if (file.delete()) {
+                freed += length;
+            }
+        }
+        return freed;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public int getSlotsPerModel() {
+        return slotsPerModel;
+    }
+
+    /**
+     * server 启动时的总 slot 数：会话 slot + 无会话请求专用 slot
+     */
+    public synchronized int getServerSlots() {
+        return slotsPerModel + scratchSlotsPerModel;
+    }
+
+    /**
+     * 无会话请求专用的 slot 编号，请求之间不保留 KV 缓存，也不会挤掉会话的 slot
+     */
+    public synchronized List<Integer> getScratchSlots() {
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < scratchSlotsPerModel; i++) {
+            slots.add(slotsPerModel + i);
+        }
+        return slots;
+    }
+
+    /**
+     * 单个无会话请求使用的 slot，在 scratch slot 间轮换（slot 忙时 server 会排队等待）
+     */
+    public synchronized int nextScratchSlot() {
+        nextScratchSlot = (nextScratchSlot + 1) % scratchSlotsPerModel;
+        return slotsPerModel + nextScratchSlot;
+    }
+
+    /**
+     * 设置预算（slot 数只对之后启动的 server 生效）
+     */
+    public synchronized void setBudget(int slotsPerModel, int maxSessions, long maxDiskBytes) {
+        this.slotsPerModel = slotsPerModel;
+        this.maxSessions = maxSessions;
+        this.maxDiskBytes = maxDiskBytes;
+        trimDisk();
+    }
+}
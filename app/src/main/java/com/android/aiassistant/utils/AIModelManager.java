@@ -1,17 +1,29 @@
 package com.android.aiassistant.utils;
 
 import android.content.Context;
+import android.util.Log;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * AI 模型管理器
  */
 public class AIModelManager {
 
+    // 文件名中的参数规模，如 7b、0.5b、135m
+    private static final Pattern PARAM_SIZE = Pattern.compile("(\\d+(?:\\.\\d+)?)[bm](?![a-z])");
+
+    // 草稿模型至多为主模型大小的该比例，才有加速意义
+    private static final double MAX_DRAFT_RATIO = 0.3;
+
+    // llama.cpp 允许草稿模型与主模型词表大小有少量差异（补齐的特殊 token）
+    private static final int MAX_VOCAB_DIFFERENCE = 128;
+
     private Context context;
     private File modelsDirectory;
+    private ModelCatalog catalog;
 
     public AIModelManager(Context context) {
         this.context = context;
@@ -19,6 +31,7 @@ public class AIModelManager {
         if (!modelsDirectory.exists()) {
             modelsDirectory.mkdirs();
         }
+        this.catalog = ModelCatalog.get(modelsDirectory, new File(context.getFilesDir(), "model-catalog.json"));
     }
 
     /**
@@ -29,21 +42,17 @@ public class AIModelManager {
     }
 
     /**
-     * 获取所有模型
+     * 获取所有模型（查索引，只重新解析有变化的文件）
      */
     public List<ModelInfo> getAvailableModels() {
-        List<ModelInfo> models = new ArrayList<>();
-        File[] files = modelsDirectory.listFiles();
-
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().endsWith(".gguf")) {
-                    models.add(new ModelInfo(file));
-                }
-            }
-        }
+        return catalog.refresh();
+    }
 
-        return models;
+    /**
+     * 获取模型目录索引
+     */
+    public ModelCatalog getCatalog() {
+        return catalog;
     }
 
     /**
@@ -60,6 +69,7 @@ public class AIModelManager {
     public boolean deleteModel(String modelName) {
         File modelFile = new File(modelsDirectory, modelName);
         if (modelFile.exists()) {
+            catalog.remove(modelFile.getAbsolutePath());
             return modelFile.delete();
         }
         return false;
@@ -71,11 +81,60 @@ public class AIModelManager {
     public ModelInfo getModelInfo(String modelName) {
         File modelFile = new File(modelsDirectory, modelName);
         if (modelFile.exists()) {
-            return new ModelInfo(modelFile);
+            return catalog.getByPath(modelFile.getAbsolutePath());
         }
         return null;
     }
 
+    /**
+     * 按完整路径获取模型信息
+     */
+    public ModelInfo getModelInfoByPath(String modelPath) {
+        return catalog.getByPath(modelPath);
+    }
+
+    /**
+     * 为投机解码挑选草稿模型：词表兼容且明显更小的模型中最小的一个
+     */
+    public ModelInfo findDraftModel(String modelPath) {
+        ModelInfo main = catalog.getByPath(modelPath);
+        ModelInfo best = null;
+        for (ModelInfo candidate : getAvailableModels()) {
+            if (candidate.path.equals(main.path) || !isDraftCompatible(main, candidate)) {
+                continue;
+            }
+            if (candidate.size > main.size * MAX_DRAFT_RATIO) {
+                continue;
+            }
+            if (best == null || candidate.size < best.size) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 有文件头信息时按架构和词表判断，否则按文件名中的系列判断
+     */
+    private static boolean isDraftCompatible(ModelInfo main, ModelInfo draft) {
+        if (main.vocabSize > 0 && draft.vocabSize > 0) {
+            return String.valueOf(main.architecture).equals(String.valueOf(draft.architecture))
+                    && String.valueOf(main.tokenizerModel).equals(String.valueOf(draft.tokenizerModel))
+                    && Math.abs(main.vocabSize - draft.vocabSize) <= MAX_VOCAB_DIFFERENCE;
+        }
+        return main.type.equals(draft.type) && getFamilyKey(main.name).equals(getFamilyKey(draft.name));
+    }
+
+    /**
+     * 系列标识：文件名中参数规模之前的部分，如 qwen2.5-7b-instruct -> qwen2.5
+     */
+    static String getFamilyKey(String filename) {
+        String lower = filename.toLowerCase();
+        Matcher matcher = PARAM_SIZE.matcher(lower);
+        String prefix = matcher.find() ? lower.substring(0, matcher.start()) : lower;
+        return prefix.replaceAll("[-_. ]+$", "");
+    }
+
     /**
      * 模型信息类
      */
@@ -85,13 +144,87 @@ public class AIModelManager {
         public long size;
         public String formattedSize;
         public String type;
+        public long lastModified;
+        // 后台计算完成前为 null
+        public String sha256;
+
+        // 以下字段来自 GGUF 文件头，解析失败时保持默认值
+        public String architecture;
+        public String quantization;
+        public int contextLength;
+        public long parameterCount;
+        public int vocabSize;
+        public String tokenizerModel;
+        public int embeddingLength;
+        public int blockCount;
+        public int headCount;
+        public int headCountKv;
 
         public ModelInfo(File file) {
             this.name = file.getName();
             this.path = file.getAbsolutePath();
             this.size = file.length();
+            this.lastModified = file.lastModified();
             this.formattedSize = FileUtils.formatFileSize(size);
             this.type = extractModelType(name);
+
+            try {
+                GgufReader.Header header = GgufReader.read(file);
+                this.architecture = header.architecture;
+                this.quantization = header.getQuantization();
+                this.contextLength = header.contextLength;
+                this.parameterCount = header.parameterCount;
+                this.vocabSize = header.vocabSize;
+                this.tokenizerModel = header.tokenizerModel;
+                this.embeddingLength = header.embeddingLength;
+                this.blockCount = header.blockCount;
+                this.headCount = header.headCount;
+                this.headCountKv = header.headCountKv;
+
+                // 文件名看不出系列时用模型自带的名称和架构判断
+                if (type.equals("Unknown") && header.name != null) {
+                    this.type = extractModelType(header.name);
+                }
+                if (type.equals("Unknown") && architecture != null) {
+                    this.type = extractModelType(architecture);
+                }
+            } catch (Exception e) {
+                Log.w("AIModelManager", "读取模型文件头失败: " + name + " - " + e.getMessage());
+            }
+        }
+
+        /**
+         * 每个 token 的 KV 缓存字节数（f16），缺少文件头信息时返回 0
+         */
+        public long getKvBytesPerToken() {
+            if (blockCount <= 0 || embeddingLength <= 0 || headCount <= 0) {
+                return 0;
+            }
+            int kvHeads = headCountKv > 0 ? headCountKv : headCount;
+            long headDim = embeddingLength / headCount;
+            return 2L * blockCount * kvHeads * headDim * 2;
+        }
+
+        /**
+         * 一行描述：架构、参数规模、量化、上下文长度、词表大小
+         */
+        public String getDescription() {
+            if (architecture == null) {
+                return type + "，" + formattedSize;
+            }
+            return String.format("%s，%s 参数，%s，上下文 %d，词表 %d，%s", architecture,
+                    getFormattedParameters(), quantization != null ? quantization : "未知量化",
+                    contextLength, vocabSize, formattedSize);
+        }
+
+        /**
+         * 参数规模，如 7.6B、494M
+         */
+        public String getFormattedParameters() {
+            if (parameterCount >= 1000000000L) {
+                return String.format("%.1fB", parameterCount / 1e9);
+            }
+            return String.format("%dM", parameterCount / 1000000);
         }
 
         private String extractModelType(String filename) {
@@ -0,0 +1,302 @@
+package com.android.aiassistant.utils;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 设备自动调优
+ * 根据 CPU 拓扑（大小核频率）、可用内存和模型大小选择线程数、CPU 亲和性、批大小和上下文长度。
+ * sysfs / proc 根目录可注入，便于在测试中指向样例目录。
+ */
+public class DeviceTuner {
+
+    private static final String TAG = "DeviceTuner";
+
+    // 最高频率达到最快核心该比例的核心视为大核
+    private static final double BIG_CORE_RATIO = 0.7;
+    private static final long RESERVED_MEMORY = 512L * 1024 * 1024;
+    private static final int MIN_CONTEXT = 512;
+    private static final int MAX_CONTEXT = 8192;
+
+    private final File cpuRoot;
+    private final File procRoot;
+    private final File profileDirectory;
+    private final Gson gson = new Gson();
+
+    public DeviceTuner(File profileDirectory) {
+        this(new File("/sys/devices/system/cpu"), new File("/proc"), profileDirectory);
+    }
+
+    public DeviceTuner(File cpuRoot, File procRoot, File profileDirectory) {
+        this.cpuRoot = cpuRoot;
+        this.procRoot = procRoot;
+        this.profileDirectory = profileDirectory;
+    }
+
+    /**
+     * 获取模型的调优参数：优先使用已保存的，否则按硬件估算（可选实测校准）后保存
+     */
+    public TuningProfile getProfile(AIModelManager.ModelInfo model, Calibrator calibrator) {
+        TuningProfile saved = loadProfile(model);
+        if (saved != null && (calibrator == null || saved.calibrated)) {
+            return saved;
+        }
+
+        TuningProfile profile = estimate(model);
+        if (calibrator != null) {
+            calibrate(profile, calibrator);
+        }
+        saveProfile(model, profile);
+        return profile;
+    }
+
+    /**
+     * 按硬件信息估算参数
+     */
+    public TuningProfile estimate(AIModelManager.ModelInfo model) {
+        List<Long> maxFreqs = readCoreMaxFrequencies();
+        long availableMemory = readAvailableMemory();
+
+        TuningProfile profile = new TuningProfile();
+        profile.modelSize = model.size;
+
+        // 线程数 = 大核数量；绑定到大核避免被调度到小核拖慢整体速度
+        long fastest = 0;
+        for (long freq : maxFreqs) {
+            fastest = Math.max(fastest, freq);
+        }
+        long mask = 0;
+        int bigCores = 0;
+        for (int cpu = 0; cpu < maxFreqs.size(); cpu++) {
+            if (fastest > 0 && maxFreqs.get(cpu) >= fastest * BIG_CORE_RATIO) {
+                mask |= 1L << cpu;
+                bigCores++;
+            }
+        }
+        if (bigCores == 0) {
+            bigCores = Math.max(1, maxFreqs.size());
+            mask = 0;
+        }
+        profile.threads = bigCores;
+        profile.cpuMask = bigCores == maxFreqs.size() ? 0 : mask;
+
+        // 批大小：内存越紧张，prompt 评估的中间缓冲越小
+        if (availableMemory >= 6L * 1024 * 1024 * 1024) {
+            profile.batchSize = 512;
+        } else if (availableMemory >= 3L * 1024 * 1024 * 1024) {
+            profile.batchSize = 256;
+        } else {
+            profile.batchSize = 128;
+        }
+
+        // 上下文长度：模型权重之外剩余的内存用于 KV 缓存；有文件头信息时按层数和头数计算每个 token 的 KV 占用，
+        // 否则按模型大小粗估，且不超过模型训练时的上下文长度
+        long freeForKv = availableMemory - model.size - RESERVED_MEMORY;
+        long kvPerToken = model.getKvBytesPerToken();
+        if (kvPerToken <= 0) {
+            kvPerToken = Math.max(64 * 1024, model.size / 32768);
+        }
+        int maxContext = model.contextLength > 0 ? Math.min(MAX_CONTEXT, model.contextLength) : MAX_CONTEXT;
+        int context = Math.min(MIN_CONTEXT, maxContext);
+        while (context * 2 <= maxContext && (long) context * 2 * kvPerToken <= freeForKv) {
+            context *= 2;
+        }
+        profile.contextLength = context;
+        profile.availableMemory = availableMemory;
+        return profile;
+    }
+
+    /**
+     * 用短推理实测几个候选线程数，取生成速度最快的
+     */
+    private void calibrate(TuningProfile profile, Calibrator calibrator) {
+        int totalCores = Math.max(1, readCoreMaxFrequencies().size());
+        List<Integer> candidates = new ArrayList<>();
+        candidates.add(profile.threads);
+        if (profile.threads > 1) {
+            candidates.add(profile.threads - 1);
+        }
+        if (totalCores != profile.threads) {
+            candidates.add(totalCores);
+        }
+
+        int bestThreads = profile.threads;
+        long bestMask = profile.cpuMask;
+        double bestSpeed = -1;
+        for (int threads : candidates) {
+            TuningProfile candidate = profile.copy();
+            candidate.threads = threads;
+            if (threads == totalCores) {
+                candidate.cpuMask = 0;
+            }
+            try {
+                double speed = calibrator.measureTokensPerSecond(candidate);
+                Log.i(TAG, "校准 " + threads + " 线程: " + String.format("%.2f", speed) + " tok/s");
+                if (speed > bestSpeed) {
+                    bestSpeed = speed;
+                    bestThreads = threads;
+                    bestMask = candidate.cpuMask;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "校准失败 (" + threads + " 线程): " + e.getMessage());
+            }
+        }
+
+        if (bestSpeed >= 0) {
+            profile.threads = bestThreads;
+            profile.cpuMask = bestMask;
+            profile.calibratedTokensPerSecond = bestSpeed;
+            profile.calibrated = true;
+        }
+    }
+
+    /**
+     * 读取每个核心的最高频率 (kHz)，下标即 CPU 编号
+     */
+    public List<Long> readCoreMaxFrequencies() {
+        List<Long> freqs = new ArrayList<>();
+        for (int cpu = 0; ; cpu++) {
+            File cpuDir = new File(cpuRoot, "cpu" + cpu);
+            if (!cpuDir.isDirectory()) {
+                break;
+            }
+            String value = readFirstLine(new File(cpuDir, "cpufreq/cpuinfo_max_freq"));
+            long freq = 0;
+            if (value != null) {
+                try {
+                    freq = Long.parseLong(value.trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            freqs.add(freq);
+        }
+        return freqs;
+    }
+
+    /**
+     * 读取 /proc/meminfo 的 MemAvailable（字节）
+     */
+    public long readAvailableMemory() {
+        return readMemInfo("MemAvailable:");
+    }
+
+    /**
+     * 读取 /proc/meminfo 的 MemTotal（字节）
+     */
+    public long readTotalMemory() {
+        return readMemInfo("MemTotal:");
+    }
+
+    private long readMemInfo(String field) {
+        File meminfo = new File(procRoot, "meminfo");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(meminfo), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(field)) {
+                    String[] parts = line.split("\\s+");
+                    return Long.parseLong(parts[1]) * 1024;
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "读取 meminfo 失败: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private TuningProfile loadProfile(AIModelManager.ModelInfo model) {
+        File file = getProfileFile(model);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            TuningProfile profile = gson.fromJson(reader, TuningProfile.class);
+            // 模型文件换了就重新调优
+            if (profile != null && profile.modelSize == model.size) {
+                return profile;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "读取调优配置失败: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void saveProfile(AIModelManager.ModelInfo model, TuningProfile profile) {
+        if (!profileDirectory.exists()) {
+            profileDirectory.mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(getProfileFile(model)), StandardCharsets.UTF_8)) {
+            gson.toJson(profile, writer);
+        } catch (Exception e) {
+            Log.w(TAG, "保存调优配置失败: " + e.getMessage());
+        }
+    }
+
+    private File getProfileFile(AIModelManager.ModelInfo model) {
+        return new File(profileDirectory, model.name + ".json");
+    }
+
+    private static String readFirstLine(File file) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return reader.readLine();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 调优结果
+     */
+    public static class TuningProfile {
+        public int threads;
+        // 0 表示不绑定
+        public long cpuMask;
+        public int batchSize;
+        public int contextLength;
+        public long modelSize;
+        public long availableMemory;
+        public boolean calibrated;
+        public double calibratedTokensPerSecond;
+
+        public TuningProfile copy() {
+            TuningProfile copy = new TuningProfile();
+            copy.threads = threads;
+            copy.cpuMask = cpuMask;
+            copy.batchSize = batchSize;
+            copy.contextLength = contextLength;
+            copy.modelSize = modelSize;
+            copy.availableMemory = availableMemory;
+            copy.calibrated = calibrated;
+            copy.calibratedTokensPerSecond = calibratedTokensPerSecond;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("线程 %d%s，批大小 %d，上下文 %d%s", threads,
+                    cpuMask != 0 ? " (CPU 掩码 0x" + Long.toHexString(cpuMask) + ")" : "",
+                    batchSize, contextLength,
+                    calibrated ? String.format("，实测 %.2f tok/s", calibratedTokensPerSecond) : "");
+        }
+    }
+
+    /**
+     * 校准：用给定参数跑一次短推理，返回生成速度
+     */
+    public interface Calibrator {
+        double measureTokensPerSecond(TuningProfile profile) throws Exception;
+    }
+}
@@ -0,0 +1,377 @@
+package com.android.aiassistant.utils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * GGUF 文件头解析
+ * 只映射文件开头的元数据区域，顺序读取键值表和张量描述，不读取张量数据；
+ * 不需要的值（如词表字符串）直接跳过，不产生对象
+ */
+public class GgufReader {
+
+    private static final int MAGIC = 0x46554747; // "GGUF"
+    private static final long INITIAL_WINDOW = 16L * 1024 * 1024;
+    // 元数据映射窗口上限，超过时按损坏处理，避免映射过大（32 位 ABI 上尤其容易失败）
+    private static final long MAX_WINDOW = 64L * 1024 * 1024;
+    private static final int DEFAULT_ALIGNMENT = 32;
+
+    // 值类型
+    private static final int TYPE_UINT8 = 0;
+    private static final int TYPE_INT8 = 1;
+    private static final int TYPE_UINT16 = 2;
+    private static final int TYPE_INT16 = 3;
+    private static final int TYPE_UINT32 = 4;
+    private static final int TYPE_INT32 = 5;
+    private static final int TYPE_FLOAT32 = 6;
+    private static final int TYPE_BOOL = 7;
+    private static final int TYPE_STRING = 8;
+    private static final int TYPE_ARRAY = 9;
+    private static final int TYPE_UINT64 = 10;
+    private static final int TYPE_INT64 = 11;
+    private static final int TYPE_FLOAT64 = 12;
+
+    // general.file_type 对应的量化名称（llama_ftype）
+    private static final String[] FILE_TYPES = {
+            "F32", "F16", "Q4_0", "Q4_1", "Q4_1_F16", null, null, "Q8_0", "Q5_0", "Q5_1",
+            "Q2_K", "Q3_K_S", "Q3_K_M", "Q3_K_L", "Q4_K_S", "Q4_K_M", "Q5_K_S", "Q5_K_M", "Q6_K",
+            "IQ2_XXS", "IQ2_XS", "Q2_K_S", "IQ3_XS", "IQ3_XXS", "IQ1_S", "IQ4_NL", "IQ3_S",
+            "IQ3_M", "IQ2_S", "IQ2_M", "IQ4_XS", "IQ1_M", "BF16"
+    };
+
+    private final MappedByteBuffer buffer;
+    private final long fileSize;
+    private final String architecture;
+    private final Header header = new Header();
+
+    private GgufReader(MappedByteBuffer buffer, long fileSize, String architecture) {
+        this.buffer = buffer;
+        this.fileSize = fileSize;
+        this.architecture = architecture;
+    }
+
+    /**
+     * 解析模型文件头
+     * 元数据超出初始映射窗口时加倍窗口重新解析，窗口最大 64MB
+     */
+    public static Header read(File file) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            long window = Math.min(size, INITIAL_WINDOW);
+            String architecture = null;
+            while (true) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, window);
+                GgufReader reader = new GgufReader(buffer, size, architecture);
+                try {
+                    reader.parse();
+                    return reader.header;
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    if (window >= size) {
+                        throw new Exception("GGUF 文件不完整: " + file.getName());
+                    }
+                    if (window >= MAX_WINDOW) {
+                        throw new Exception("GGUF 元数据超过 " + (MAX_WINDOW >> 20) + "MB，文件可能已损坏: "
+                                + file.getName());
+                    }
+                    // 架构名决定要读哪些键，重试时沿用
+                    architecture = reader.header.architecture;
+                    window = Math.min(Math.min(size, MAX_WINDOW), window * 2);
+                }
+            }
+        }
+    }
+
+    private void parse() throws Exception {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC) {
+            throw new Exception("不是 GGUF 文件");
+        }
+        int version = buffer.getInt();
+        if ((version & 0xFFFF) == 0) {
+            // 大端文件
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            version = Integer.reverseBytes(version);
+        }
+        if (version < 1 || version > 3) {
+            throw new Exception("不支持的 GGUF 版本: " + version);
+        }
+        header.version = version;
+        header.tensorCount = readCount();
+        long kvCount = readCount();
+
+        header.architecture = architecture;
+        int alignment = DEFAULT_ALIGNMENT;
+        for (long i = 0; i < kvCount; i++) {
+            String key = readString();
+            int type = buffer.getInt();
+            switch (key) {
+                case "general.architecture":
+                    header.architecture = readStringValue(type);
+                    break;
+                case "general.name":
+                    header.name = readStringValue(type);
+                    break;
+                case "general.file_type":
+                    header.fileType = (int) readInteger(type);
+                    break;
+                case "general.alignment":
+                    alignment = (int) readInteger(type);
+                    break;
+                case "tokenizer.ggml.model":
+                    header.tokenizerModel = readStringValue(type);
+                    break;
+                case "tokenizer.ggml.tokens":
+                    header.vocabSize = (int) readArrayLength(type);
+                    break;
+                default:
+                    if (!readArchitectureKey(key, type)) {
+                        skipValue(type);
+                    }
+                    break;
+            }
+        }
+
+        // 张量描述：只累加元素个数，不保留名称
+        long parameters = 0;
+        for (long i = 0; i < header.tensorCount; i++) {
+            skipString();
+            int dims = buffer.getInt();
+            require(dims * 8L, "张量维数");
+            long elements = 1;
+            for (int d = 0; d < dims; d++) {
+                elements *= readCount();
+            }
+            buffer.getInt(); // 张量类型
+            buffer.getLong(); // 数据偏移
+            parameters += elements;
+        }
+        header.parameterCount = parameters;
+        long position = buffer.position();
+        header.dataOffset = (position + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * 读取 {架构}.xxx 形式的超参数，返回是否已处理
+     */
+    private boolean readArchitectureKey(String key, int type) throws Exception {
+        if (header.architecture == null || !key.startsWith(header.architecture)
+                || key.length() <= header.architecture.length()
+                || key.charAt(header.architecture.length()) != '.') {
+            return false;
+        }
+        switch (key.substring(header.architecture.length() + 1)) {
+            case "context_length":
+                header.contextLength = (int) readInteger(type);
+                return true;
+            case "embedding_length":
+                header.embeddingLength = (int) readInteger(type);
+                return true;
+            case "block_count":
+                header.blockCount = (int) readInteger(type);
+                return true;
+            case "attention.head_count":
+                header.headCount = (int) readFirstInteger(type);
+                return true;
+            case "attention.head_count_kv":
+                header.headCountKv = (int) readFirstInteger(type);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // v1 的计数为 32 位
+    private long readCount() {
+        return header.version == 1 ? buffer.getInt() & 0xFFFFFFFFL : buffer.getLong();
+    }
+
+    private String readString() throws Exception {
+        int length = checkLength(readCount());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void skipString() throws Exception {
+        skip(checkLength(readCount()));
+    }
+
+    private void skip(long bytes) throws Exception {
+        require(bytes, "数据长度");
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    private int checkLength(long length) throws Exception {
+        require(length, "字符串长度");
+        return (int) length;
+    }
+
+    /**
+     * 检查后面还有 bytes 字节：超出文件剩余部分说明长度字段已损坏，只超出映射窗口时扩大窗口重试
+     */
+    private void require(long bytes, String field) throws Exception {
+        if (bytes < 0 || bytes > fileSize - buffer.position()) {
+            throw new Exception("GGUF 格式错误: " + field + " " + bytes);
+        }
+        if (bytes > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+    }
+
+    private String readStringValue(int type) throws Exception {
+        if (type != TYPE_STRING) {
+            skipValue(type);
+            return null;
+        }
+        return readString();
+    }
+
+    private long readInteger(int type) throws Exception {
+        switch (type) {
+            case TYPE_UINT8:
+                return buffer.get() & 0xFF;
+            case TYPE_INT8:
+                return buffer.get();
+            case TYPE_UINT16:
+                return buffer.getShort() & 0xFFFF;
+            case TYPE_INT16:
+                return buffer.getShort();
+            case TYPE_UINT32:
+                return buffer.getInt() & 0xFFFFFFFFL;
+            case TYPE_INT32:
+                return buffer.getInt();
+            case TYPE_UINT64:
+            case TYPE_INT64:
+                return buffer.getLong();
+            default:
+                skipValue(type);
+                return 0;
+        }
+    }
+
+    /**
+     * 部分架构按层给出数组形式的头数，取第一层
+     */
+    private long readFirstInteger(int type) throws Exception {
+        if (type != TYPE_ARRAY) {
+            return readInteger(type);
+        }
+        int elementType = buffer.getInt();
+        long count = readCount();
+        require(count * Math.max(1, getFixedWidth(elementType)), "数组长度");
+        long first = 0;
+        for (long i = 0; i < count; i++) {
+            long value = readInteger(elementType);
+            if (i == 0) {
+                first = value;
+            }
+        }
+        return first;
+    }
+
+    private long readArrayLength(int type) throws Exception {
+        if (type != TYPE_ARRAY) {
+            skipValue(type);
+            return 0;
+        }
+        int elementType = buffer.getInt();
+        long count = readCount();
+        skipElements(elementType, count);
+        return count;
+    }
+
+    private void skipValue(int type) throws Exception {
+        if (type == TYPE_ARRAY) {
+            int elementType = buffer.getInt();
+            skipElements(elementType, readCount());
+        } else {
+            skipElements(type, 1);
+        }
+    }
+
+    private void skipElements(int type, long count) throws Exception {
+        int width = getFixedWidth(type);
+        if (count < 0 || count > fileSize) {
+            throw new Exception("GGUF 格式错误: 数组长度 " + count);
+        }
+        if (width > 0) {
+            skip(width * count);
+            return;
+        }
+        // 字符串和嵌套数组每个元素至少有 8 字节的长度字段
+        require(count * 8, "数组长度");
+        for (long i = 0; i < count; i++) {
+            if (type == TYPE_STRING) {
+                skipString();
+            } else if (type == TYPE_ARRAY) {
+                skipValue(TYPE_ARRAY);
+            } else {
+                throw new Exception("GGUF 格式错误: 未知值类型 " + type);
+            }
+        }
+    }
+
+    private static int getFixedWidth(int type) {
+        switch (type) {
+            case TYPE_UINT8:
+            case TYPE_INT8:
+            case TYPE_BOOL:
+                return 1;
+            case TYPE_UINT16:
+            case TYPE_INT16:
+                return 2;
+            case TYPE_UINT32:
+            case TYPE_INT32:
+            case TYPE_FLOAT32:
+                return 4;
+            case TYPE_UINT64:
+            case TYPE_INT64:
+            case TYPE_FLOAT64:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 量化类型名称，未知时返回 null
+     */
+    static String getFileTypeName(int fileType) {
+        if (fileType >= 0 && fileType < FILE_TYPES.length) {
+            return FILE_TYPES[fileType];
+        }
+        return null;
+    }
+
+    /**
+     * GGUF 文件头信息
+     */
+    public static class Header {
+        public int version;
+        public long tensorCount;
+        public String architecture;
+        public String name;
+        // -1 表示未给出
+        public int fileType = -1;
+        public int contextLength;
+        public int embeddingLength;
+        public int blockCount;
+        public int headCount;
+        public int headCountKv;
+        public String tokenizerModel;
+        public int vocabSize;
+        public long parameterCount;
+        // 张量数据起始位置
+        public long dataOffset;
+
+        public String getQuantization() {
+            return getFileTypeName(fileType);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.android.aiassistant.utils;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * HNSW 近似最近邻图
+ * 向量保存在外部（通常是映射到内存的 FloatBuffer，已归一化），图里只存邻接表；
+ * 相似度为内积，即归一化向量的余弦相似度
+ */
+public class HnswGraph {
+
+    private final FloatBuffer vectors;
+    private final int dimension;
+    private final int maxNeighbors;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final Random random = new Random(42);
+
+    // neighbors[node][level] 为该层的邻居编号，neighborCounts 为实际数量
+    private int[][][] neighbors = new int[0][][];
+    private int[][] neighborCounts = new int[0][];
+    private int size;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    public HnswGraph(FloatBuffer vectors, int dimension, int maxNeighbors, int efConstruction) {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        this.maxNeighbors = maxNeighbors;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1.0 / Math.log(maxNeighbors);
+    }
+
+    /**
+     * 依次插入向量存储中的前 count 个向量
+     */
+    public void build(int count) {
+        neighbors = Arrays.copyOf(neighbors, count);
+        neighborCounts = Arrays.copyOf(neighborCounts, count);
+        for (int node = size; node < count; node++) {
+            insert(node);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查询最相似的 k 个向量，按相似度从高到低返回编号
+     */
+    public int[] search(float[] query, int k, int ef) {
+        if (entryPoint < 0) {
+            return new int[0];
+        }
+        int current = entryPoint;
+        for (int level = topLevel; level > 0; level--) {
+            current = greedy(query, current, level);
+        }
+        List<Candidate> found = searchLayer(query, current, Math.max(ef, k), 0);
+        int n = Math.min(k, found.size());
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = found.get(i).node;
+        }
+        return result;
+    }
+
+    private void insert(int node) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+        neighbors[node] = new int[level + 1][];
+        neighborCounts[node] = new int[level + 1];
+        for (int l = 0; l <= level; l++) {
+            // 第 0 层允许两倍邻居
+            neighbors[node][l] = new int[l == 0 ? maxNeighbors * 2 : maxNeighbors];
+        }
+        size = node + 1;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return;
+        }
+
+        float[] query = getVector(node);
+        int current = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            current = greedy(query, current, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(query, current, efConstruction, l);
+            List<Candidate> selected = selectNeighbors(candidates, neighbors[node][l].length);
+            for (Candidate candidate : selected) {
+                addLink(node, candidate.node, l);
+                addLink(candidate.node, node, l);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 启发式选邻居：优先保留彼此不太相似的候选，保持图的连通性
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int limit) {
+        List<Candidate> selected = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (similarity(candidate.node, chosen.node) > candidate.similarity) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] list = neighbors[from][level];
+        int count = neighborCounts[from][level];
+        for (int i = 0; i < count; i++) {
+            if (list[i] == to) {
+                return;
+            }
+        }
+        if (count < list.length) {
+            list[count] = to;
+            neighborCounts[from][level] = count + 1;
+            return;
+        }
+        // 已满时替换掉最不相似的邻居
+        float newSimilarity = similarity(from, to);
+        int worst = -1;
+        float worstSimilarity = newSimilarity;
+        for (int i = 0; i < count; i++) {
+            float s = similarity(from, list[i]);
+            if (s < worstSimilarity) {
+                worstSimilarity = s;
+                worst = i;
+            }
+        }
+        if (worst >= 0) {
+            list[worst] = to;
+        }
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] list = neighbors[current][level];
+            int count = neighborCounts[current][level];
+            for (int i = 0; i < count; i++) {
+                float s = similarity(query, list[i]);
+                if (s > best) {
+                    best = s;
+                    current = list[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在一层内做束搜索，返回按相似度降序排列的候选
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(BY_SIMILARITY_DESC);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_SIMILARITY_ASC);
+
+        Candidate first = new Candidate(start, similarity(query, start));
+        visited.set(start);
+        frontier.add(first);
+        results.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate current = frontier.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                break;
+            }
+            if (level >= neighbors[current.node].length) {
+                continue;
+            }
+            int[] list = neighbors[current.node][level];
+            int count = neighborCounts[current.node][level];
+            for (int i = 0; i < count; i++) {
+                int next = list[i];
+                if (visited.get(next)) {
+                    continue;
+                }
+                visited.set(next);
+                float s = similarity(query, next);
+                if (results.size() < ef || s > results.peek().similarity) {
+                    Candidate candidate = new Candidate(next, s);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY_DESC);
+        return sorted;
+    }
+
+    private float similarity(float[] query, int node) {
+        int base = node * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * vectors.get(base + i);
+        }
+        return sum;
+    }
+
+    private float similarity(int a, int b) {
+        int baseA = a * dimension;
+        int baseB = b * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += vectors.get(baseA + i) * vectors.get(baseB + i);
+        }
+        return sum;
+    }
+
+    private float[] getVector(int node) {
+        float[] vector = new float[dimension];
+        int base = node * dimension;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = vectors.get(base + i);
+        }
+        return vector;
+    }
+
+    private static final Comparator<Candidate> BY_SIMILARITY_DESC = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            return Float.compare(b.similarity, a.similarity);
+        }
+    };
+
+    private static final Comparator<Candidate> BY_SIMILARITY_ASC = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            return Float.compare(a.similarity, b.similarity);
+        }
+    };
+
+    private static class Candidate {
+        final int node;
+        final float similarity;
+
+        Candidate(int node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.android.aiassistant.utils;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型目录索引
+ * 记录每个模型文件的路径、大小、修改时间、文件头信息和 SHA-256，持久化为 JSON。
+ * 刷新时只重新解析大小或修改时间变化的文件；哈希在后台低优先级线程中限速计算，
+ * 重命名的文件按大小 + 修改时间沿用原来的哈希，复制的文件按哈希识别
+ */
+public class ModelCatalog {
+
+    private static final String TAG = "ModelCatalog";
+    private static final int HASH_CHUNK = 4 * 1024 * 1024;
+
+    // 同一个索引文件只对应一个实例，避免多处同时写
+    private static final Map<String, ModelCatalog> instances = new HashMap<>();
+
+    private final File modelsDirectory;
+    private final File indexFile;
+    private final Gson gson = new Gson();
+    private final Map<String, AIModelManager.ModelInfo> entries = new LinkedHashMap<>();
+    private final ArrayDeque<String> hashQueue = new ArrayDeque<>();
+
+    private long maxHashBytesPerSecond = 64L * 1024 * 1024;
+    private Thread hashThread;
+
+    private ModelCatalog(File modelsDirectory, File indexFile) {
+        this.modelsDirectory = modelsDirectory;
+        this.indexFile = indexFile;
+        load();
+    }
+
+    public static ModelCatalog get(File modelsDirectory, File indexFile) {
+        synchronized (instances) {
+            String key = indexFile.getAbsolutePath();
+            ModelCatalog catalog = instances.get(key);
+            if (catalog == null) {
+                catalog = new ModelCatalog(modelsDirectory, indexFile);
+                instances.put(key, catalog);
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * 对照目录增量刷新索引，返回按文件名排序的模型列表
+     */
+    public List<AIModelManager.ModelInfo> refresh() {
+        File[] files = modelsDirectory.listFiles();
+        List<AIModelManager.ModelInfo> models = new ArrayList<>();
+        boolean changed = false;
+
+        synchronized (this) {
+            Map<String, AIModelManager.ModelInfo> removed = new LinkedHashMap<>(entries);
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().endsWith(".gguf")) {
+                        continue;
+                    }
+                    String path = file.getAbsolutePath();
+                    removed.remove(path);
+                    AIModelManager.ModelInfo entry = entries.get(path);
+                    if (entry != null && entry.size == file.length()
+                            && entry.lastModified == file.lastModified()) {
+                        models.add(entry);
+                        continue;
+                    }
+
+                    entry = new AIModelManager.ModelInfo(file);
+                    entries.put(path, entry);
+                    changed = true;
+                    models.add(entry);
+                }
+            }
+
+            for (AIModelManager.ModelInfo gone : removed.values()) {
+                entries.remove(gone.path);
+                changed = true;
+            }
+
+            // 重命名：大小和修改时间都没变，直接沿用消失条目的哈希
+            for (AIModelManager.ModelInfo entry : models) {
+                if (entry.sha256 != null) {
+                    continue;
+                }
+                for (AIModelManager.ModelInfo gone : removed.values()) {
+                    if (gone.sha256 != null && gone.size == entry.size
+                            && gone.lastModified == entry.lastModified) {
+                        entry.sha256 = gone.sha256;
+                        Log.i(TAG, "识别到重命名: " + gone.name + " -> " + entry.name);
+                        break;
+                    }
+                }
+                if (entry.sha256 == null && !hashQueue.contains(entry.path)) {
+                    hashQueue.add(entry.path);
+                }
+            }
+        }
+
+        if (changed) {
+            save();
+        }
+        startHashing();
+
+        Collections.sort(models, new Comparator<AIModelManager.ModelInfo>() {
+            @Override
+            public int compare(AIModelManager.ModelInfo a, AIModelManager.ModelInfo b) {
+                return a.name.compareTo(b.name);
+            }
+        });
+        return models;
+    }
+
+    /**
+     * 按路径查索引，未收录或文件已变化时重新解析
+     */
+    public AIModelManager.ModelInfo getByPath(String path) {
+        File file = new File(path);
+        synchronized (this) {
+            AIModelManager.ModelInfo entry = entries.get(file.getAbsolutePath());
+            if (entry != null && entry.size == file.length() && entry.lastModified == file.lastModified()) {
+                return entry;
+            }
+        }
+        return new AIModelManager.ModelInfo(file);
+    }
+
+    /**
+     * 已收录且未变化的文件的内容哈希，未收录、已变化或尚未算完时返回 null（不解析文件）
+     */
+    public synchronized String getSha256(String path) {
+        File file = new File(path);
+        AIModelManager.ModelInfo entry = entries.get(file.getAbsolutePath());
+        if (entry != null && entry.size == file.length() && entry.lastModified == file.lastModified()) {
+            return entry.sha256;
+        }
+        return null;
+    }
+
+    /**
+     * 按内容哈希查找模型（哈希尚未算完的文件查不到）
+     */
+    public synchronized List<AIModelManager.ModelInfo> findByHash(String sha256) {
+        List<AIModelManager.ModelInfo> result = new ArrayList<>();
+        for (AIModelManager.ModelInfo entry : entries.values()) {
+            if (sha256.equals(entry.sha256)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 内容相同的重复模型，按哈希分组
+     */
+    public synchronized Map<String, List<AIModelManager.ModelInfo>> findDuplicates() {
+        Map<String, List<AIModelManager.ModelInfo>> groups = new LinkedHashMap<>();
+        for (AIModelManager.ModelInfo entry : entries.values()) {
+            if (entry.sha256 == null) {
+                continue;
+            }
+            List<AIModelManager.ModelInfo> group = groups.get(entry.sha256);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(entry.sha256, group);
+            }
+            group.add(entry);
+        }
+        Map<String, List<AIModelManager.ModelInfo>> duplicates = new LinkedHashMap<>();
+        for (Map.Entry<String, List<AIModelManager.ModelInfo>> group : groups.entrySet()) {
+            if (group.getValue().size() > 1) {
+                duplicates.put(group.getKey(), group.getValue());
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * 登记新文件；已知哈希（如下载时已校验）时不再后台计算
+     */
+    public AIModelManager.ModelInfo register(File file, String sha256) {
+        AIModelManager.ModelInfo entry = new AIModelManager.ModelInfo(file);
+        entry.sha256 = sha256;
+        synchronized (this) {
+            entries.put(entry.path, entry);
+            hashQueue.remove(entry.path);
+        }
+        save();
+        return entry;
+    }
+
+    public synchronized void remove(String path) {
+        if (entries.remove(new File(path).getAbsolutePath()) != null) {
+            hashQueue.remove(path);
+            save();
+        }
+    }
+
+    /**
+     * 后台哈希限速（字节/秒，0 表示不限速）
+     */
+    public void setMaxHashBytesPerSecond(long maxHashBytesPerSecond) {
+        this.maxHashBytesPerSecond = maxHashBytesPerSecond;
+    }
+
+    public synchronized int getPendingHashCount() {
+        return hashQueue.size();
+    }
+
+    private synchronized void startHashing() {
+        if (hashQueue.isEmpty() || (hashThread != null && hashThread.isAlive())) {
+            return;
+        }
+        hashThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                hashPending();
+            }
+        }, "model-hash");
+        hashThread.setPriority(Thread.MIN_PRIORITY);
+        hashThread.setDaemon(true);
+        hashThread.start();
+    }
+
+    private void hashPending() {
+        while (true) {
+            String path;
+            synchronized (this) {
+                path = hashQueue.poll();
+            }
+            if (path == null) {
+                return;
+            }
+
+            File file = new File(path);
+            long size = file.length();
+            long lastModified = file.lastModified();
+            try {
+                String sha256 = computeSha256(file);
+                synchronized (this) {
+                    AIModelManager.ModelInfo entry = entries.get(path);
+                    // 哈希期间文件被改动（例如仍在下载）则丢弃结果，等下次刷新
+                    if (entry == null || entry.size != size || entry.lastModified != lastModified
+                            || file.length() != size || file.lastModified() != lastModified) {
+                        continue;
+                    }
+                    entry.sha256 = sha256;
+                    for (AIModelManager.ModelInfo other : entries.values()) {
+                        if (other != entry && sha256.equals(other.sha256)) {
+                            Log.i(TAG, "识别到重复模型: " + entry.name + " = " + other.name);
+                        }
+                    }
+                }
+                save();
+            } catch (Exception e) {
+                Log.w(TAG, "计算哈希失败: " + path + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 大块顺序读取计算 SHA-256，按设定速率限速
+     */
+    private String computeSha256(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_CHUNK);
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            long start = System.nanoTime();
+            long done = 0;
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+                done += read;
+
+                if (maxHashBytesPerSecond > 0) {
+                    // 用浮点计算，哈希过约 9.2GB 后整数乘法会溢出
+                    long expectedNanos = (long) (done * 1e9 / maxHashBytesPerSecond);
+                    long elapsedNanos = System.nanoTime() - start;
+                    if (expectedNanos > elapsedNanos) {
+                        Thread.sleep((expectedNanos - elapsedNanos) / 1000000);
+                    }
+                }
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private synchronized void load() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)) {
+            List<AIModelManager.ModelInfo> saved = gson.fromJson(reader,
+                    new TypeToken<List<AIModelManager.ModelInfo>>() {}.getType());
+            if (saved != null) {
+                for (AIModelManager.ModelInfo entry : saved) {
+                    entries.put(entry.path, entry);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "读取模型索引失败: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        List<AIModelManager.ModelInfo> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        synchronized (indexFile) {
+            File tmp = new File(indexFile.getPath() + ".tmp");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+                gson.toJson(snapshot, writer);
+            } catch (Exception e) {
+                Log.w(TAG, "保存模型索引失败: " + e.getMessage());
+                return;
+            }
+            if (!tmp.renameTo(indexFile)) {
+                Log.w(TAG, "保存模型索引失败: 无法替换 " + indexFile.getName());
+            }
+        }
+    }
+}
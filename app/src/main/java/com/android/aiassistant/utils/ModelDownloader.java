@@ -0,0 +1,468 @@
+package com.android.aiassistant.utils;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 模型下载
+ * 文件按固定大小分块，用 HTTP Range 多连接并行下载，按位置写入预先分配好的 .part 文件；
+ * 已完成的块记录在旁边的 .part.json 日志中，中断后按块续传。
+ * 完成后校验 SHA-256，改名为正式文件并登记到模型目录索引
+ */
+public class ModelDownloader {
+
+    private static final String TAG = "ModelDownloader";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File modelsDirectory;
+    private final ModelCatalog catalog;
+    private final OkHttpClient httpClient;
+    private final Gson gson = new Gson();
+
+    private int connections = 4;
+    private long chunkSize = 8L * 1024 * 1024;
+    private int maxRetries = 3;
+
+    public ModelDownloader(AIModelManager modelManager) {
+        this(modelManager.getModelsDirectory(), modelManager.getCatalog());
+    }
+
+    public ModelDownloader(File modelsDirectory, ModelCatalog catalog) {
+        this.modelsDirectory = modelsDirectory;
+        this.catalog = catalog;
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 开始下载
+     *
+     * @param url            下载地址
+     * @param fileName       保存的文件名（.gguf）
+     * @param expectedSha256 期望的 SHA-256，为 null 时不校验
+     */
+    public DownloadTask download(String url, String fileName, String expectedSha256,
+                                 DownloadListener listener) {
+        DownloadTask task = new DownloadTask(url, fileName, expectedSha256, listener);
+        Thread thread = new Thread(task, "model-download");
+        thread.start();
+        return task;
+    }
+
+    /**
+     * 并行连接数
+     */
+    public void setConnections(int connections) {
+        this.connections = Math.max(1, connections);
+    }
+
+    /**
+     * 分块大小（字节），也是续传的粒度
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 下载任务
+     */
+    public class DownloadTask implements Runnable {
+        private final String url;
+        private final String fileName;
+        private final String expectedSha256;
+        private final DownloadListener listener;
+
+        private final List<Call> activeCalls = new ArrayList<>();
+        private final AtomicLong downloaded = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile Exception failure;
+        private long total;
+        private int lastPercent = -1;
+
+        DownloadTask(String url, String fileName, String expectedSha256, DownloadListener listener) {
+            this.url = url;
+            this.fileName = fileName;
+            this.expectedSha256 = expectedSha256;
+            this.listener = listener;
+        }
+
+        /**
+         * 取消下载，已完成的块保留，下次可续传
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (activeCalls) {
+                for (Call call : activeCalls) {
+                    call.cancel();
+                }
+            }
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public long getDownloadedBytes() {
+            return downloaded.get();
+        }
+
+        public long getTotalBytes() {
+            return total;
+        }
+
+        @Override
+        public void run() {
+            File target = new File(modelsDirectory, fileName);
+            File partFile = new File(modelsDirectory, fileName + ".part");
+            File journalFile = new File(modelsDirectory, fileName + ".part.json");
+            try {
+                if (target.exists()) {
+                    throw new Exception("模型已存在: " + fileName);
+                }
+
+                RemoteInfo remote = probe();
+                total = remote.length;
+                if (remote.acceptRanges) {
+                    downloadChunks(remote, partFile, journalFile);
+                } else {
+                    // 不支持 Range 时只能单连接从头下载
+                    Log.w(TAG, "服务器不支持分段下载，使用单连接: " + url);
+                    downloadWhole(partFile);
+                }
+                if (cancelled) {
+                    throw new Exception("下载已取消");
+                }
+
+                String sha256 = computeSha256(partFile);
+                if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                    partFile.delete();
+                    journalFile.delete();
+                    throw new Exception("校验失败: SHA-256 不匹配");
+                }
+                if (!partFile.renameTo(target)) {
+                    throw new Exception("无法保存模型文件: " + target.getAbsolutePath());
+                }
+                journalFile.delete();
+
+                AIModelManager.ModelInfo info = catalog.register(target, sha256);
+                finished = true;
+                listener.onComplete(info);
+            } catch (Exception e) {
+                if (cancelled) {
+                    listener.onError("下载已取消");
+                } else {
+                    Log.e(TAG, "下载失败: " + e.getMessage());
+                    listener.onError(e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * 请求第一个字节，获取文件大小和是否支持 Range
+         */
+        private RemoteInfo probe() throws Exception {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=0-0")
+                    .build();
+            try (Response response = execute(request)) {
+                RemoteInfo info = new RemoteInfo();
+                info.etag = response.header("ETag");
+                if (response.code() == 206) {
+                    Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+                    if (matcher.find()) {
+                        info.length = Long.parseLong(matcher.group(1));
+                        info.acceptRanges = true;
+                        return info;
+                    }
+                }
+                if (!response.isSuccessful()) {
+                    throw new Exception("HTTP " + response.code());
+                }
+                info.length = response.body() != null ? response.body().contentLength() : -1;
+                return info;
+            }
+        }
+
+        private void downloadChunks(RemoteInfo remote, File partFile, File journalFile) throws Exception {
+            Journal journal = loadJournal(journalFile);
+            if (journal == null || !url.equals(journal.url) || journal.length != remote.length
+                    || journal.chunkSize != chunkSize || !partFile.exists()
+                    || (journal.etag != null && !journal.etag.equals(remote.etag))) {
+                journal = new Journal();
+                journal.url = url;
+                journal.etag = remote.etag;
+                journal.length = remote.length;
+                journal.chunkSize = chunkSize;
+                journal.done = new boolean[(int) ((remote.length + chunkSize - 1) / chunkSize)];
+                try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+                    raf.setLength(remote.length);
+                }
+                saveJournal(journal, journalFile);
+            }
+
+            final ArrayDeque<Integer> pending = new ArrayDeque<>();
+            for (int i = 0; i < journal.done.length; i++) {
+                if (journal.done[i]) {
+                    downloaded.addAndGet(getChunkLength(journal, i));
+                } else {
+                    pending.add(i);
+                }
+            }
+            if (downloaded.get() > 0) {
+                Log.i(TAG, "续传 " + fileName + "，已完成 " + FileUtils.formatFileSize(downloaded.get()));
+            }
+            reportProgress();
+
+            final Journal state = journal;
+            try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+                 final FileChannel channel = raf.getChannel()) {
+                List<Thread> workers = new ArrayList<>();
+                int workerCount = Math.min(connections, Math.max(1, pending.size()));
+                for (int w = 0; w < workerCount; w++) {
+                    Thread worker = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            while (!cancelled && failure == null) {
+                                Integer chunk;
+                                synchronized (pending) {
+                                    chunk = pending.poll();
+                                }
+                                if (chunk == null) {
+                                    return;
+                                }
+                                try {
+                                    fetchChunkWithRetry(state, chunk, channel);
+                                    synchronized (state) {
+                                        state.done[chunk] = true;
+                                        saveJournal(state, journalFile);
+                                    }
+                                } catch (Exception e) {
+                                    if (!cancelled) {
+                                        failure = e;
+                                    }
+                                }
+                            }
+                        }
+                    }, "model-download-" + w);
+                    workers.add(worker);
+                    worker.start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void fetchChunkWithRetry(Journal journal, int chunk, FileChannel channel) throws Exception {
+            Exception last = null;
+            for (int attempt = 0; attempt <= maxRetries && !cancelled; attempt++) {
+                try {
+                    fetchChunk(journal, chunk, channel);
+                    return;
+                } catch (Exception e) {
+                    last = e;
+                    Log.w(TAG, "块 " + chunk + " 下载失败（第 " + (attempt + 1) + " 次）: " + e.getMessage());
+                }
+            }
+            throw last != null ? last : new Exception("下载已取消");
+        }
+
+        /**
+         * 下载一块并按位置写入；失败时整块重下，已计入的进度回退
+         */
+        private void fetchChunk(Journal journal, int chunk, FileChannel channel) throws Exception {
+            long start = chunk * journal.chunkSize;
+            long length = getChunkLength(journal, chunk);
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=" + start + "-" + (start + length - 1))
+                    .build();
+
+            long written = 0;
+            try (Response response = execute(request)) {
+                if (response.code() != 206 || response.body() == null) {
+                    throw new Exception("分段请求失败: HTTP " + response.code());
+                }
+                InputStream input = response.body().byteStream();
+                byte[] bytes = new byte[BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                int read;
+                while (written < length && (read = input.read(bytes, 0, (int) Math.min(bytes.length, length - written))) != -1) {
+                    buffer.limit(read).position(0);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, start + written + buffer.position());
+                    }
+                    written += read;
+                    downloaded.addAndGet(read);
+                    reportProgress();
+                }
+            } catch (Exception e) {
+                downloaded.addAndGet(-written);
+                throw e;
+            }
+            if (written != length) {
+                downloaded.addAndGet(-written);
+                throw new Exception("分段数据不完整: " + written + "/" + length);
+            }
+            // 日志标记完成前先落盘，避免断电后把未写入的块当成已完成
+            channel.force(false);
+        }
+
+        private void downloadWhole(File partFile) throws Exception {
+            Request request = new Request.Builder().url(url).build();
+            try (Response response = execute(request);
+                 FileOutputStream output = new FileOutputStream(partFile)) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new Exception("HTTP " + response.code());
+                }
+                InputStream input = response.body().byteStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while (!cancelled && (read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                    downloaded.addAndGet(read);
+                    reportProgress();
+                }
+            }
+        }
+
+        private Response execute(Request request) throws Exception {
+            Call call = httpClient.newCall(request);
+            synchronized (activeCalls) {
+                if (cancelled) {
+                    throw new Exception("下载已取消");
+                }
+                activeCalls.add(call);
+            }
+            try {
+                return call.execute();
+            } finally {
+                synchronized (activeCalls) {
+                    activeCalls.remove(call);
+                }
+            }
+        }
+
+        private void reportProgress() {
+            if (total <= 0) {
+                return;
+            }
+            int percent = (int) (downloaded.get() * 100 / total);
+            synchronized (this) {
+                if (percent == lastPercent) {
+                    return;
+                }
+                lastPercent = percent;
+            }
+            listener.onProgress(downloaded.get(), total);
+        }
+    }
+
+    private static long getChunkLength(Journal journal, int chunk) {
+        long start = chunk * journal.chunkSize;
+        return Math.min(journal.chunkSize, journal.length - start);
+    }
+
+    private Journal loadJournal(File journalFile) {
+        if (!journalFile.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Journal.class);
+        } catch (Exception e) {
+            Log.w(TAG, "读取下载日志失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveJournal(Journal journal, File journalFile) throws Exception {
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(journal, writer);
+        }
+        if (!tmp.renameTo(journalFile)) {
+            throw new Exception("无法写入下载日志: " + journalFile.getName());
+        }
+    }
+
+    private static String computeSha256(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class RemoteInfo {
+        long length = -1;
+        boolean acceptRanges;
+        String etag;
+    }
+
+    /**
+     * 续传日志
+     */
+    private static class Journal {
+        String url;
+        String etag;
+        long length;
+        long chunkSize;
+        boolean[] done;
+    }
+
+    /**
+     * 下载回调（在下载线程调用）
+     */
+    public interface DownloadListener {
+        void onProgress(long downloaded, long total);
+        void onComplete(AIModelManager.ModelInfo model);
+        void onError(String error);
+    }
+}
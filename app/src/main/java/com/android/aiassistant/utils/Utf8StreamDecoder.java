@@ -0,0 +1,74 @@
+package com.android.aiassistant.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 增量 UTF-8 解码器
+ * 按任意边界喂入字节，只输出已经完整的字符；被读取边界截断的多字节字符（如中文）
+ * 保留到下一次 decode，保证字符既不会被拆开也不会丢失
+ */
+public class Utf8StreamDecoder {
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // 写模式，存放尚未解码的字节（最多是上一次剩下的半个字符）
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private final CharBuffer chars = CharBuffer.allocate(4096);
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * 解码一段字节，返回其中已完整的字符（可能为空字符串）
+     */
+    public String decode(byte[] bytes, int offset, int length) {
+        if (pending.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.position() + Math.max(length, pending.capacity()));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put(bytes, offset, length);
+        pending.flip();
+        output.setLength(0);
+        drain(false);
+        pending.compact();
+        return output.toString();
+    }
+
+    /**
+     * 流结束时调用，输出剩余内容；残缺的尾部字节以替换字符输出
+     */
+    public String finish() {
+        pending.flip();
+        output.setLength(0);
+        drain(true);
+        CoderResult result;
+        do {
+            result = decoder.flush(chars);
+            copyChars();
+        } while (result.isOverflow());
+        pending.clear();
+        decoder.reset();
+        return output.toString();
+    }
+
+    private void drain(boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(pending, chars, endOfInput);
+            copyChars();
+        } while (result.isOverflow());
+    }
+
+    private void copyChars() {
+        chars.flip();
+        output.append(chars);
+        chars.clear();
+    }
+}
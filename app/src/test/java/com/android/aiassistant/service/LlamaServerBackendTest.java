@@ -0,0 +1,172 @@
+package com.android.aiassistant.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * LlamaServerBackend 的 HTTP 协议解析和崩溃重启策略，用 MockWebServer 代替 llama.cpp server
+ */
+public class LlamaServerBackendTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start(InetAddress.getByName("127.0.0.1"), 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private LlamaServerBackend attach() {
+        return LlamaServerBackend.attach("127.0.0.1", server.getPort());
+    }
+
+    @Test
+    public void completePostsBodyAndReturnsResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"content\":\"你好\",\"timings\":{\"predicted_n\":2}}"));
+
+        JsonObject body = new JsonObject();
+        body.addProperty("prompt", "hi");
+        body.addProperty("n_predict", 8);
+        JsonObject response = attach().complete(body);
+
+        assertEquals("你好", response.get("content").getAsString());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("/completion", request.getPath());
+        assertTrue(request.getBody().readUtf8().contains("\"n_predict\":8"));
+    }
+
+    @Test
+    public void errorStatusIsReported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("slot unavailable"));
+        try {
+            attach().complete(new JsonObject());
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("500"));
+        }
+    }
+
+    @Test
+    public void streamCompletionDeliversDeltasUntilStop() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "data: {\"content\":\"Hel\",\"stop\":false}\n\n"
+                        + "data: {\"content\":\"lo\",\"stop\":false}\n\n"
+                        + "data: {\"content\":\"\",\"stop\":true,\"timings\":{\"predicted_n\":2}}\n\n"
+                        + "data: {\"content\":\"ignored\"}\n\n"));
+
+        StringBuilder text = new StringBuilder();
+        JsonObject last = attach().streamCompletion(new JsonObject(), content -> {
+            text.append(content);
+            return true;
+        });
+
+        assertEquals("Hello", text.toString());
+        assertTrue(last.get("stop").getAsBoolean());
+        assertTrue(last.has("timings"));
+        assertTrue(server.takeRequest().getBody().readUtf8().contains("\"stream\":true"));
+    }
+
+    @Test
+    public void streamCompletionStopsWhenListenerDeclines() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "data: {\"content\":\"a\"}\n\ndata: {\"content\":\"b\"}\n\ndata: {\"stop\":true}\n\n"));
+
+        StringBuilder text = new StringBuilder();
+        attach().streamCompletion(new JsonObject(), content -> {
+            text.append(content);
+            return false;
+        });
+
+        assertEquals("a", text.toString());
+    }
+
+    @Test
+    public void embedAcceptsOldAndNewResponseShapes() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"embedding\":[0.5,-1.0]}"));
+        server.enqueue(new MockResponse().setBody("[{\"index\":0,\"embedding\":[[0.25,2.0,3.0]]}]"));
+
+        LlamaServerBackend backend = attach();
+        float[] old = backend.embed("a");
+        float[] pooled = backend.embed("b");
+
+        assertEquals(2, old.length);
+        assertEquals(-1.0f, old[1], 0f);
+        assertEquals(3, pooled.length);
+        assertEquals(0.25f, pooled[0], 0f);
+    }
+
+    @Test
+    public void countTokensUsesTokenizeEndpoint() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"tokens\":[1,2,3,4]}"));
+
+        assertEquals(4, attach().countTokens("four tokens here"));
+        assertEquals("/tokenize", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void restartsAreLimitedPerWindow() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("{\"status\":\"ok\"}");
+            }
+        });
+        // 立即退出的“server”：每次 ensureRunning 都会发现进程已崩溃
+        File script = temp.newFile("fake-server.sh");
+        try (FileOutputStream out = new FileOutputStream(script)) {
+            out.write("#!/bin/sh\nexit 1\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(script.setExecutable(true));
+
+        LlamaServerBackend backend = new LlamaServerBackend(script.getAbsolutePath(),
+                temp.newFile("model.gguf").getAbsolutePath(), server.getPort(), null, null);
+        backend.setMaxRestarts(2);
+        backend.setRestartWindowMs(1500);
+        backend.start();
+
+        crashThenEnsureRunning(backend);
+        crashThenEnsureRunning(backend);
+        try {
+            crashThenEnsureRunning(backend);
+            fail("窗口内第 3 次重启应当放弃");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("重启次数过多"));
+        }
+
+        // 窗口过去后计数清零，可以再次重启
+        Thread.sleep(1600);
+        crashThenEnsureRunning(backend);
+        backend.shutdown();
+    }
+
+    private static void crashThenEnsureRunning(LlamaServerBackend backend) throws Exception {
+        // 等脚本退出
+        Thread.sleep(200);
+        backend.ensureRunning();
+    }
+}
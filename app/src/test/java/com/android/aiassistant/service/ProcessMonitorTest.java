@@ -0,0 +1,268 @@
+package com.android.aiassistant.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ProcessMonitor 解析测试用的 /proc 目录
+ */
+public class ProcessMonitorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File proc;
+
+    @Before
+    public void setUp() throws Exception {
+        proc = temp.newFolder("proc");
+        writeCpu(1000);
+        writeProcess(1, "init", 0, 10, 5, 1, 100, 20000000, 50, "5000 300 200 0 0 0 0", "/system/bin/init\0");
+        writeProcess(2, "kthreadd", 0, 0, 0, 1, 101, 0, 0, "0 0 0 0 0 0 0", "");
+        writeProcess(812, "llama-server", 1, 100, 20, 8, 5000, 900000000, 1000,
+                "220000 150000 4000 0 0 0 0", "/data/local/tmp/llama-server\0-m\0model.gguf\0");
+        // 进程名里带空格和括号
+        writeProcess(900, "a (b) c", 1, 1, 1, 2, 6000, 1000, 10, "", "");
+        // 非进程目录
+        write(new File(proc, "self/stat"), "ignored");
+    }
+
+    private void writeCpu(long total) throws Exception {
+        // 汇总行 + 两个核心
+        write(new File(proc, "stat"), "cpu  " + total + " 0 0 0 0 0 0 0 0 0\n"
+                + "cpu0 " + total / 2 + " 0 0 0 0 0 0 0 0 0\n"
+                + "cpu1 " + total / 2 + " 0 0 0 0 0 0 0 0 0\n"
+                + "intr 12345\n");
+    }
+
+    private void writeProcess(int pid, String name, int ppid, long utime, long stime, int threads,
+                              long startTime, long vsize, long rssPages, String statm, String cmdline)
+            throws Exception {
+        File directory = new File(proc, String.valueOf(pid));
+        write(new File(directory, "stat"), pid + " (" + name + ") S " + ppid
+                + " 0 0 0 -1 4194560 100 0 0 0 " + utime + " " + stime + " 0 0 20 0 " + threads
+                + " 0 " + startTime + " " + vsize + " " + rssPages + " 18446744073709551615\n");
+        if (!statm.isEmpty()) {
+            write(new File(directory, "statm"), statm + "\n");
+        }
+        write(new File(directory, "cmdline"), cmdline);
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ProcessMonitor.ProcessInfo find(List<ProcessMonitor.ProcessInfo> processes, int pid) {
+        for (ProcessMonitor.ProcessInfo info : processes) {
+            if (info.pid == pid) {
+                return info;
+            }
+        }
+        fail("没有进程 " + pid);
+        return null;
+    }
+
+    @Test
+    public void parsesStatStatmAndCmdline() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        assertEquals(4, monitor.sample());
+
+        List<ProcessMonitor.ProcessInfo> processes = monitor.getProcesses();
+        assertEquals(1, processes.get(0).pid);
+        assertEquals(900, processes.get(3).pid);
+
+        ProcessMonitor.ProcessInfo server = find(processes, 812);
+        assertEquals("llama-server", server.name);
+        assertEquals(1, server.ppid);
+        assertEquals('S', server.state);
+        assertEquals(8, server.threads);
+        assertEquals(100, server.utime);
+        assertEquals(20, server.stime);
+        assertEquals(5000, server.startTime);
+        assertEquals(900000000L, server.vsizeBytes);
+        // statm 的 resident 优先于 stat 的 rss
+        assertEquals(150000L * 4096, server.rssBytes);
+        assertEquals(4000L * 4096, server.sharedBytes);
+        assertEquals("/data/local/tmp/llama-server -m model.gguf", server.cmdline);
+        assertEquals("/data/local/tmp/llama-server", server.getProgram());
+        // 第一次采样没有基准
+        assertEquals(0, server.cpuPercent, 0);
+
+        assertEquals("[kthreadd]", find(processes, 2).getDisplayName());
+
+        ProcessMonitor.ProcessInfo odd = find(processes, 900);
+        assertEquals("a (b) c", odd.name);
+        assertEquals(2, odd.threads);
+        // 没有 statm 时用 stat 的 rss 页数
+        assertEquals(10L * 4096, odd.rssBytes);
+    }
+
+    @Test
+    public void pageSizeScalesMemory() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.setPageSize(16384);
+        monitor.sample();
+
+        assertEquals(300L * 16384, find(monitor.getProcesses(), 1).rssBytes);
+    }
+
+    @Test
+    public void secondSampleComputesCpuAndRssDeltas() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.sample();
+        ProcessMonitor.ProcessInfo before = find(monitor.getProcesses(), 812);
+
+        // 总 CPU 时间增加 200 jiffies（2 核），llama-server 用了 100，即一个核心跑满
+        writeCpu(1200);
+        writeProcess(812, "llama-server", 1, 180, 40, 8, 5000, 900000000, 1000,
+                "220000 152000 4000 0 0 0 0", "ignored on reuse");
+        monitor.sample();
+
+        ProcessMonitor.ProcessInfo server = find(monitor.getProcesses(), 812);
+        assertSame("同一进程的记录应复用", before, server);
+        assertEquals(100.0, server.cpuPercent, 0.001);
+        assertEquals(2000L * 4096, server.rssDeltaBytes);
+        assertEquals("/data/local/tmp/llama-server -m model.gguf", server.cmdline);
+        assertEquals(0, find(monitor.getProcesses(), 1).cpuPercent, 0);
+        assertEquals(2, monitor.getSampleCount());
+    }
+
+    @Test
+    public void reusedPidWithNewStartTimeIsANewProcess() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.sample();
+
+        writeCpu(1200);
+        writeProcess(812, "sh", 1, 500, 0, 1, 7000, 1000, 10, "100 20 10 0 0 0 0", "/system/bin/sh\0");
+        monitor.sample();
+
+        ProcessMonitor.ProcessInfo info = find(monitor.getProcesses(), 812);
+        assertEquals("sh", info.name);
+        assertEquals("/system/bin/sh", info.cmdline);
+        assertEquals(0, info.cpuPercent, 0);
+        assertEquals(0, info.rssDeltaBytes);
+    }
+
+    @Test
+    public void exitedProcessIsDroppedAndItsRecordRecycled() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.sample();
+        ProcessMonitor.ProcessInfo exited = find(monitor.getProcesses(), 900);
+
+        deleteRecursively(new File(proc, "900"));
+        assertEquals(3, monitor.sample());
+
+        writeProcess(1234, "new", 1, 0, 0, 1, 8000, 0, 0, "", "");
+        assertEquals(4, monitor.sample());
+        ProcessMonitor.ProcessInfo created = find(monitor.getProcesses(), 1234);
+        assertSame(exited, created);
+        assertEquals("new", created.name);
+        assertEquals("", created.cmdline);
+    }
+
+    @Test
+    public void topAndSearch() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.sample();
+        writeCpu(1200);
+        writeProcess(1, "init", 0, 30, 5, 1, 100, 20000000, 50, "5000 300 200 0 0 0 0", "");
+        writeProcess(812, "llama-server", 1, 150, 20, 8, 5000, 900000000, 1000,
+                "220000 150000 4000 0 0 0 0", "");
+        monitor.sample();
+
+        List<ProcessMonitor.ProcessInfo> byCpu = monitor.getTop(ProcessMonitor.SortBy.CPU, 2);
+        assertEquals(2, byCpu.size());
+        assertEquals(812, byCpu.get(0).pid);
+        assertEquals(1, byCpu.get(1).pid);
+        assertEquals(812, monitor.getTop(ProcessMonitor.SortBy.MEMORY, 1).get(0).pid);
+
+        // 命令行第一个参数去掉路径后匹配，进程名也可以匹配
+        assertEquals(812, monitor.findByName("llama-server").get(0).pid);
+        assertEquals(1, monitor.findByName("init").size());
+        assertEquals(2, monitor.findByName("kthreadd").get(0).pid);
+        assertTrue(monitor.findByName("server").isEmpty());
+        assertEquals(812, monitor.findMatching(Pattern.compile("-m model\\.gguf")).get(0).pid);
+        assertEquals(2, monitor.findMatching(Pattern.compile("^\\[kthreadd\\]$")).get(0).pid);
+    }
+
+    @Test
+    public void copyIsDetachedFromLaterSamples() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+        monitor.sample();
+        ProcessMonitor.ProcessInfo live = find(monitor.getProcesses(), 812);
+        ProcessMonitor.ProcessInfo copy = live.copy();
+
+        writeProcess(812, "llama-server", 1, 900, 20, 8, 5000, 900000000, 1000,
+                "220000 150000 4000 0 0 0 0", "");
+        monitor.sample();
+
+        assertNotSame(live, copy);
+        assertEquals(900, live.utime);
+        assertEquals(100, copy.utime);
+    }
+
+    @Test
+    public void killWithoutRootServiceIsRejected() throws Exception {
+        ProcessMonitor monitor = new ProcessMonitor(proc, null);
+
+        assertTrue(monitor.killByName("missing", false).isEmpty());
+        try {
+            monitor.killByName("llama-server", false);
+            fail();
+        } catch (Exception e) {
+            assertEquals("结束进程需要 root 服务", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rootSamplingMatchesDirectReads() throws Exception {
+        ProcessMonitor direct = new ProcessMonitor(proc, null);
+        ProcessMonitor rooted = new ProcessMonitor(proc, new RootShellService(null, "/bin/sh"));
+        direct.sample();
+        rooted.sample();
+        writeCpu(1200);
+        writeProcess(812, "llama-server", 1, 180, 40, 8, 5000, 900000000, 1000,
+                "220000 152000 4000 0 0 0 0", "");
+        assertEquals(direct.sample(), rooted.sample());
+
+        List<ProcessMonitor.ProcessInfo> expected = direct.getProcesses();
+        List<ProcessMonitor.ProcessInfo> actual = rooted.getProcesses();
+        for (int i = 0; i < expected.size(); i++) {
+            ProcessMonitor.ProcessInfo a = expected.get(i);
+            ProcessMonitor.ProcessInfo b = actual.get(i);
+            assertEquals(a.pid, b.pid);
+            assertEquals(a.name, b.name);
+            assertEquals(a.cmdline, b.cmdline);
+            assertEquals(a.rssBytes, b.rssBytes);
+            assertEquals(a.rssDeltaBytes, b.rssDeltaBytes);
+            assertEquals(a.cpuPercent, b.cpuPercent, 0.001);
+        }
+        assertEquals(100.0, find(actual, 812).cpuPercent, 0.001);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,88 @@
+package com.android.aiassistant.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ResponseCache 的结果规范化和模型标识
+ */
+public class ResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ResponseCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ResponseCache(temp.newFolder("responses"), 8, 1024 * 1024);
+    }
+
+    @Test
+    public void storedValueDoesNotDependOnEntryPoint() throws Exception {
+        // 流式入口通过 claim 写入未裁剪的输出，非流式入口通过 getOrCompute 写入
+        ResponseCache.Claim claim = cache.claim("streamed");
+        assertTrue(claim.isOwner());
+        assertEquals("答案", claim.complete(" 答案\n"));
+        assertEquals("答案", cache.getOrCompute("plain", () -> "答案\n\n"));
+
+        assertEquals("答案", cache.get("streamed"));
+        assertEquals("答案", cache.get("plain"));
+        assertEquals("答案", cache.claim("streamed").await());
+
+        // 重新从磁盘读取也一致
+        ResponseCache reopened = new ResponseCache(new File(temp.getRoot(), "responses"), 8, 1024 * 1024);
+        assertEquals("答案", reopened.get("streamed"));
+    }
+
+    @Test
+    public void waitersReceiveTheNormalizedValue() throws Exception {
+        ResponseCache.Claim owner = cache.claim("k");
+        ResponseCache.Claim waiter = cache.claim("k");
+        assertFalse(waiter.isOwner());
+
+        owner.complete("结果 \n");
+
+        assertEquals("结果", waiter.await());
+    }
+
+    @Test
+    public void fullContentHashSeparatesFilesSampledAlike() throws Exception {
+        // 两个文件长度、头尾 64KB 都相同，只有中间不同
+        File a = model("a.gguf", (byte) 1);
+        File b = model("b.gguf", (byte) 2);
+        assertEquals("采样标识无法区分", key(a), key(b));
+
+        Map<String, String> hashes = new HashMap<>();
+        hashes.put(a.getPath(), "aaaa");
+        hashes.put(b.getPath(), "bbbb");
+        cache.setModelHashProvider(hashes::get);
+
+        assertNotEquals(key(a), key(b));
+    }
+
+    private String key(File model) throws Exception {
+        return cache.buildKey(model.getPath(), "prompt", 0f, 0.9f, 42, 128, 2048);
+    }
+
+    private File model(String name, byte middle) throws Exception {
+        File file = temp.newFile(name);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(256 * 1024);
+            raf.seek(128 * 1024);
+            raf.write(middle);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,112 @@
+package com.android.aiassistant.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * RootCommandStream 的分发和取消，用 /bin/sh 代替 su
+ */
+public class RootCommandStreamTest {
+
+    private static final String[] SHELL = {"/bin/sh"};
+
+    @Test
+    public void linesAndExitCodeAreDelivered() throws Exception {
+        Collector collector = new Collector(null);
+        RootCommandStream stream = RootCommandStream.start(SHELL, null,
+                "echo one; echo err >&2; printf 'two\\nthree'; exit 3", true, collector);
+
+        assertEquals(3, stream.await());
+        assertTrue(collector.exited.await(1, TimeUnit.SECONDS));
+        assertEquals(3, collector.exitCode);
+        assertEquals(3, collector.stdout.size());
+        assertEquals("one", collector.stdout.get(0));
+        assertEquals("three", collector.stdout.get(2));
+        assertEquals(Collections.singletonList("err"), collector.stderr);
+    }
+
+    @Test
+    public void cancelAfterExitWithQueuedBacklogStillFinishes() throws Exception {
+        // 命令已经退出、两路的结束标记都已入队，监听器还卡在第一块上时取消
+        CountDownLatch release = new CountDownLatch(1);
+        Collector collector = new Collector(release);
+        RootCommandStream stream = RootCommandStream.start(SHELL, null,
+                "i=0; while [ $i -lt 20 ]; do echo line$i; i=$((i+1)); done; echo bye >&2", true, collector);
+
+        assertTrue(collector.firstChunk.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        stream.cancel();
+        release.countDown();
+
+        assertTrue("取消后分发线程没有结束", stream.await(5000));
+        assertEquals(-1, stream.await());
+        assertTrue(collector.exited.await(1, TimeUnit.SECONDS));
+        assertEquals(-1, collector.exitCode);
+        // 取消之后排队的输出不再分发
+        assertEquals(1, collector.stdout.size());
+    }
+
+    @Test
+    public void cancelKillsRemoteProcessTree() throws Exception {
+        // 只销毁本地进程时 sleep 仍持有管道，需要经会话池按 pid 结束
+        RootShellPool pool = new RootShellPool(1, SHELL);
+        try {
+            Collector collector = new Collector(null);
+            RootCommandStream stream = RootCommandStream.start(SHELL, pool, "echo start; sleep 20 | cat", true,
+                    collector);
+
+            assertTrue(collector.firstChunk.await(5, TimeUnit.SECONDS));
+            stream.cancel();
+
+            assertTrue(stream.await(5000));
+            assertTrue(stream.isCancelled());
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static class Collector implements RootCommandStream.StreamListener {
+        final List<String> stdout = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> stderr = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch firstChunk = new CountDownLatch(1);
+        final CountDownLatch exited = new CountDownLatch(1);
+        // 非 null 时第一块输出阻塞到放行，模拟处理不过来的监听器
+        private final CountDownLatch release;
+        volatile int exitCode = Integer.MIN_VALUE;
+
+        Collector(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onStdout(String text) {
+            stdout.add(text);
+            firstChunk.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onStderr(String text) {
+            stderr.add(text);
+        }
+
+        @Override
+        public void onExit(int exitCode) {
+            this.exitCode = exitCode;
+            exited.countDown();
+        }
+    }
+}
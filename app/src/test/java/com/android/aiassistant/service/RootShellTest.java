@@ -0,0 +1,137 @@
+package com.android.aiassistant.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * RootShell 的分帧、退出码和超时重启，用 /bin/sh 代替 su
+ */
+public class RootShellTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private RootShell shell;
+
+    @Before
+    public void setUp() {
+        shell = new RootShell("/bin/sh");
+    }
+
+    @After
+    public void tearDown() {
+        shell.close();
+    }
+
+    private RootShellService.CommandResult run(String command) {
+        return shell.execute(command, TIMEOUT_MS);
+    }
+
+    @Test
+    public void outputIsFramedPerCommand() {
+        RootShellService.CommandResult first = run("echo hello; echo world");
+        RootShellService.CommandResult second = run("echo again");
+
+        assertEquals("hello\nworld\n", first.output);
+        assertEquals("", first.error);
+        assertEquals(0, first.exitCode);
+        assertTrue(first.success);
+        assertEquals("again\n", second.output);
+    }
+
+    @Test
+    public void outputIsReturnedExactlyAsPrinted() {
+        // 标记前的额外换行不计入输出，命令自身有没有结尾换行都原样保留
+        assertEquals("abc", run("printf abc").output);
+        assertEquals("a\n\n", run("printf 'a\\n\\n'").output);
+        assertEquals("x\ny", run("printf 'x\\r\\ny'").output);
+        assertEquals("", run("true").output);
+        assertEquals("", run("   ").output);
+    }
+
+    @Test
+    public void exitCodesArePropagated() {
+        RootShellService.CommandResult failed = run("false");
+        RootShellService.CommandResult custom = run("sh -c 'exit 42'");
+
+        assertEquals(1, failed.exitCode);
+        assertFalse(failed.success);
+        assertEquals(42, custom.exitCode);
+        assertTrue(run("true").success);
+    }
+
+    @Test
+    public void stderrIsSeparatedFromStdout() {
+        RootShellService.CommandResult result = run("echo out; echo err >&2; echo out2; printf tail >&2");
+
+        assertEquals("out\nout2\n", result.output);
+        assertEquals("err\ntail", result.error);
+        assertEquals(0, result.exitCode);
+    }
+
+    @Test
+    public void largeOutputOnBothStreamsDoesNotBlock() {
+        RootShellService.CommandResult result = run("seq 1 50000 >&2; seq 1 50000");
+
+        assertEquals(0, result.exitCode);
+        assertEquals(50000, result.output.split("\n").length);
+        assertEquals(50000, result.error.split("\n").length);
+        assertTrue(result.output.endsWith("\n50000\n"));
+    }
+
+    @Test
+    public void commandsDoNotReadTheSessionInput() {
+        // stdin 被重定向到 /dev/null，cat 立即结束，不会吞掉后面的命令
+        assertEquals("", run("cat").output);
+        assertEquals("next\n", run("echo next").output);
+    }
+
+    @Test
+    public void sessionStatePersistsAndResetRestoresDirectory() {
+        String home = run("pwd").output;
+        run("cd /; shell_var=kept");
+
+        assertEquals("/\n", run("pwd").output);
+        assertEquals("kept\n", run("echo $shell_var").output);
+
+        assertTrue(shell.reset(TIMEOUT_MS));
+        assertEquals(home, run("pwd").output);
+    }
+
+    @Test
+    public void resetFailsWhenExportedEnvironmentChanged() {
+        run("export RSH_TEST=1");
+
+        assertFalse(shell.reset(TIMEOUT_MS));
+    }
+
+    @Test
+    public void timeoutDestroysSessionAndNextCommandRestarts() {
+        RootShellService.CommandResult timedOut = shell.execute("echo started; sleep 10", 500);
+
+        assertEquals(-1, timedOut.exitCode);
+        assertTrue(timedOut.error, timedOut.error.startsWith("命令超时"));
+        // 超时前已输出的部分仍然返回
+        assertTrue(timedOut.output, timedOut.output.startsWith("started"));
+        assertFalse(shell.isAlive());
+
+        RootShellService.CommandResult next = run("echo ok");
+        assertEquals("ok\n", next.output);
+        assertTrue(shell.getStats(), shell.getStats().contains("超时 1"));
+        assertTrue(shell.getStats(), shell.getStats().contains("重启 1"));
+    }
+
+    @Test
+    public void shellExitIsReportedAndRecovered() {
+        RootShellService.CommandResult exited = run("exit 0");
+
+        assertEquals(-1, exited.exitCode);
+        assertEquals("Root shell 已退出", exited.error);
+        assertEquals("back\n", run("echo back").output);
+        assertTrue(shell.getStats(), shell.getStats().contains("重启 1"));
+    }
+}
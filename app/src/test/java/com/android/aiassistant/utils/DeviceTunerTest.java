@@ -0,0 +1,191 @@
+package com.android.aiassistant.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * DeviceTuner 的估算和校准，sysfs / proc 指向临时目录里的样例文件
+ */
+public class DeviceTunerTest {
+
+    private static final long MB = 1024L * 1024;
+    private static final long GB = 1024 * MB;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File cpuRoot;
+    private File procRoot;
+    private File profileDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cpuRoot = temp.newFolder("cpu");
+        procRoot = temp.newFolder("proc");
+        profileDirectory = new File(temp.getRoot(), "profiles");
+    }
+
+    private void writeCores(long... maxFreqs) throws Exception {
+        for (int cpu = 0; cpu < maxFreqs.length; cpu++) {
+            write(new File(cpuRoot, "cpu" + cpu + "/cpufreq/cpuinfo_max_freq"), maxFreqs[cpu] + "\n");
+        }
+    }
+
+    private void writeMemInfo(long availableBytes) throws Exception {
+        write(new File(procRoot, "meminfo"), "MemTotal:       " + (12 * GB / 1024) + " kB\n"
+                + "MemFree:          123456 kB\n"
+                + "MemAvailable:    " + (availableBytes / 1024) + " kB\n");
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 非 GGUF 的占位文件，文件头字段直接赋值：每个 token 的 KV 占用 2*32*8*128*2 = 128KB
+     */
+    private AIModelManager.ModelInfo model(String name, long size, int contextLength) throws Exception {
+        AIModelManager.ModelInfo model = new AIModelManager.ModelInfo(temp.newFile(name));
+        model.size = size;
+        model.contextLength = contextLength;
+        model.blockCount = 32;
+        model.embeddingLength = 4096;
+        model.headCount = 32;
+        model.headCountKv = 8;
+        return model;
+    }
+
+    private DeviceTuner tuner() {
+        return new DeviceTuner(cpuRoot, procRoot, profileDirectory);
+    }
+
+    @Test
+    public void bigCoresSelectThreadsAndMask() throws Exception {
+        // 4 小核 + 3 中核 + 1 超大核：中核达到最快核心的 70%，算作大核
+        writeCores(1800000, 1800000, 1800000, 1800000, 2400000, 2400000, 2400000, 3000000);
+        writeMemInfo(4 * GB);
+
+        DeviceTuner.TuningProfile profile = tuner().estimate(model("a.gguf", GB, 4096));
+
+        assertEquals(4, profile.threads);
+        assertEquals(0xF0L, profile.cpuMask);
+        assertEquals(256, profile.batchSize);
+        // KV 空间充足，受模型训练上下文限制
+        assertEquals(4096, profile.contextLength);
+        assertEquals(4 * GB, profile.availableMemory);
+    }
+
+    @Test
+    public void uniformCoresAreNotPinned() throws Exception {
+        writeCores(2000000, 2000000, 2000000, 2000000);
+        writeMemInfo(8 * GB);
+
+        DeviceTuner.TuningProfile profile = tuner().estimate(model("a.gguf", GB, 32768));
+
+        assertEquals(4, profile.threads);
+        assertEquals(0, profile.cpuMask);
+        assertEquals(512, profile.batchSize);
+        assertEquals(8192, profile.contextLength);
+    }
+
+    @Test
+    public void contextShrinksWithAvailableMemory() throws Exception {
+        writeCores(2000000, 2000000);
+        // 除去 1GB 权重和 512MB 预留只剩 256MB，按每 token 128KB 可容纳 2048 个 token
+        writeMemInfo(GB + 768 * MB);
+
+        DeviceTuner.TuningProfile profile = tuner().estimate(model("a.gguf", GB, 32768));
+
+        assertEquals(128, profile.batchSize);
+        assertEquals(2048, profile.contextLength);
+    }
+
+    @Test
+    public void missingSysfsAndMeminfoFallBackToMinimum() throws Exception {
+        DeviceTuner.TuningProfile profile = tuner().estimate(model("a.gguf", GB, 4096));
+
+        assertEquals(1, profile.threads);
+        assertEquals(0, profile.cpuMask);
+        assertEquals(128, profile.batchSize);
+        assertEquals(512, profile.contextLength);
+    }
+
+    @Test
+    public void profileIsSavedAndReusedUntilModelChanges() throws Exception {
+        writeCores(2000000, 2000000);
+        writeMemInfo(4 * GB);
+        AIModelManager.ModelInfo model = model("saved.gguf", GB, 4096);
+
+        DeviceTuner.TuningProfile first = tuner().getProfile(model, null);
+        assertTrue(new File(profileDirectory, "saved.gguf.json").isFile());
+
+        // 硬件信息变了，但已保存的配置仍被沿用
+        writeMemInfo(8 * GB);
+        assertEquals(first.batchSize, tuner().getProfile(model, null).batchSize);
+
+        // 模型文件大小变了，重新估算
+        model.size = GB + 1;
+        assertEquals(512, tuner().getProfile(model, null).batchSize);
+    }
+
+    @Test
+    public void calibrationKeepsFastestCandidate() throws Exception {
+        writeCores(1000000, 1000000, 1000000, 1000000, 2000000, 2000000);
+        writeMemInfo(4 * GB);
+        AIModelManager.ModelInfo model = model("c.gguf", GB, 4096);
+        final List<Integer> measured = new ArrayList<>();
+
+        DeviceTuner.TuningProfile profile = tuner().getProfile(model, candidate -> {
+            measured.add(candidate.threads);
+            if (candidate.threads == 6) {
+                assertEquals(0, candidate.cpuMask);
+                return 9.5;
+            }
+            return candidate.threads;
+        });
+
+        // 候选：大核数、大核数 - 1、全部核心
+        assertEquals(Arrays.asList(2, 1, 6), measured);
+        assertEquals(6, profile.threads);
+        assertEquals(0, profile.cpuMask);
+        assertTrue(profile.calibrated);
+        assertEquals(9.5, profile.calibratedTokensPerSecond, 0);
+
+        // 已校准的配置不会再次校准
+        measured.clear();
+        tuner().getProfile(model, candidate -> {
+            measured.add(candidate.threads);
+            return 1;
+        });
+        assertTrue(measured.isEmpty());
+    }
+
+    @Test
+    public void failedCalibrationKeepsEstimate() throws Exception {
+        writeCores(1000000, 2000000);
+        writeMemInfo(4 * GB);
+
+        DeviceTuner.TuningProfile profile = tuner().getProfile(model("f.gguf", GB, 4096), candidate -> {
+            throw new Exception("进程启动失败");
+        });
+
+        assertEquals(1, profile.threads);
+        assertEquals(0x2L, profile.cpuMask);
+        assertFalse(profile.calibrated);
+    }
+}
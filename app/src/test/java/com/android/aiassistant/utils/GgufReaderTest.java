@@ -0,0 +1,283 @@
+package com.android.aiassistant.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * GgufReader 解析合成的小 GGUF 文件
+ */
+public class GgufReaderTest {
+
+    private static final int TYPE_UINT8 = 0;
+    private static final int TYPE_UINT32 = 4;
+    private static final int TYPE_INT32 = 5;
+    private static final int TYPE_FLOAT32 = 6;
+    private static final int TYPE_STRING = 8;
+    private static final int TYPE_ARRAY = 9;
+    private static final int TYPE_UINT64 = 10;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void readsLlamaStyleHeader() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(2).kvs(10);
+        gguf.key("general.architecture").string("llama");
+        gguf.key("general.name").string("Tiny Llama");
+        gguf.key("general.file_type").u32(15);
+        gguf.key("llama.context_length").u32(4096);
+        gguf.key("llama.embedding_length").u64(2048);
+        gguf.key("llama.block_count").u32(22);
+        gguf.key("llama.attention.head_count").u32(32);
+        // 按层给出的 KV 头数取第一层
+        gguf.key("llama.attention.head_count_kv").array(TYPE_INT32, 3).int32(4).int32(8).int32(8);
+        gguf.key("tokenizer.ggml.model").string("llama");
+        gguf.key("tokenizer.ggml.tokens").array(TYPE_STRING, 3).str("<s>").str("</s>").str("你好");
+        gguf.tensor("token_embd.weight", 2048, 3).tensor("output_norm.weight", 2048);
+
+        GgufReader.Header header = GgufReader.read(gguf.writeTo(temp.newFile()));
+
+        assertEquals(3, header.version);
+        assertEquals(2, header.tensorCount);
+        assertEquals("llama", header.architecture);
+        assertEquals("Tiny Llama", header.name);
+        assertEquals("Q4_K_M", header.getQuantization());
+        assertEquals(4096, header.contextLength);
+        assertEquals(2048, header.embeddingLength);
+        assertEquals(22, header.blockCount);
+        assertEquals(32, header.headCount);
+        assertEquals(4, header.headCountKv);
+        assertEquals("llama", header.tokenizerModel);
+        assertEquals(3, header.vocabSize);
+        assertEquals(2048 * 3 + 2048, header.parameterCount);
+        assertEquals(0, header.dataOffset % 32);
+        assertTrue(header.dataOffset >= gguf.size());
+        assertTrue(header.dataOffset < gguf.size() + 32);
+    }
+
+    @Test
+    public void skipsUnknownKeysAndOtherArchitectures() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(0).kvs(6);
+        gguf.key("general.architecture").string("qwen2");
+        gguf.key("llama.context_length").u32(999);
+        gguf.key("qwen2.rope.freq_base").f32(1000000f);
+        gguf.key("tokenizer.ggml.scores").array(TYPE_FLOAT32, 4).float32(0).float32(1).float32(2).float32(3);
+        gguf.key("tokenizer.ggml.merges").array(TYPE_STRING, 2).str("a b").str("c d");
+        gguf.key("qwen2.context_length").u32(32768);
+
+        GgufReader.Header header = GgufReader.read(gguf.writeTo(temp.newFile()));
+
+        assertEquals("qwen2", header.architecture);
+        assertEquals(32768, header.contextLength);
+        assertNull(header.name);
+        assertEquals(-1, header.fileType);
+        assertNull(header.getQuantization());
+    }
+
+    @Test
+    public void versionOneUsesThirtyTwoBitCounts() throws Exception {
+        Gguf gguf = new Gguf(1);
+        gguf.tensors(1).kvs(2);
+        gguf.key("general.architecture").string("gpt2");
+        gguf.key("gpt2.block_count").u32(12);
+        gguf.tensor("wte", 768, 100);
+
+        GgufReader.Header header = GgufReader.read(gguf.writeTo(temp.newFile()));
+
+        assertEquals(1, header.version);
+        assertEquals("gpt2", header.architecture);
+        assertEquals(12, header.blockCount);
+        assertEquals(76800, header.parameterCount);
+    }
+
+    @Test
+    public void honoursCustomAlignment() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(1).kvs(1);
+        gguf.key("general.alignment").u32(256);
+        gguf.tensor("w", 8);
+
+        GgufReader.Header header = GgufReader.read(gguf.writeTo(temp.newFile()));
+
+        assertEquals(256, header.dataOffset);
+    }
+
+    @Test
+    public void metadataLargerThanInitialWindowIsRemapped() throws Exception {
+        // 16MB 的初始窗口放不下这个数组，架构名在数组之前读到，重试时需要沿用
+        int length = 17 * 1024 * 1024;
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(0).kvs(3);
+        gguf.key("general.architecture").string("llama");
+        gguf.key("tokenizer.ggml.token_type").array(TYPE_UINT8, length).raw(new byte[length]);
+        gguf.key("llama.context_length").u32(2048);
+
+        GgufReader.Header header = GgufReader.read(gguf.writeTo(temp.newFile()));
+
+        assertEquals("llama", header.architecture);
+        assertEquals(2048, header.contextLength);
+    }
+
+    @Test
+    public void rejectsWrongMagic() throws Exception {
+        File file = temp.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("GGML not a gguf file".getBytes(StandardCharsets.US_ASCII));
+        }
+        expectFailure(file, "不是 GGUF 文件");
+    }
+
+    @Test
+    public void rejectsUnsupportedVersion() throws Exception {
+        Gguf gguf = new Gguf(7);
+        gguf.tensors(0).kvs(0);
+        expectFailure(gguf.writeTo(temp.newFile()), "不支持的 GGUF 版本");
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(0).kvs(2);
+        gguf.key("general.architecture").string("llama");
+        gguf.key("llama.context_length");
+        expectFailure(gguf.writeTo(temp.newFile()), "GGUF 文件不完整");
+    }
+
+    @Test
+    public void rejectsCorruptStringLength() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(0).kvs(1);
+        gguf.int64(Long.MAX_VALUE).raw("general.name".getBytes(StandardCharsets.UTF_8));
+        expectFailure(gguf.writeTo(temp.newFile()), "GGUF 格式错误");
+    }
+
+    @Test
+    public void rejectsCorruptArrayLength() throws Exception {
+        Gguf gguf = new Gguf(3);
+        gguf.tensors(0).kvs(1);
+        gguf.key("tokenizer.ggml.tokens").array(TYPE_STRING, 1L << 40);
+        expectFailure(gguf.writeTo(temp.newFile()), "GGUF 格式错误");
+    }
+
+    private static void expectFailure(File file, String message) {
+        try {
+            GgufReader.read(file);
+            fail("应当解析失败: " + message);
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    /**
+     * 按小端序拼出 GGUF 文件内容
+     */
+    private static class Gguf {
+        private final int version;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Gguf(int version) {
+            this.version = version;
+            int32(0x46554747).int32(version);
+        }
+
+        Gguf tensors(long count) {
+            return count(count);
+        }
+
+        Gguf kvs(long count) {
+            return count(count);
+        }
+
+        Gguf key(String key) {
+            return str(key);
+        }
+
+        Gguf string(String value) {
+            return int32(TYPE_STRING).str(value);
+        }
+
+        Gguf u32(int value) {
+            return int32(TYPE_UINT32).int32(value);
+        }
+
+        Gguf u64(long value) {
+            return int32(TYPE_UINT64).int64(value);
+        }
+
+        Gguf f32(float value) {
+            return int32(TYPE_FLOAT32).float32(value);
+        }
+
+        Gguf int32(int value) {
+            return put(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value));
+        }
+
+        Gguf int64(long value) {
+            return put(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value));
+        }
+
+        Gguf float32(float value) {
+            return put(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value));
+        }
+
+        /**
+         * 数组值的类型头，元素由调用方继续写入
+         */
+        Gguf array(int elementType, long count) {
+            return int32(TYPE_ARRAY).int32(elementType).count(count);
+        }
+
+        Gguf str(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            return count(bytes.length).raw(bytes);
+        }
+
+        Gguf tensor(String name, long... dims) {
+            str(name).int32(dims.length);
+            for (long dim : dims) {
+                count(dim);
+            }
+            // 类型 F32，数据偏移 0
+            return int32(0).int64(0);
+        }
+
+        Gguf raw(byte[] bytes) {
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        int size() {
+            return out.size();
+        }
+
+        File writeTo(File file) throws Exception {
+            try (FileOutputStream stream = new FileOutputStream(file)) {
+                out.writeTo(stream);
+            }
+            return file;
+        }
+
+        private Gguf count(long value) {
+            return version == 1 ? int32((int) value) : int64(value);
+        }
+
+        private Gguf put(ByteBuffer buffer) {
+            return raw(Arrays.copyOf(buffer.array(), buffer.capacity()));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.android.aiassistant.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ModelDownloader 的分块下载、续传和校验，用 MockWebServer 模拟支持 Range 的文件服务器
+ */
+public class ModelDownloaderTest {
+
+    private static final int CHUNK = 16 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private FileServer files;
+    private File modelsDirectory;
+    private ModelCatalog catalog;
+    private byte[] payload;
+
+    @Before
+    public void setUp() throws Exception {
+        // 不是整块的长度，最后一块较短
+        payload = new byte[6 * CHUNK + 1234];
+        new Random(42).nextBytes(payload);
+        files = new FileServer(payload);
+        server = new MockWebServer();
+        server.setDispatcher(files);
+        server.start();
+        modelsDirectory = temp.newFolder("models");
+        catalog = ModelCatalog.get(modelsDirectory, new File(temp.getRoot(), "index.json"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private ModelDownloader downloader(int connections, int maxRetries) {
+        ModelDownloader downloader = new ModelDownloader(modelsDirectory, catalog);
+        downloader.setConnections(connections);
+        downloader.setChunkSize(CHUNK);
+        downloader.setMaxRetries(maxRetries);
+        return downloader;
+    }
+
+    private Result download(ModelDownloader downloader, String expectedSha256) throws Exception {
+        Result result = new Result();
+        downloader.download(server.url("/model.gguf").toString(), "model.gguf", expectedSha256, result);
+        assertTrue("下载未结束", result.done.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private File target() {
+        return new File(modelsDirectory, "model.gguf");
+    }
+
+    @Test
+    public void parallelChunksAssembleVerifiedFile() throws Exception {
+        Result result = download(downloader(3, 0), sha256(payload));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(payload, Files.readAllBytes(target().toPath()));
+        assertFalse(new File(modelsDirectory, "model.gguf.part").exists());
+        assertFalse(new File(modelsDirectory, "model.gguf.part.json").exists());
+        assertEquals(sha256(payload), result.model.sha256);
+        assertNotNull(catalog.getByPath(target().getAbsolutePath()));
+        assertEquals(payload.length, result.maxDownloaded);
+        assertEquals(payload.length, result.total);
+        // 探测请求 + 7 个块
+        assertEquals(8, files.ranges.size());
+    }
+
+    @Test
+    public void interruptedDownloadResumesMissingChunksOnly() throws Exception {
+        // 单连接按顺序下载，第 4 块失败时前 3 块已经落盘
+        files.failStart = 3L * CHUNK;
+        files.failures.set(Integer.MAX_VALUE);
+        Result failed = download(downloader(1, 0), null);
+        assertNotNull(failed.error);
+        assertTrue(new File(modelsDirectory, "model.gguf.part.json").isFile());
+
+        files.failures.set(0);
+        files.ranges.clear();
+        Result resumed = download(downloader(2, 0), sha256(payload));
+
+        assertNull(resumed.error, resumed.error);
+        assertArrayEquals(payload, Files.readAllBytes(target().toPath()));
+        for (long start : files.ranges) {
+            assertTrue("已完成的块被重复下载: " + start, start == 0 || start >= 3L * CHUNK);
+        }
+        // 探测请求 + 剩余 4 块
+        assertEquals(5, files.ranges.size());
+    }
+
+    @Test
+    public void changedEtagRestartsFromScratch() throws Exception {
+        files.failStart = 3L * CHUNK;
+        files.failures.set(Integer.MAX_VALUE);
+        assertNotNull(download(downloader(1, 0), null).error);
+
+        files.failures.set(0);
+        files.etag = "\"v2\"";
+        files.ranges.clear();
+        Result result = download(downloader(1, 0), sha256(payload));
+
+        assertNull(result.error, result.error);
+        assertEquals(8, files.ranges.size());
+    }
+
+    @Test
+    public void failedChunkIsRetried() throws Exception {
+        files.failStart = CHUNK;
+        files.failures.set(2);
+
+        Result result = download(downloader(2, 2), sha256(payload));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(payload, Files.readAllBytes(target().toPath()));
+        // 两次失败 + 一次成功
+        assertEquals(3, Collections.frequency(files.ranges, (long) CHUNK));
+    }
+
+    @Test
+    public void shortChunkIsReportedAsIncomplete() throws Exception {
+        files.truncateStart = 2L * CHUNK;
+
+        Result result = download(downloader(1, 0), null);
+
+        assertNotNull(result.error);
+        assertTrue(result.error, result.error.contains("分段数据不完整"));
+        assertFalse(target().exists());
+    }
+
+    @Test
+    public void checksumMismatchDiscardsPartialFile() throws Exception {
+        Result result = download(downloader(2, 0), sha256(new byte[1]));
+
+        assertEquals("校验失败: SHA-256 不匹配", result.error);
+        assertFalse(target().exists());
+        assertFalse(new File(modelsDirectory, "model.gguf.part").exists());
+        assertFalse(new File(modelsDirectory, "model.gguf.part.json").exists());
+    }
+
+    @Test
+    public void serverWithoutRangeFallsBackToSingleRequest() throws Exception {
+        files.acceptRanges = false;
+
+        Result result = download(downloader(4, 0), sha256(payload));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(payload, Files.readAllBytes(target().toPath()));
+        // 探测请求 + 一次完整下载
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void existingModelIsNotOverwritten() throws Exception {
+        Files.write(target().toPath(), new byte[] {1, 2, 3});
+
+        Result result = download(downloader(2, 0), null);
+
+        assertTrue(result.error, result.error.startsWith("模型已存在"));
+        assertEquals(3, target().length());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 按 Range 返回 payload 片段；可让指定块失败或只返回一半数据
+     */
+    private static class FileServer extends Dispatcher {
+        private final byte[] payload;
+        // 收到的 Range 起始位置，不带 Range 的请求不记录
+        final List<Long> ranges = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger failures = new AtomicInteger();
+        volatile long failStart = -1;
+        volatile long truncateStart = -1;
+        volatile boolean acceptRanges = true;
+        volatile String etag = "\"v1\"";
+
+        FileServer(byte[] payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            Matcher matcher = range != null ? RANGE.matcher(range) : null;
+            if (!acceptRanges || matcher == null || !matcher.matches()) {
+                return new MockResponse().setHeader("ETag", etag).setBody(new Buffer().write(payload));
+            }
+            long start = Long.parseLong(matcher.group(1));
+            long end = Math.min(Long.parseLong(matcher.group(2)), payload.length - 1);
+            ranges.add(start);
+            if (start == failStart && failures.getAndDecrement() > 0) {
+                return new MockResponse().setResponseCode(503);
+            }
+            int length = (int) (end - start + 1);
+            if (start == truncateStart) {
+                length /= 2;
+            }
+            return new MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("ETag", etag)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + payload.length)
+                    .setBody(new Buffer().write(payload, (int) start, length));
+        }
+    }
+
+    private static class Result implements ModelDownloader.DownloadListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile AIModelManager.ModelInfo model;
+        volatile String error;
+        // 多个连接并发回调，只记录最大进度
+        long maxDownloaded;
+        long total;
+
+        @Override
+        public synchronized void onProgress(long downloaded, long total) {
+            maxDownloaded = Math.max(maxDownloaded, downloaded);
+            this.total = total;
+        }
+
+        @Override
+        public void onComplete(AIModelManager.ModelInfo model) {
+            this.model = model;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.android.aiassistant.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Utf8StreamDecoder：任意读取边界下多字节字符既不被拆开也不丢失
+ */
+public class Utf8StreamDecoderTest {
+
+    // 中文（3 字节）、emoji 和音乐符号（4 字节，代理对）、拉丁扩展（2 字节）
+    private static final String TEXT = "你好，世界 😀 café 𝄞 ok";
+
+    /**
+     * 合法文本中间夹着非法字节：孤立的延续字节、截断的序列、不可能出现的 0xFF、超长编码
+     */
+    private static byte[] mixedBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] text = TEXT.getBytes(StandardCharsets.UTF_8);
+        out.write(text, 0, text.length);
+        byte[] invalid = {(byte) 0x80, 'a', (byte) 0xE4, (byte) 0xBD, 'b', (byte) 0xFF, (byte) 0xC0, (byte) 0xAF,
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98};
+        out.write(invalid, 0, invalid.length);
+        byte[] tail = "结束".getBytes(StandardCharsets.UTF_8);
+        out.write(tail, 0, tail.length);
+        return out.toByteArray();
+    }
+
+    private static String decodeInPieces(byte[] bytes, int... cuts) {
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        StringBuilder joined = new StringBuilder();
+        int start = 0;
+        for (int cut : cuts) {
+            joined.append(decoder.decode(bytes, start, cut - start));
+            start = cut;
+        }
+        joined.append(decoder.decode(bytes, start, bytes.length - start));
+        joined.append(decoder.finish());
+        return joined.toString();
+    }
+
+    @Test
+    public void everySingleSplitMatchesWholeDecode() {
+        for (byte[] bytes : Arrays.asList(TEXT.getBytes(StandardCharsets.UTF_8), mixedBytes())) {
+            String expected = new String(bytes, StandardCharsets.UTF_8);
+            for (int cut = 0; cut <= bytes.length; cut++) {
+                assertEquals("切分位置 " + cut, expected, decodeInPieces(bytes, cut));
+            }
+        }
+    }
+
+    @Test
+    public void everyPairOfSplitsMatchesWholeDecode() {
+        byte[] bytes = mixedBytes();
+        String expected = new String(bytes, StandardCharsets.UTF_8);
+        for (int first = 0; first <= bytes.length; first++) {
+            for (int second = first; second <= bytes.length; second++) {
+                assertEquals("切分位置 " + first + "," + second, expected, decodeInPieces(bytes, first, second));
+            }
+        }
+    }
+
+    @Test
+    public void byteByByteNeverEmitsHalfCharacters() {
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            String delta = decoder.decode(bytes, i, 1);
+            // 每次输出都是完整字符：不含替换字符，也不以高代理项结尾
+            assertEquals(-1, delta.indexOf('\uFFFD'));
+            if (!delta.isEmpty()) {
+                assertFalse(Character.isHighSurrogate(delta.charAt(delta.length() - 1)));
+            }
+            joined.append(delta);
+        }
+        assertEquals("", decoder.finish());
+        assertEquals(TEXT, joined.toString());
+    }
+
+    @Test
+    public void finishFlushesTrailingPartialSequenceAsReplacement() {
+        byte[] emoji = "😀".getBytes(StandardCharsets.UTF_8);
+        for (int length = 1; length < emoji.length; length++) {
+            Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+            assertEquals("", decoder.decode(emoji, 0, length));
+            assertEquals("\uFFFD", decoder.finish());
+        }
+
+        byte[] chinese = "中".getBytes(StandardCharsets.UTF_8);
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        assertEquals("a", decoder.decode(new byte[] {'a', chinese[0], chinese[1]}, 0, 3));
+        assertEquals("\uFFFD", decoder.finish());
+    }
+
+    @Test
+    public void decoderIsReusableAfterFinish() {
+        byte[] bytes = "中".getBytes(StandardCharsets.UTF_8);
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        decoder.decode(bytes, 0, 1);
+        decoder.finish();
+
+        // 上一条流残留的半个字符不会混进下一条
+        assertEquals("中", decoder.decode(bytes, 0, bytes.length));
+        assertEquals("", decoder.finish());
+    }
+
+    @Test
+    public void chunksLargerThanInternalBuffers() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 20000) {
+            text.append(TEXT);
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        // 第一块超过内部缓冲容量，并在多字节字符中间截断
+        int cut = 10001;
+        assertEquals(text.toString(), decodeInPieces(bytes, cut, cut + 7));
+    }
+}
@@ -0,0 +1,135 @@
+package com.android.aiassistant.service;
+
+import com.android.aiassistant.utils.Utf8StreamDecoder;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 推理输出处理的 JVM 基准
+ * 覆盖进程模式的热路径：按块增量解码 stdout、解析 stderr 的耗时日志，
+ * 以及用 fake-llama.sh 代替 llama.cpp 的完整读取流程（与 AIInferenceService.runProcess 共用 ProcessOutputReader）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OutputParsingBenchmark {
+
+    private static final String[] TIMING_LOG = {
+            "llama_print_timings:        load time =     812.34 ms",
+            "llama_print_timings:      sample time =      21.50 ms /   200 runs   (    0.11 ms per token,  9302.33 tokens per second)",
+            "llama_print_timings: prompt eval time =     345.67 ms /    48 tokens (    7.20 ms per token,   138.86 tokens per second)",
+            "llama_print_timings:        eval time =    9876.54 ms /   200 runs   (   49.38 ms per token,    20.25 tokens per second)",
+            "llama_print_timings:       total time =   10234.56 ms /   248 tokens",
+            "main: n_drafted = 320",
+            "main: n_accept  = 214",
+            "decoded  200 tokens in   6.123 seconds, speed:   32.66 t/s",
+    };
+
+    @Param({"200"})
+    public int segments;
+
+    private byte[] output;
+    private File fakeLlama;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < segments; i++) {
+            text.append("第").append(i).append("段 token 输出，");
+        }
+        output = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        fakeLlama = File.createTempFile("fake-llama", ".sh");
+        try (InputStream script = OutputParsingBenchmark.class.getResourceAsStream("/fake-llama.sh")) {
+            Files.copy(script, fakeLlama.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        fakeLlama.setExecutable(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fakeLlama.delete();
+    }
+
+    /**
+     * 按固定块大小增量解码，块边界会截断中文字符
+     */
+    @Benchmark
+    public void decodeChunked(Blackhole blackhole) {
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        int chunk = ProcessOutputReader.STREAM_CHUNK_SIZE;
+        for (int offset = 0; offset < output.length; offset += chunk) {
+            blackhole.consume(decoder.decode(output, offset, Math.min(chunk, output.length - offset)));
+        }
+        blackhole.consume(decoder.finish());
+    }
+
+    @Benchmark
+    public InferenceTiming parseTimingLog() {
+        InferenceTiming timing = new InferenceTiming();
+        for (String line : TIMING_LOG) {
+            timing.parseLogLine(line);
+        }
+        return timing;
+    }
+
+    /**
+     * 启动 fake llama 进程，stdout 按块解码、stderr 解析耗时，包含进程启动开销
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public String streamFakeProcess() throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList("sh", fakeLlama.getAbsolutePath(),
+                String.valueOf(segments)));
+        Process process = new ProcessBuilder(command).start();
+        InferenceTiming timing = new InferenceTiming();
+        timing.start(0);
+        Thread stderrReader = new Thread(() -> {
+            try {
+                ProcessOutputReader.readTimingLog(process.getErrorStream(), timing, null);
+            } catch (Exception ignored) {
+            }
+        });
+        stderrReader.start();
+
+        String result = ProcessOutputReader.readOutput(process.getInputStream(), timing,
+                new ProcessOutputReader.OutputListener() {
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+
+                    @Override
+                    public void onOutput(String delta) {
+                    }
+                });
+
+        if (process.waitFor() != 0) {
+            throw new Exception("fake llama 退出码: " + process.exitValue());
+        }
+        stderrReader.join();
+        timing.finish();
+        if (timing.generatedTokens != segments) {
+            throw new Exception("耗时解析错误: " + timing.generatedTokens);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,17 @@
+#!/bin/sh
+# 模拟 llama.cpp main：stdout 逐段输出生成内容（中英文混合），stderr 输出 llama_print_timings
+# 用法: fake-llama.sh [段数]
+n=${1:-200}
+i=0
+while [ $i -lt $n ]; do
+    printf '第%d段 token 输出，' "$i"
+    i=$((i + 1))
+done
+echo
+cat >&2 <<TIMINGS
+llama_print_timings:        load time =     812.34 ms
+llama_print_timings:      sample time =      21.50 ms /   $n runs   (    0.11 ms per token,  9302.33 tokens per second)
+llama_print_timings: prompt eval time =     345.67 ms /    48 tokens (    7.20 ms per token,   138.86 tokens per second)
+llama_print_timings:        eval time =    9876.54 ms /   $n runs   (   49.38 ms per token,    20.25 tokens per second)
+llama_print_timings:       total time =   10234.56 ms /   $((n + 48)) tokens
+TIMINGS